@@ -56,6 +56,7 @@ public class IndexBuilder {
 						}
 					});
 				}
+				indexVisitor.compileExpressions(clazz);
 			}
 		}
 		return indexMap;
@@ -70,6 +71,10 @@ public class IndexBuilder {
 		private final String name;
 		private final List<Field> fields = new ArrayList<Field>();
 		private final List<String> expressions = new ArrayList<String>();
+		/**
+		 * 编译后的表达式，与expressions一一对应，不能编译的为null
+		 */
+		private IndexExpression[] compiledExpressions;
 
 		public IndexVisitor(String indexName) {
 			name = indexName;
@@ -93,6 +98,19 @@ public class IndexBuilder {
 			}
 		}
 
+		/**
+		 * 按资源类编译索引表达式，不能编译的表达式仍由Rhino执行
+		 * 
+		 * @param clazz 资源类
+		 */
+		public void compileExpressions(Class<?> clazz) {
+			IndexExpression[] compiled = new IndexExpression[expressions.size()];
+			for (int i = 0; i < compiled.length; i++) {
+				compiled[i] = IndexExpression.compile(clazz, expressions.get(i));
+			}
+			compiledExpressions = compiled;
+		}
+
 		/**
 		 * 获取索引访问者名称
 		 * 
@@ -139,7 +157,7 @@ public class IndexBuilder {
 		}
 
 		/**
-		 * 判断对象是否可以索引{非空对象和表达式正确}
+		 * 判断对象是否可以索引{非空对象和表达式正确}，已编译的表达式直接读取属性判断，不再构建属性Map
 		 * 
 		 * @param obj
 		 * @return true-可以索引  false-不可以索引
@@ -148,9 +166,19 @@ public class IndexBuilder {
 		public boolean indexable(Object obj) {
 			if (obj != null) {
 				if (expressions != null && !expressions.isEmpty()) {
-					Map<String, Object> ctx = BeanHelper.buildMap(obj);
-					for (String expression : expressions) {
-						if (!RhinoHelper.invoke(expression, ctx, Boolean.class)) {
+					IndexExpression[] compiled = compiledExpressions;
+					Map<String, Object> ctx = null;
+					for (int i = 0; i < expressions.size(); i++) {
+						if (compiled != null && compiled[i] != null) {
+							if (!compiled[i].test(obj)) {
+								return false;
+							}
+							continue;
+						}
+						if (ctx == null) {
+							ctx = BeanHelper.buildMap(obj);
+						}
+						if (!RhinoHelper.invoke(expressions.get(i), ctx, Boolean.class)) {
 							return false;
 						}
 					}
@@ -0,0 +1,644 @@
+package org.chinasb.common.basedb;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.regex.Pattern;
+
+import org.chinasb.common.utility.EnumUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * 编译后的索引表达式
+ * <p>{@link org.chinasb.common.basedb.annotation.Index#expression()}原先对每条数据构建属性Map后交给Rhino执行，
+ * 这里在加载前按资源类把表达式编译为直接读取属性的条件树，语义与原执行方式一致：
+ * 属性值为其字符串形式(枚举为序号)，按JavaScript规则比较、运算
+ * <p>支持字面量(数字、字符串、true、false、null)、属性名、括号以及
+ * ! - + * / % + - &lt; &lt;= &gt; &gt;= == != === !== &amp;&amp; ||，结果必须是布尔值；
+ * 超出范围的表达式{@link #compile(Class, String)}返回null，仍由Rhino执行
+ * 
+ * @author zhujuan
+ */
+final class IndexExpression {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexExpression.class);
+    /**
+     * 支持的数字字面量
+     */
+    private static final Pattern DECIMAL =
+            Pattern.compile("(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?");
+    private static final Pattern HEX = Pattern.compile("0[xX][0-9a-fA-F]+");
+
+    private final String expression;
+    private final Node root;
+
+    private IndexExpression(String expression, Node root) {
+        this.expression = expression;
+        this.root = root;
+    }
+
+    /**
+     * 编译表达式
+     * 
+     * @param clazz 资源类
+     * @param expression 表达式
+     * @return 不支持编译时返回null
+     */
+    static IndexExpression compile(Class<?> clazz, String expression) {
+        try {
+            Node root = new Parser(clazz, expression).parse();
+            if (!root.bool) {
+                return null;
+            }
+            return new IndexExpression(expression, root);
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("索引表达式 [{}] 不能编译, 使用Rhino执行: {}", expression, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 判断数据是否满足表达式，执行出错时返回false
+     * 
+     * @param bean
+     * @return
+     */
+    boolean test(Object bean) {
+        try {
+            return Boolean.TRUE.equals(root.eval(bean));
+        } catch (Exception e) {
+            LOGGER.error("公式: [{}], 数据[{}]执行错误 - ", expression, bean);
+            LOGGER.error("", e);
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /**
+     * 表达式节点，值为null、Boolean、Double或String
+     */
+    private abstract static class Node {
+        /**
+         * 结果是否一定为布尔值
+         */
+        final boolean bool;
+
+        Node(boolean bool) {
+            this.bool = bool;
+        }
+
+        abstract Object eval(Object bean) throws Exception;
+    }
+
+    private static final class Literal extends Node {
+        private final Object value;
+
+        Literal(Object value) {
+            super(value instanceof Boolean);
+            this.value = value;
+        }
+
+        @Override
+        Object eval(Object bean) {
+            return value;
+        }
+    }
+
+    /**
+     * 属性值，与BeanHelper.buildMap一致：枚举为序号，其它为字符串形式
+     */
+    private static final class Property extends Node {
+        private final Method getter;
+        private final Class<?> type;
+
+        Property(Method getter, Class<?> type) {
+            super(false);
+            this.getter = getter;
+            this.type = type;
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Object eval(Object bean) throws Exception {
+            Object value = getter.invoke(bean);
+            if (type.isEnum()) {
+                Enum e = EnumUtils.valueOf((Class) type, String.valueOf(value));
+                return e == null ? -1d : (double) e.ordinal();
+            }
+            return value == null ? null : value.toString();
+        }
+    }
+
+    private static final class Unary extends Node {
+        private final char op;
+        private final Node operand;
+
+        Unary(char op, Node operand) {
+            super(op == '!');
+            this.op = op;
+            this.operand = operand;
+        }
+
+        @Override
+        Object eval(Object bean) throws Exception {
+            Object value = operand.eval(bean);
+            switch (op) {
+                case '!':
+                    return !toBoolean(value);
+                case '-':
+                    return -toNumber(value);
+                default:
+                    return toNumber(value);
+            }
+        }
+    }
+
+    private static final class Binary extends Node {
+        private final String op;
+        private final Node left;
+        private final Node right;
+
+        Binary(String op, Node left, Node right) {
+            super(!"+-*/%".contains(op));
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object eval(Object bean) throws Exception {
+            Object a = left.eval(bean);
+            if ("&&".equals(op)) {
+                return toBoolean(a) ? right.eval(bean) : a;
+            }
+            if ("||".equals(op)) {
+                return toBoolean(a) ? a : right.eval(bean);
+            }
+            Object b = right.eval(bean);
+            switch (op) {
+                case "==":
+                    return looseEquals(a, b);
+                case "!=":
+                    return !looseEquals(a, b);
+                case "===":
+                    return strictEquals(a, b);
+                case "!==":
+                    return !strictEquals(a, b);
+                case "<":
+                    return compare(a, b, false);
+                case ">":
+                    return compare(b, a, false);
+                case "<=":
+                    return compare(b, a, true);
+                case ">=":
+                    return compare(a, b, true);
+                case "+":
+                    if (a instanceof String || b instanceof String) {
+                        return toJsString(a) + toJsString(b);
+                    }
+                    return toNumber(a) + toNumber(b);
+                case "-":
+                    return toNumber(a) - toNumber(b);
+                case "*":
+                    return toNumber(a) * toNumber(b);
+                case "/":
+                    return toNumber(a) / toNumber(b);
+                default:
+                    return toNumber(a) % toNumber(b);
+            }
+        }
+    }
+
+    /**
+     * JavaScript抽象关系比较：a &lt; b，negate为true时结果取反(用于&lt;=、&gt;=)，NaN时返回false
+     */
+    private static boolean compare(Object a, Object b, boolean negate) {
+        if (a instanceof String && b instanceof String) {
+            boolean less = ((String) a).compareTo((String) b) < 0;
+            return negate ? !less : less;
+        }
+        double x = toNumber(a);
+        double y = toNumber(b);
+        if (Double.isNaN(x) || Double.isNaN(y)) {
+            return false;
+        }
+        boolean less = x < y;
+        return negate ? !less : less;
+    }
+
+    private static boolean strictEquals(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if (a instanceof Double && b instanceof Double) {
+            return ((Double) a).doubleValue() == ((Double) b).doubleValue();
+        }
+        return a.getClass() == b.getClass() && a.equals(b);
+    }
+
+    private static boolean looseEquals(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if (a.getClass() == b.getClass()) {
+            return strictEquals(a, b);
+        }
+        if (a instanceof Boolean) {
+            return looseEquals(toNumber(a), b);
+        }
+        if (b instanceof Boolean) {
+            return looseEquals(a, toNumber(b));
+        }
+        return toNumber(a) == toNumber(b);
+    }
+
+    private static boolean toBoolean(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Boolean) {
+            return ((Boolean) value).booleanValue();
+        }
+        if (value instanceof Double) {
+            double d = ((Double) value).doubleValue();
+            return d != 0 && !Double.isNaN(d);
+        }
+        return !((String) value).isEmpty();
+    }
+
+    private static double toNumber(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Double) {
+            return ((Double) value).doubleValue();
+        }
+        if (value instanceof Boolean) {
+            return ((Boolean) value).booleanValue() ? 1 : 0;
+        }
+        return toNumber((String) value);
+    }
+
+    /**
+     * 字符串转换为数字，与Rhino一致：0x开头按十六进制解析到第一个非法字符为止
+     */
+    private static double toNumber(String text) {
+        int start = 0;
+        int end = text.length() - 1;
+        while (start <= end && isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        if (start > end) {
+            return 0;
+        }
+        while (isWhitespace(text.charAt(end))) {
+            end--;
+        }
+        char first = text.charAt(start);
+        int sign = first == '-' ? -1 : 1;
+        int hexStart = first == '+' || first == '-' ? start + 1 : start;
+        if (hexStart + 2 < text.length() && text.charAt(hexStart) == '0'
+                && (text.charAt(hexStart + 1) == 'x' || text.charAt(hexStart + 1) == 'X')) {
+            int digitEnd = hexStart + 2;
+            while (digitEnd < text.length() && Character.digit(text.charAt(digitEnd), 16) >= 0) {
+                digitEnd++;
+            }
+            if (digitEnd == hexStart + 2) {
+                return Double.NaN;
+            }
+            return sign * new BigInteger(text.substring(hexStart + 2, digitEnd), 16).doubleValue();
+        }
+        String number = text.substring(start, end + 1);
+        if (number.endsWith("y")) {
+            String infinity = first == '+' || first == '-' ? number.substring(1) : number;
+            return "Infinity".equals(infinity) ? sign * Double.POSITIVE_INFINITY : Double.NaN;
+        }
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (!(c >= '0' && c <= '9') && c != '.' && c != 'e' && c != 'E' && c != '+'
+                    && c != '-') {
+                return Double.NaN;
+            }
+        }
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\u000B' || c == '\f'
+                || c == '\u00A0' || c == '\uFEFF' || c == '\u2028' || c == '\u2029'
+                || Character.getType(c) == Character.SPACE_SEPARATOR;
+    }
+
+    private static String toJsString(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        if (!(value instanceof Double)) {
+            return value.toString();
+        }
+        double d = ((Double) value).doubleValue();
+        if (Double.isNaN(d)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(d)) {
+            return d > 0 ? "Infinity" : "-Infinity";
+        }
+        if (d == 0) {
+            return "0";
+        }
+        double abs = Math.abs(d);
+        if (abs >= 1e-6 && abs < 1e21) {
+            return new BigDecimal(Double.toString(d)).stripTrailingZeros().toPlainString();
+        }
+        String text = Double.toString(d);
+        int index = text.indexOf('E');
+        String mantissa = text.substring(0, index);
+        if (mantissa.endsWith(".0")) {
+            mantissa = mantissa.substring(0, mantissa.length() - 2);
+        }
+        String exponent = text.substring(index + 1);
+        return mantissa + "e" + (exponent.startsWith("-") ? "" : "+") + exponent;
+    }
+
+    /**
+     * 递归下降解析器，遇到不支持的语法抛出{@link IllegalArgumentException}
+     */
+    private static final class Parser {
+        private final Class<?> clazz;
+        private final String text;
+        private int pos;
+        private String token;
+        private Object literal;
+
+        Parser(Class<?> clazz, String text) {
+            this.clazz = clazz;
+            this.text = text;
+            next();
+        }
+
+        Node parse() {
+            Node node = parseOr();
+            if (token != null) {
+                throw new IllegalArgumentException("unexpected token " + token);
+            }
+            return node;
+        }
+
+        private Node parseOr() {
+            Node node = parseAnd();
+            while ("||".equals(token)) {
+                next();
+                node = logical("||", node, parseAnd());
+            }
+            return node;
+        }
+
+        private Node parseAnd() {
+            Node node = parseEquality();
+            while ("&&".equals(token)) {
+                next();
+                node = logical("&&", node, parseEquality());
+            }
+            return node;
+        }
+
+        private Node logical(String op, Node left, Node right) {
+            if (!left.bool || !right.bool) {
+                throw new IllegalArgumentException("non boolean operand of " + op);
+            }
+            return new Binary(op, left, right);
+        }
+
+        private Node parseEquality() {
+            Node node = parseRelational();
+            while ("==".equals(token) || "!=".equals(token) || "===".equals(token)
+                    || "!==".equals(token)) {
+                String op = token;
+                next();
+                node = new Binary(op, node, parseRelational());
+            }
+            return node;
+        }
+
+        private Node parseRelational() {
+            Node node = parseAdditive();
+            while ("<".equals(token) || "<=".equals(token) || ">".equals(token)
+                    || ">=".equals(token)) {
+                String op = token;
+                next();
+                node = new Binary(op, node, parseAdditive());
+            }
+            return node;
+        }
+
+        private Node parseAdditive() {
+            Node node = parseMultiplicative();
+            while ("+".equals(token) || "-".equals(token)) {
+                String op = token;
+                next();
+                node = new Binary(op, node, parseMultiplicative());
+            }
+            return node;
+        }
+
+        private Node parseMultiplicative() {
+            Node node = parseUnary();
+            while ("*".equals(token) || "/".equals(token) || "%".equals(token)) {
+                String op = token;
+                next();
+                node = new Binary(op, node, parseUnary());
+            }
+            return node;
+        }
+
+        private Node parseUnary() {
+            if ("!".equals(token) || "-".equals(token) || "+".equals(token)) {
+                char op = token.charAt(0);
+                next();
+                return new Unary(op, parseUnary());
+            }
+            return parsePrimary();
+        }
+
+        private Node parsePrimary() {
+            if (token == null) {
+                throw new IllegalArgumentException("unexpected end");
+            }
+            if ("(".equals(token)) {
+                next();
+                Node node = parseOr();
+                expect(")");
+                return node;
+            }
+            if ("#literal".equals(token)) {
+                Object value = literal;
+                next();
+                return new Literal(value);
+            }
+            if (Character.isJavaIdentifierStart(token.charAt(0))) {
+                String name = token;
+                next();
+                switch (name) {
+                    case "true":
+                        return new Literal(Boolean.TRUE);
+                    case "false":
+                        return new Literal(Boolean.FALSE);
+                    case "null":
+                        return new Literal(null);
+                    default:
+                        return property(name);
+                }
+            }
+            throw new IllegalArgumentException("unexpected token " + token);
+        }
+
+        private Node property(String name) {
+            PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(clazz, name);
+            if (descriptor == null || descriptor.getReadMethod() == null) {
+                throw new IllegalArgumentException("unknown property " + name);
+            }
+            Class<?> type = descriptor.getPropertyType();
+            if (type.isArray() || Date.class.isAssignableFrom(type)
+                    || Calendar.class.isAssignableFrom(type)) {
+                throw new IllegalArgumentException("unsupported property type " + type);
+            }
+            Method getter = descriptor.getReadMethod();
+            ReflectionUtils.makeAccessible(getter);
+            return new Property(getter, type);
+        }
+
+        private void expect(String expected) {
+            if (!expected.equals(token)) {
+                throw new IllegalArgumentException("expected " + expected);
+            }
+            next();
+        }
+
+        private void next() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+            if (pos >= text.length()) {
+                token = null;
+                return;
+            }
+            char c = text.charAt(pos);
+            if (Character.isDigit(c) || (c == '.' && pos + 1 < text.length()
+                    && Character.isDigit(text.charAt(pos + 1)))) {
+                readNumber();
+                return;
+            }
+            if (c == '\'' || c == '"') {
+                readString(c);
+                return;
+            }
+            if (Character.isJavaIdentifierStart(c)) {
+                int start = pos;
+                while (pos < text.length() && Character.isJavaIdentifierPart(text.charAt(pos))) {
+                    pos++;
+                }
+                token = text.substring(start, pos);
+                return;
+            }
+            for (String op : new String[] {"===", "!==", "==", "!=", "<=", ">=", "&&", "||"}) {
+                if (text.startsWith(op, pos)) {
+                    pos += op.length();
+                    token = op;
+                    return;
+                }
+            }
+            if (text.startsWith("++", pos) || text.startsWith("--", pos)
+                    || "!<>+-*/%()".indexOf(c) < 0) {
+                throw new IllegalArgumentException("unsupported character " + c);
+            }
+            pos++;
+            token = String.valueOf(c);
+        }
+
+        private void readNumber() {
+            int start = pos;
+            if (text.startsWith("0x", pos) || text.startsWith("0X", pos)) {
+                pos += 2;
+                while (pos < text.length() && Character.digit(text.charAt(pos), 16) >= 0) {
+                    pos++;
+                }
+            } else {
+                while (pos < text.length()
+                        && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+                    pos++;
+                }
+                if (pos < text.length() && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+                    pos++;
+                    if (pos < text.length()
+                            && (text.charAt(pos) == '+' || text.charAt(pos) == '-')) {
+                        pos++;
+                    }
+                    while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+                        pos++;
+                    }
+                }
+            }
+            String number = text.substring(start, pos);
+            if (pos < text.length() && Character.isJavaIdentifierPart(text.charAt(pos))
+                    || (!DECIMAL.matcher(number).matches() && !HEX.matcher(number).matches())
+                    || (number.length() > 1 && number.charAt(0) == '0'
+                            && Character.isDigit(number.charAt(1)))) {
+                throw new IllegalArgumentException("unsupported number " + number);
+            }
+            literal = toNumber(number);
+            token = "#literal";
+        }
+
+        private void readString(char quote) {
+            StringBuilder builder = new StringBuilder();
+            pos++;
+            while (pos < text.length() && text.charAt(pos) != quote) {
+                char c = text.charAt(pos++);
+                if (c == '\\') {
+                    if (pos >= text.length()) {
+                        break;
+                    }
+                    char escaped = text.charAt(pos++);
+                    switch (escaped) {
+                        case 'n':
+                            builder.append('\n');
+                            break;
+                        case 't':
+                            builder.append('\t');
+                            break;
+                        case '\\':
+                        case '\'':
+                        case '"':
+                            builder.append(escaped);
+                            break;
+                        default:
+                            throw new IllegalArgumentException("unsupported escape " + escaped);
+                    }
+                } else if (c == '\n' || c == '\r') {
+                    throw new IllegalArgumentException("unterminated string");
+                } else {
+                    builder.append(c);
+                }
+            }
+            if (pos >= text.length()) {
+                throw new IllegalArgumentException("unterminated string");
+            }
+            pos++;
+            literal = builder.toString();
+            token = "#literal";
+        }
+    }
+}
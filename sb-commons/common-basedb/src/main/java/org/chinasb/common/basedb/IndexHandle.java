@@ -0,0 +1,119 @@
+package org.chinasb.common.basedb;
+
+import java.util.List;
+
+/**
+ * 基础数据索引句柄
+ * <p>通过{@link ResourceService#index(Class, String)}获取并持有，查询时不再拼接索引键值；
+ * 单个整数字段或两个int范围字段的索引，按整数查询不产生对象，返回已排序、不可修改的列表，
+ * 基础数据重新加载后句柄仍然有效
+ * 
+ * @author zhujuan
+ * @param <T>
+ */
+public final class IndexHandle<T> {
+    private final Storage<T> storage;
+    private final String name;
+    private final int slot;
+
+    IndexHandle(Storage<T> storage, String name, int slot) {
+        this.storage = storage;
+        this.name = name;
+        this.slot = slot;
+    }
+
+    /**
+     * 获取索引名称
+     * 
+     * @return
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 按单个整数索引值获取基础数据列表
+     * 
+     * @param value
+     * @return 不可修改的列表
+     */
+    public List<T> list(long value) {
+        TypedIndex<T> index = storage.getTypedIndex(slot);
+        if (index.packing == TypedIndex.PACK_LONG) {
+            return index.get(value);
+        }
+        return list(index, new Object[] {value});
+    }
+
+    /**
+     * 按两个整数索引值获取基础数据列表
+     * 
+     * @param value1
+     * @param value2
+     * @return 不可修改的列表
+     */
+    public List<T> list(int value1, int value2) {
+        TypedIndex<T> index = storage.getTypedIndex(slot);
+        if (index.packing == TypedIndex.PACK_INT_PAIR) {
+            return index.get(TypedIndex.pack(value1, value2));
+        }
+        return list(index, new Object[] {value1, value2});
+    }
+
+    /**
+     * 按索引值获取基础数据列表
+     * 
+     * @param indexValues 索引值(顺序对应 {@link org.chinasb.common.basedb.annotation.Index#order})
+     * @return 不可修改的列表
+     */
+    public List<T> list(Object... indexValues) {
+        return list(storage.getTypedIndex(slot), indexValues);
+    }
+
+    private List<T> list(TypedIndex<T> index, Object[] indexValues) {
+        if (index.packing != TypedIndex.NOT_PACKED) {
+            return index.getByValues(indexValues);
+        }
+        return index.get(storage.getIndexKey(name, indexValues));
+    }
+
+    /**
+     * 按单个整数索引值获取唯一记录
+     * 
+     * @param value
+     * @return
+     */
+    public T unique(long value) {
+        return first(list(value));
+    }
+
+    /**
+     * 按两个整数索引值获取唯一记录
+     * 
+     * @param value1
+     * @param value2
+     * @return
+     */
+    public T unique(int value1, int value2) {
+        return first(list(value1, value2));
+    }
+
+    /**
+     * 按索引值获取唯一记录
+     * 
+     * @param indexValues
+     * @return
+     */
+    public T unique(Object... indexValues) {
+        return first(list(indexValues));
+    }
+
+    private static <T> T first(List<T> list) {
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    @Override
+    public String toString() {
+        return "IndexHandle [" + storage.getResourceClass().getName() + "#" + name + "]";
+    }
+}
@@ -0,0 +1,77 @@
+package org.chinasb.common.basedb;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 不可修改的long键映射
+ * <p>开放寻址、线性探测，键不装箱，构建后只读，查询无需同步也不产生对象
+ * 
+ * @author zhujuan
+ * @param <E>
+ */
+final class LongKeyMap<E> {
+    private final long[] keys;
+    private final Object[] values;
+    private final int mask;
+    private final int size;
+
+    LongKeyMap(Map<Long, ? extends E> map) {
+        int capacity = 2;
+        while (capacity < map.size() * 2) {
+            capacity <<= 1;
+        }
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.size = map.size();
+        for (Map.Entry<Long, ? extends E> entry : map.entrySet()) {
+            long key = entry.getKey().longValue();
+            int index = indexOf(key);
+            while (values[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = key;
+            values[index] = entry.getValue();
+        }
+    }
+
+    /**
+     * 获取键对应的值
+     * 
+     * @param key
+     * @return 不存在时返回null
+     */
+    @SuppressWarnings("unchecked")
+    E get(long key) {
+        int index = indexOf(key);
+        for (;;) {
+            Object value = values[index];
+            if (value == null || keys[index] == key) {
+                return (E) value;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * 复制为可修改的映射
+     * 
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    Map<Long, E> toMap() {
+        Map<Long, E> map = new HashMap<Long, E>(size * 2);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                map.put(keys[i], (E) values[i]);
+            }
+        }
+        return map;
+    }
+
+    private int indexOf(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
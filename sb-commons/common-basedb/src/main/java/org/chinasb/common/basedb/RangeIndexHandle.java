@@ -0,0 +1,141 @@
+package org.chinasb.common.basedb;
+
+import java.util.List;
+
+/**
+ * 基础数据有序索引句柄
+ * <p>通过{@link ResourceService#rangeIndex(Class, String)}获取并持有，查询为O(log n)的二分查找，
+ * 返回的列表不可修改且不复制，基础数据重新加载后句柄仍然有效
+ * <p>整数、浮点数查询值可以用于整数、浮点数和{@link java.util.Date}(毫秒)字段，
+ * 其它字段使用相同类型的{@link Comparable}查询值，类型不匹配时抛出{@link IllegalArgumentException}
+ * 
+ * @author zhujuan
+ * @param <T>
+ */
+public final class RangeIndexHandle<T> {
+    private final Storage<T> storage;
+    private final String name;
+    private final int slot;
+
+    RangeIndexHandle(Storage<T> storage, String name, int slot) {
+        this.storage = storage;
+        this.name = name;
+        this.slot = slot;
+    }
+
+    /**
+     * 获取索引名称
+     * 
+     * @return
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取字段值不大于查询值的最大记录，如按等级查询等级奖励
+     * 
+     * @param key
+     * @return 不存在时返回null
+     */
+    public T floor(long key) {
+        return storage.getSortedIndex(slot).floor(key);
+    }
+
+    /**
+     * 获取字段值不大于查询值的最大记录
+     * 
+     * @param key
+     * @return 不存在时返回null
+     */
+    public T floor(double key) {
+        return storage.getSortedIndex(slot).floor(key);
+    }
+
+    /**
+     * 获取字段值不大于查询值的最大记录
+     * 
+     * @param key
+     * @return 不存在时返回null
+     */
+    public T floor(Object key) {
+        return storage.getSortedIndex(slot).floor(key);
+    }
+
+    /**
+     * 获取字段值不小于查询值的最小记录
+     * 
+     * @param key
+     * @return 不存在时返回null
+     */
+    public T ceiling(long key) {
+        return storage.getSortedIndex(slot).ceiling(key);
+    }
+
+    /**
+     * 获取字段值不小于查询值的最小记录
+     * 
+     * @param key
+     * @return 不存在时返回null
+     */
+    public T ceiling(double key) {
+        return storage.getSortedIndex(slot).ceiling(key);
+    }
+
+    /**
+     * 获取字段值不小于查询值的最小记录
+     * 
+     * @param key
+     * @return 不存在时返回null
+     */
+    public T ceiling(Object key) {
+        return storage.getSortedIndex(slot).ceiling(key);
+    }
+
+    /**
+     * 获取字段值在[from, to]之间的记录
+     * 
+     * @param from 包含
+     * @param to 包含
+     * @return 按字段值排序、不可修改的列表
+     */
+    public List<T> range(long from, long to) {
+        return storage.getSortedIndex(slot).range(from, to);
+    }
+
+    /**
+     * 获取字段值在[from, to]之间的记录
+     * 
+     * @param from 包含
+     * @param to 包含
+     * @return 按字段值排序、不可修改的列表
+     */
+    public List<T> range(double from, double to) {
+        return storage.getSortedIndex(slot).range(from, to);
+    }
+
+    /**
+     * 获取字段值在[from, to]之间的记录
+     * 
+     * @param from 包含
+     * @param to 包含
+     * @return 按字段值排序、不可修改的列表
+     */
+    public List<T> range(Object from, Object to) {
+        return storage.getSortedIndex(slot).range(from, to);
+    }
+
+    /**
+     * 获取全部记录
+     * 
+     * @return 按字段值排序、不可修改的列表
+     */
+    public List<T> listAll() {
+        return storage.getSortedIndex(slot).values();
+    }
+
+    @Override
+    public String toString() {
+        return "RangeIndexHandle [" + storage.getResourceClass().getName() + "#" + name + "]";
+    }
+}
@@ -49,6 +49,26 @@ public interface ResourceService {
      */
     <T> T getByUnique(String indexName, Class<T> clazz, Object... indexValues);
 
+    /**
+     * 获取索引句柄，句柄可以长期持有，重新加载后仍然有效
+     * 
+     * @param clazz 基础数据类对象
+     * @param indexName 索引名称
+     * @return {@link IndexHandle}
+     * @throws IllegalArgumentException 不是基础数据类或索引不存在
+     */
+    <T> IndexHandle<T> index(Class<T> clazz, String indexName);
+
+    /**
+     * 获取有序索引句柄，用于floor/ceiling/范围查询，句柄可以长期持有
+     * 
+     * @param clazz 基础数据类对象
+     * @param indexName 有序索引名称(对应 {@link org.chinasb.common.basedb.annotation.RangeIndex#name})
+     * @return {@link RangeIndexHandle}
+     * @throws IllegalArgumentException 不是基础数据类或有序索引不存在
+     */
+    <T> RangeIndexHandle<T> rangeIndex(Class<T> clazz, String indexName);
+
     /**
      * 获取全部基础数据列表
      * 
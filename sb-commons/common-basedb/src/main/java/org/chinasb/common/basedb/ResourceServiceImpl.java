@@ -4,10 +4,18 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 import org.chinasb.common.basedb.annotation.Resource;
 import org.chinasb.common.utility.PackageUtils;
@@ -68,6 +76,13 @@ public class ResourceServiceImpl
 	@Qualifier("basedb_package")
 	private String resourcePackage = "org.chinasb.**.basedb.model";
 
+	/**
+	 * 并行加载基础数据的线程数
+	 */
+	@Autowired(required = false)
+	@Qualifier("basedb_load_parallelism")
+	private Integer loadParallelism = Runtime.getRuntime().availableProcessors();
+
 	@Autowired
 	private ApplicationContext applicationContext;
 
@@ -79,17 +94,13 @@ public class ResourceServiceImpl
 		Collection<Class<?>> clazzCollection =
 				PackageUtils.scanPackages(resourcePackage);
 		if (clazzCollection != null && !clazzCollection.isEmpty()) {
+			List<Class<?>> resourceClasses = new ArrayList<Class<?>>();
 			for (Class<?> clazz : clazzCollection) {
-				try {
-					if (clazz.isAnnotationPresent(Resource.class)) {
-						initializeStorage(clazz);
-					}
-				} catch (Exception e) {
-					FormattingTuple message =
-							MessageFormatter.format("加载  {} 基础数据时出错!", clazz.getName());
-					LOGGER.error(message.getMessage(), e);
+				if (clazz.isAnnotationPresent(Resource.class)) {
+					resourceClasses.add(clazz);
 				}
 			}
+			loadStorages(resourceClasses);
 		} else {
 			FormattingTuple message = MessageFormatter.format("在 {} 包下没有扫描到实体类!", resourcePackage);
 			LOGGER.error(message.getMessage());
@@ -98,6 +109,128 @@ public class ResourceServiceImpl
 		LOGGER.info("基础数据加载完毕...");
 	}
 
+	/**
+	 * 并行加载基础数据，声明了依赖的基础数据在依赖的数据加载完成后才加载
+	 * 
+	 * @param classes 基础数据类
+	 */
+	private void loadStorages(List<Class<?>> classes) {
+		long start = System.currentTimeMillis();
+		int parallelism = Math.max(1, loadParallelism.intValue());
+		Set<Class<?>> classSet = new HashSet<Class<?>>(classes);
+		Map<Class<?>, CompletableFuture<LoadRecord>> futures =
+				new LinkedHashMap<Class<?>, CompletableFuture<LoadRecord>>();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			for (Class<?> clazz : classes) {
+				scheduleLoad(clazz, classSet, futures, new HashSet<Class<?>>(), pool);
+			}
+			CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[futures.size()]))
+					.join();
+		} finally {
+			pool.shutdown();
+		}
+		List<LoadRecord> records = new ArrayList<LoadRecord>(futures.size());
+		for (CompletableFuture<LoadRecord> future : futures.values()) {
+			records.add(future.join());
+		}
+		logLoadReport(records, parallelism, System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * 安排基础数据的加载任务，先安排依赖的基础数据；循环依赖和不在加载范围内的依赖被忽略
+	 * 
+	 * @param clazz 基础数据类
+	 * @param classes 加载范围内的基础数据类
+	 * @param futures 已安排的加载任务
+	 * @param path 当前依赖路径，用于发现循环依赖
+	 * @param executor 加载线程池
+	 * @return
+	 */
+	private CompletableFuture<LoadRecord> scheduleLoad(final Class<?> clazz,
+			Set<Class<?>> classes, Map<Class<?>, CompletableFuture<LoadRecord>> futures,
+			Set<Class<?>> path, Executor executor) {
+		CompletableFuture<LoadRecord> future = futures.get(clazz);
+		if (future != null) {
+			return future;
+		}
+		path.add(clazz);
+		List<CompletableFuture<LoadRecord>> dependencies =
+				new ArrayList<CompletableFuture<LoadRecord>>();
+		for (Class<?> dependency : clazz.getAnnotation(Resource.class).dependsOn()) {
+			if (path.contains(dependency)) {
+				LOGGER.error("基础数据 {} 与 {} 循环依赖，忽略该依赖!", clazz.getName(),
+						dependency.getName());
+			} else if (!classes.contains(dependency)) {
+				LOGGER.warn("基础数据 {} 依赖的 {} 不在加载范围内，忽略该依赖!", clazz.getName(),
+						dependency.getName());
+			} else {
+				dependencies.add(scheduleLoad(dependency, classes, futures, path, executor));
+			}
+		}
+		path.remove(clazz);
+		future = CompletableFuture
+				.allOf(dependencies.toArray(new CompletableFuture<?>[dependencies.size()]))
+				.thenApplyAsync(new Function<Void, LoadRecord>() {
+					@Override
+					public LoadRecord apply(Void ignored) {
+						return loadStorage(clazz);
+					}
+				}, executor);
+		futures.put(clazz, future);
+		return future;
+	}
+
+	/**
+	 * 加载单个基础数据，出错时只记录日志
+	 * 
+	 * @param clazz 基础数据类
+	 * @return 加载记录
+	 */
+	@SuppressWarnings("rawtypes")
+	private LoadRecord loadStorage(Class<?> clazz) {
+		long start = System.currentTimeMillis();
+		boolean success = false;
+		try {
+			success = initializeStorage(clazz);
+		} catch (Exception e) {
+			FormattingTuple message = MessageFormatter.format("加载  {} 基础数据时出错!", clazz.getName());
+			LOGGER.error(message.getMessage(), e);
+		}
+		Storage storage = getStorage(clazz);
+		int rows = storage != null ? storage.getIdList().size() : 0;
+		return new LoadRecord(clazz, rows, System.currentTimeMillis() - start, success);
+	}
+
+	/**
+	 * 输出加载报告，按耗时从高到低列出每个基础数据的行数和耗时
+	 * 
+	 * @param records 加载记录
+	 * @param parallelism 并行线程数
+	 * @param elapsed 总耗时(毫秒)
+	 */
+	private void logLoadReport(List<LoadRecord> records, int parallelism, long elapsed) {
+		Collections.sort(records, new Comparator<LoadRecord>() {
+			@Override
+			public int compare(LoadRecord o1, LoadRecord o2) {
+				return Long.compare(o2.elapsed, o1.elapsed);
+			}
+		});
+		int failures = 0;
+		long totalRows = 0;
+		StringBuilder builder = new StringBuilder();
+		for (LoadRecord record : records) {
+			if (!record.success) {
+				failures++;
+			}
+			totalRows += record.rows;
+			builder.append(String.format("%n  %-60s %10d 行 %8d ms%s", record.clazz.getName(),
+					record.rows, record.elapsed, record.success ? "" : "  加载失败"));
+		}
+		LOGGER.info("基础数据加载报告: 共 {} 个, 失败 {} 个, 共 {} 行, 线程数 {}, 耗时 {} ms{}",
+				records.size(), failures, totalRows, parallelism, elapsed, builder);
+	}
+
 	/**
 	 * 基础数据监听器重载
 	 */
@@ -132,14 +265,14 @@ public class ResourceServiceImpl
 	 * @param clazz
 	 */
 	@SuppressWarnings({"rawtypes", "unchecked"})
-	private void initializeStorage(Class clazz) {
+	private boolean initializeStorage(Class clazz) {
 		Storage storage = storages.get(clazz);
 		if (storage == null) {
 			storage = new Storage(clazz, resourceLocation, applicationContext);
 			storages.putIfAbsent(clazz, storage);
 			storage = storages.get(clazz);
 		}
-		storage.reload();
+		return storage.reload();
 	}
 
 	/**
@@ -195,12 +328,43 @@ public class ResourceServiceImpl
 		return null;
 	}
 
+	@Override
+	public <T> IndexHandle<T> index(Class<T> clazz, String indexName) {
+		return getOrCreateStorage(clazz).getIndexHandle(indexName);
+	}
+
+	@Override
+	public <T> RangeIndexHandle<T> rangeIndex(Class<T> clazz, String indexName) {
+		return getOrCreateStorage(clazz).getRangeIndexHandle(indexName);
+	}
+
+	/**
+	 * 获取基础数据存储对象，不存在时创建，数据在初始化或重新加载时读取
+	 * 
+	 * @param clazz
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> Storage<T> getOrCreateStorage(Class<T> clazz) {
+		Storage<T> storage = getStorage(clazz);
+		if (storage == null) {
+			if (!clazz.isAnnotationPresent(Resource.class)) {
+				throw new IllegalArgumentException(
+						String.format("[%s] 不是基础数据类", clazz.getName()));
+			}
+			storages.putIfAbsent(clazz,
+					new Storage<T>(clazz, resourceLocation, applicationContext));
+			storage = getStorage(clazz);
+		}
+		return storage;
+	}
+
 	@Override
 	@SuppressWarnings({"unchecked", "rawtypes"})
 	public <T> List<T> listAll(Class<T> clazz) {
 		Storage storage = getStorage(clazz);
 		if (storage != null) {
-			return Collections.unmodifiableList(storage.listAll());
+			return storage.listAll();
 		}
 		return Collections.emptyList();
 	}
@@ -212,19 +376,7 @@ public class ResourceServiceImpl
 		if (storage == null) {
 			return;
 		}
-		Map<String, List<Object>> indexTable = storage.getIndexTable();
-		if (indexTable == null) {
-			return;
-		}
-		String newIndexKey = KeyBuilder.buildIndexKey(clazz, indexName);
-		List<Object> idList = indexTable.get(newIndexKey);
-		if (idList == null) {
-			idList = new ArrayList<Object>();
-			indexTable.put(newIndexKey, idList);
-		}
-		if (!idList.contains(id)) {
-			idList.add(id);
-		}
+		storage.addToIndex(indexName, new Object[0], id);
 	}
 
 	@Override
@@ -234,35 +386,37 @@ public class ResourceServiceImpl
 		if (storage == null) {
 			return;
 		}
-		String newIndexKey = KeyBuilder.buildIndexKey(clazz, indexName, indexValues);
-		Map<String, List<Object>> indexTable = storage.getIndexTable();
-		if (indexTable == null) {
-			return;
-		}
-		List<Object> idList = indexTable.get(newIndexKey);
-		if (idList == null) {
-			idList = new ArrayList<Object>();
-			indexTable.put(newIndexKey, idList);
-		}
-		if (!idList.contains(id)) {
-			idList.add(id);
-		}
+		storage.addToIndex(indexName, indexValues, id);
 	}
 
 	@Override
 	@SuppressWarnings("rawtypes")
 	public void reloadAll() {
+		List<Class<?>> classes = new ArrayList<Class<?>>(storages.size());
 		for (Class clazz : storages.keySet()) {
-			try {
-				initializeStorage(clazz);
-			} catch (Exception e) {
-				FormattingTuple message = MessageFormatter.format("加载 {} 类时出错!", clazz.getName());
-				LOGGER.error(message.getMessage(), e);
-			}
+			classes.add(clazz);
 		}
+		loadStorages(classes);
 		fireBasedbReload();
 	}
 
+	/**
+	 * 基础数据加载记录
+	 */
+	private static final class LoadRecord {
+		final Class<?> clazz;
+		final int rows;
+		final long elapsed;
+		final boolean success;
+
+		LoadRecord(Class<?> clazz, int rows, long elapsed, boolean success) {
+			this.clazz = clazz;
+			this.rows = rows;
+			this.elapsed = elapsed;
+			this.success = success;
+		}
+	}
+
 	/**
 	 * 内部辅助类用于构建索引键
 	 * <p>
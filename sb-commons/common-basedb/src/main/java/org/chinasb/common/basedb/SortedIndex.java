@@ -0,0 +1,391 @@
+package org.chinasb.common.basedb;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.chinasb.common.utility.ReflectionHelper;
+
+/**
+ * 有序索引
+ * <p>加载时按字段值排序为数组，查询为二分查找；整数和{@link Date}字段以long保存，
+ * 浮点数字段转换为保持顺序的long保存，其它字段保存为{@link Comparable}数组；
+ * float字段的查询值先转换为float再比较，与字段值的精度一致
+ * <p>字段值相同的数据按ID列表顺序排列，floor/ceiling返回相同字段值中的第一个
+ * 
+ * @author zhujuan
+ * @param <V>
+ */
+final class SortedIndex<V> {
+    static final int LONG_KEY = 0;
+    static final int DOUBLE_KEY = 1;
+    static final int COMPARABLE_KEY = 2;
+
+    private final int mode;
+    /**
+     * 是否为float字段
+     */
+    private final boolean floatKey;
+    /**
+     * 整数和浮点数字段的排序键
+     */
+    private final long[] keys;
+    /**
+     * 其它字段的排序键
+     */
+    private final Comparable<Object>[] comparableKeys;
+    /**
+     * 按排序键排序的基础数据列表(不可修改)
+     */
+    private final List<V> values;
+
+    private SortedIndex(int mode, boolean floatKey, long[] keys,
+            Comparable<Object>[] comparableKeys, List<V> values) {
+        this.mode = mode;
+        this.floatKey = floatKey;
+        this.keys = keys;
+        this.comparableKeys = comparableKeys;
+        this.values = values;
+    }
+
+    /**
+     * 全部基础数据，按字段值排序
+     * 
+     * @return 不可修改的列表
+     */
+    List<V> values() {
+        return values;
+    }
+
+    V floor(long key) {
+        return floorAt(upper(key));
+    }
+
+    V floor(double key) {
+        return floorAt(upper(key));
+    }
+
+    V floor(Object key) {
+        return floorAt(upper(key));
+    }
+
+    V ceiling(long key) {
+        return ceilingAt(lower(key));
+    }
+
+    V ceiling(double key) {
+        return ceilingAt(lower(key));
+    }
+
+    V ceiling(Object key) {
+        return ceilingAt(lower(key));
+    }
+
+    List<V> range(long from, long to) {
+        return subList(lower(from), upper(to));
+    }
+
+    List<V> range(double from, double to) {
+        return subList(lower(from), upper(to));
+    }
+
+    List<V> range(Object from, Object to) {
+        return subList(lower(from), upper(to));
+    }
+
+    private V floorAt(int upper) {
+        if (upper == 0) {
+            return null;
+        }
+        int index = mode == COMPARABLE_KEY ? lowerBound(comparableKeys[upper - 1])
+                : lowerBound(keys[upper - 1]);
+        return values.get(index);
+    }
+
+    private V ceilingAt(int lower) {
+        return lower < values.size() ? values.get(lower) : null;
+    }
+
+    private List<V> subList(int from, int to) {
+        return from < to ? values.subList(from, to) : Collections.<V>emptyList();
+    }
+
+    /**
+     * 第一个字段值不小于查询值的位置
+     */
+    private int lower(long key) {
+        switch (mode) {
+            case LONG_KEY:
+                return lowerBound(key);
+            case DOUBLE_KEY:
+                return lowerBound(sortable(narrow(key)));
+            default:
+                throw mismatch(key);
+        }
+    }
+
+    /**
+     * 第一个字段值大于查询值的位置
+     */
+    private int upper(long key) {
+        switch (mode) {
+            case LONG_KEY:
+                return upperBound(key);
+            case DOUBLE_KEY:
+                return upperBound(sortable(narrow(key)));
+            default:
+                throw mismatch(key);
+        }
+    }
+
+    private int lower(double key) {
+        if (Double.isNaN(key)) {
+            throw mismatch(key);
+        }
+        switch (mode) {
+            case LONG_KEY:
+                return lowerBound((long) Math.ceil(key));
+            case DOUBLE_KEY:
+                return lowerBound(sortable(narrow(key)));
+            default:
+                throw mismatch(key);
+        }
+    }
+
+    private int upper(double key) {
+        if (Double.isNaN(key)) {
+            throw mismatch(key);
+        }
+        switch (mode) {
+            case LONG_KEY:
+                return upperBound((long) Math.floor(key));
+            case DOUBLE_KEY:
+                return upperBound(sortable(narrow(key)));
+            default:
+                throw mismatch(key);
+        }
+    }
+
+    private int lower(Object key) {
+        if (mode == COMPARABLE_KEY) {
+            return lowerBound(comparable(key));
+        }
+        if (isIntegral(key)) {
+            return lower(((Number) key).longValue());
+        }
+        if (key instanceof Date) {
+            return lower(((Date) key).getTime());
+        }
+        if (key instanceof Number) {
+            return lower(((Number) key).doubleValue());
+        }
+        throw mismatch(key);
+    }
+
+    private int upper(Object key) {
+        if (mode == COMPARABLE_KEY) {
+            return upperBound(comparable(key));
+        }
+        if (isIntegral(key)) {
+            return upper(((Number) key).longValue());
+        }
+        if (key instanceof Date) {
+            return upper(((Date) key).getTime());
+        }
+        if (key instanceof Number) {
+            return upper(((Number) key).doubleValue());
+        }
+        throw mismatch(key);
+    }
+
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int upperBound(long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int lowerBound(Comparable<Object> key) {
+        int low = 0;
+        int high = comparableKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparableKeys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int upperBound(Comparable<Object> key) {
+        int low = 0;
+        int high = comparableKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparableKeys[mid].compareTo(key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Comparable<Object> comparable(Object key) {
+        if (!(key instanceof Comparable)) {
+            throw mismatch(key);
+        }
+        return (Comparable<Object>) key;
+    }
+
+    private static IllegalArgumentException mismatch(Object key) {
+        return new IllegalArgumentException(String.format("查询值[%s]与有序索引字段类型不匹配", key));
+    }
+
+    private static boolean isIntegral(Object key) {
+        return key instanceof Long || key instanceof Integer || key instanceof Short
+                || key instanceof Byte;
+    }
+
+    /**
+     * float字段的查询值转换为float精度，如0.1按0.1f比较，否则0.1f的字段值大于0.1而查询不到
+     * 
+     * @param key
+     * @return
+     */
+    private double narrow(double key) {
+        return floatKey ? (double) (float) key : key;
+    }
+
+    /**
+     * 浮点数转换为保持顺序的long
+     * 
+     * @param value
+     * @return
+     */
+    private static long sortable(double value) {
+        long bits = Double.doubleToLongBits(value + 0.0d);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * 按字段类型确定排序键类型
+     * 
+     * @param type
+     * @return 不支持的类型返回-1
+     */
+    static int modeOf(Class<?> type) {
+        if (type == long.class || type == int.class || type == short.class || type == byte.class
+                || type == Long.class || type == Integer.class || type == Short.class
+                || type == Byte.class || Date.class.isAssignableFrom(type)) {
+            return LONG_KEY;
+        }
+        if (type == double.class || type == float.class || type == Double.class
+                || type == Float.class) {
+            return DOUBLE_KEY;
+        }
+        if (type.isPrimitive() || Comparable.class.isAssignableFrom(type)) {
+            return COMPARABLE_KEY;
+        }
+        return -1;
+    }
+
+    /**
+     * 构建有序索引
+     * 
+     * @param field 索引字段
+     * @param idList 已排序的ID列表
+     * @param dataTable 基础数据映射集合
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    static <V> SortedIndex<V> build(Field field, List<Object> idList, Map<Object, V> dataTable) {
+        final int mode = modeOf(field.getType());
+        boolean floatKey = field.getType() == float.class || field.getType() == Float.class;
+        field.setAccessible(true);
+        List<V> entities = new ArrayList<V>(idList.size());
+        List<Object> fieldValues = new ArrayList<Object>(idList.size());
+        for (Object id : idList) {
+            V entity = dataTable.get(id);
+            Object fieldValue = entity != null ? ReflectionHelper.getField(field, entity) : null;
+            if (fieldValue != null) {
+                entities.add(entity);
+                fieldValues.add(fieldValue);
+            }
+        }
+        int size = entities.size();
+        final long[] keys = mode != COMPARABLE_KEY ? new long[size] : null;
+        final Comparable<Object>[] comparableKeys =
+                mode == COMPARABLE_KEY ? new Comparable[size] : null;
+        for (int i = 0; i < size; i++) {
+            Object fieldValue = fieldValues.get(i);
+            if (mode == COMPARABLE_KEY) {
+                comparableKeys[i] = (Comparable<Object>) fieldValue;
+            } else if (mode == DOUBLE_KEY) {
+                keys[i] = sortable(((Number) fieldValue).doubleValue());
+            } else if (fieldValue instanceof Date) {
+                keys[i] = ((Date) fieldValue).getTime();
+            } else {
+                keys[i] = ((Number) fieldValue).longValue();
+            }
+        }
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        // 稳定排序，字段值相同的数据保持ID列表顺序
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                if (mode == COMPARABLE_KEY) {
+                    return comparableKeys[o1].compareTo(comparableKeys[o2]);
+                }
+                return Long.compare(keys[o1], keys[o2]);
+            }
+        });
+        long[] sortedKeys = mode != COMPARABLE_KEY ? new long[size] : null;
+        Comparable<Object>[] sortedComparableKeys =
+                mode == COMPARABLE_KEY ? new Comparable[size] : null;
+        List<V> values = new ArrayList<V>(size);
+        for (int i = 0; i < size; i++) {
+            int index = order[i];
+            if (mode == COMPARABLE_KEY) {
+                sortedComparableKeys[i] = comparableKeys[index];
+            } else {
+                sortedKeys[i] = keys[index];
+            }
+            values.add(entities.get(index));
+        }
+        return new SortedIndex<V>(mode, floatKey, sortedKeys, sortedComparableKeys,
+                Collections.unmodifiableList(values));
+    }
+}
@@ -3,6 +3,7 @@ package org.chinasb.common.basedb;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Field;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -11,9 +12,16 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.chinasb.common.basedb.ResourceServiceImpl.KeyBuilder;
+import org.chinasb.common.basedb.annotation.RangeIndex;
 import org.chinasb.common.basedb.annotation.Resource;
+import org.chinasb.common.utility.ReflectionHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.helpers.FormattingTuple;
@@ -24,6 +32,8 @@ import org.springframework.util.ResourceUtils;
 
 /**
  * 基础数据存储对象
+ * <p>数据、索引和ID列表组成不可修改的{@link Snapshot}，通过volatile引用发布；
+ * 重新加载时在新的集合中构建完成后一次性替换，读取不加锁，且总是看到同一次加载的完整数据
  * 
  * @author zhujuan
  * @param <V>
@@ -54,21 +64,25 @@ public class Storage<V> {
      */
     private final Getter identifier;
     /**
-     * 索引访问者映射集合Map<索引名称,索引访问者>
+     * 索引访问者数组，下标为索引位置
      */
-    private final Map<String, IndexBuilder.IndexVisitor> indexVisitors;
+    private final IndexBuilder.IndexVisitor[] indexVisitors;
     /**
-     * 基础数据映射集合Map<ID, 基础数据>
+     * 索引位置映射集合Map<索引名称,索引位置>
      */
-    private final Map<Object, V> dataTable = new HashMap<Object, V>();
+    private final Map<String, Integer> indexSlots = new HashMap<String, Integer>();
     /**
-     * 索引映射集合Map<索引字段值域的组合名称, List<ID>>
+     * 有序索引字段数组，下标为有序索引位置
      */
-    private final Map<String, List<Object>> indexTable = new HashMap<String, List<Object>>();
+    private final Field[] rangeFields;
     /**
-     * 已排序的基础数据ID列表
+     * 有序索引位置映射集合Map<有序索引名称,有序索引位置>
      */
-    private List<Object> idList = new ArrayList<Object>();
+    private final Map<String, Integer> rangeSlots = new HashMap<String, Integer>();
+    /**
+     * 当前发布的数据快照
+     */
+    private volatile Snapshot<V> snapshot;
 
     /**
      * 构建基础数据存储对象
@@ -88,34 +102,135 @@ public class Storage<V> {
                         resource.type() + "ResourceReader", ResourceReader.class);
         this.reader = reader;
         this.identifier = GetterBuilder.createIdGetter(clazz);
-        this.indexVisitors = IndexBuilder.createIndexVisitors(clazz);
+        Map<String, IndexBuilder.IndexVisitor> visitors = IndexBuilder.createIndexVisitors(clazz);
+        this.indexVisitors =
+                visitors.values().toArray(new IndexBuilder.IndexVisitor[visitors.size()]);
+        for (int i = 0; i < indexVisitors.length; i++) {
+            indexSlots.put(indexVisitors[i].getName(), i);
+        }
+        Map<String, List<Object>> indexTable = Collections.emptyMap();
+        Map<Object, V> dataTable = Collections.emptyMap();
+        TypedIndex<V>[] indexes = newTypedIndexes();
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = new TypedIndex.Builder<V>(indexVisitors[i]).build(indexTable, dataTable);
+        }
+        this.rangeFields = ReflectionHelper.getDeclaredFieldsWith(clazz, RangeIndex.class);
+        for (int i = 0; i < rangeFields.length; i++) {
+            RangeIndex rangeIndex = rangeFields[i].getAnnotation(RangeIndex.class);
+            if (SortedIndex.modeOf(rangeFields[i].getType()) < 0) {
+                throw new IllegalArgumentException(String.format(
+                        "基础数据[%s]有序索引[%s]字段类型不支持排序", clazz.getName(), rangeIndex.name()));
+            }
+            if (rangeSlots.put(rangeIndex.name(), i) != null) {
+                throw new IllegalArgumentException(String.format("基础数据[%s]有序索引[%s]重复",
+                        clazz.getName(), rangeIndex.name()));
+            }
+        }
+        SortedIndex<V>[] sortedIndexes = newSortedIndexes();
+        for (int i = 0; i < sortedIndexes.length; i++) {
+            sortedIndexes[i] =
+                    SortedIndex.build(rangeFields[i], Collections.emptyList(), dataTable);
+        }
+        this.snapshot = new Snapshot<V>(dataTable, indexTable, Collections.emptyList(),
+                Collections.<V>emptyList(), indexes, sortedIndexes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private TypedIndex<V>[] newTypedIndexes() {
+        return new TypedIndex[indexVisitors.length];
+    }
+
+    @SuppressWarnings("unchecked")
+    private SortedIndex<V>[] newSortedIndexes() {
+        return new SortedIndex[rangeFields.length];
+    }
+
+    /**
+     * 获取基础数据类对象
+     * 
+     * @return
+     */
+    public Class<V> getResourceClass() {
+        return clazz;
+    }
+
+    /**
+     * 获取索引句柄
+     * 
+     * @param indexName 索引名称
+     * @return
+     * @throws IllegalArgumentException 索引不存在
+     */
+    public IndexHandle<V> getIndexHandle(String indexName) {
+        Integer slot = indexSlots.get(indexName);
+        if (slot == null) {
+            throw new IllegalArgumentException(String.format("基础数据[%s]不存在索引[%s]",
+                    clazz.getName(), indexName));
+        }
+        return new IndexHandle<V>(this, indexName, slot.intValue());
     }
 
     /**
-     * 获取基础数据映射集合
+     * 获取有序索引句柄
+     * 
+     * @param indexName 有序索引名称
+     * @return
+     * @throws IllegalArgumentException 有序索引不存在
+     */
+    public RangeIndexHandle<V> getRangeIndexHandle(String indexName) {
+        Integer slot = rangeSlots.get(indexName);
+        if (slot == null) {
+            throw new IllegalArgumentException(String.format("基础数据[%s]不存在有序索引[%s]",
+                    clazz.getName(), indexName));
+        }
+        return new RangeIndexHandle<V>(this, indexName, slot.intValue());
+    }
+
+    /**
+     * 获取当前快照中指定位置的有序索引
+     * 
+     * @param slot
+     * @return
+     */
+    SortedIndex<V> getSortedIndex(int slot) {
+        return snapshot.sortedIndexes[slot];
+    }
+
+    /**
+     * 获取当前快照中指定位置的索引
+     * 
+     * @param slot
+     * @return
+     */
+    TypedIndex<V> getTypedIndex(int slot) {
+        return snapshot.indexes[slot];
+    }
+
+    /**
+     * 获取基础数据映射集合(不可修改)
      * 
      * @return
      */
     public Map<Object, V> getDataTable() {
-        return dataTable;
+        return snapshot.dataTable;
     }
 
     /**
-     * 获取索引映射集合
+     * 获取索引映射集合(不可修改)，添加索引使用{@link #addToIndex(String, Object[], Object)}
      * 
      * @return
      */
     public Map<String, List<Object>> getIndexTable() {
-        return indexTable;
+        return snapshot.indexTable;
     }
 
     /**
-     * 获取基础数据ID列表
+     * 获取基础数据ID列表(不可修改)
      * 
      * @return
      */
     public List<Object> getIdList() {
-        return idList;
+        return snapshot.idList;
     }
 
     /**
@@ -126,8 +241,13 @@ public class Storage<V> {
      * @return
      */
     public List<V> getByIndex(String indexName, Object... indexValues) {
-        List<Object> idList = getIndexIdList(indexName, indexValues);
-        return list(idList);
+        Snapshot<V> current = snapshot;
+        String indexKey = getIndexKey(indexName, indexValues);
+        Integer slot = indexSlots.get(indexName);
+        if (slot != null) {
+            return current.indexes[slot.intValue()].get(indexKey);
+        }
+        return list(current, current.indexTable.get(indexKey));
     }
 
     /**
@@ -139,7 +259,7 @@ public class Storage<V> {
      */
     public List<Object> getIndexIdList(String indexName, Object... indexValues) {
         String indexkey = getIndexKey(indexName, indexValues);
-        return indexTable.get(indexkey);
+        return snapshot.indexTable.get(indexkey);
     }
 
     /**
@@ -149,7 +269,7 @@ public class Storage<V> {
      * @return
      */
     public V get(Object key) {
-        return dataTable.get(key);
+        return snapshot.dataTable.get(key);
     }
 
     /**
@@ -159,10 +279,14 @@ public class Storage<V> {
      * @return
      */
     public List<V> list(List<Object> idList) {
+        return list(snapshot, idList);
+    }
+
+    private List<V> list(Snapshot<V> current, List<Object> idList) {
         List<V> resultList = new ArrayList<V>();
         if (idList != null && !idList.isEmpty()) {
             for (Object id : idList) {
-                V entity = get(id);
+                V entity = current.dataTable.get(id);
                 if (entity != null) {
                     resultList.add(entity);
                 }
@@ -172,18 +296,51 @@ public class Storage<V> {
     }
 
     /**
-     * 获取全部基础数据列表
+     * 获取全部基础数据列表(不可修改，按ID列表排序)
      * 
      * @return
      */
     public List<V> listAll() {
-        return new ArrayList<V>(dataTable.values());
+        return snapshot.values;
+    }
+
+    /**
+     * 添加基础数据ID索引，复制索引映射集合后发布新的快照
+     * 
+     * @param indexName 索引名称
+     * @param indexValues 索引值
+     * @param id 基础数据ID
+     */
+    public synchronized void addToIndex(String indexName, Object[] indexValues, Object id) {
+        String indexKey = getIndexKey(indexName, indexValues);
+        Snapshot<V> current = snapshot;
+        List<Object> idList = current.indexTable.get(indexKey);
+        if (idList != null && idList.contains(id)) {
+            return;
+        }
+        List<Object> newIdList =
+                idList != null ? new ArrayList<Object>(idList) : new ArrayList<Object>(1);
+        newIdList.add(id);
+        Map<String, List<Object>> indexTable =
+                new HashMap<String, List<Object>>(current.indexTable);
+        indexTable.put(indexKey, Collections.unmodifiableList(newIdList));
+        TypedIndex<V>[] indexes = current.indexes;
+        Integer slot = indexSlots.get(indexName);
+        V value = current.dataTable.get(id);
+        if (slot != null && value != null) {
+            indexes = indexes.clone();
+            indexes[slot] = indexes[slot].with(indexKey, indexValues, value);
+        }
+        snapshot = new Snapshot<V>(current.dataTable, Collections.unmodifiableMap(indexTable),
+                current.idList, current.values, indexes, current.sortedIndexes);
     }
 
     /**
      * 基础数据仓库重新加载
+     * 
+     * @return false:加载失败，保留原有数据
      */
-    public synchronized void reload() {
+    public synchronized boolean reload() {
         try {
             URL resource = ClassUtils.getDefaultClassLoader().getResource(location);
             File file = resource != null ? ResourceUtils.getFile(resource) : null;
@@ -195,13 +352,14 @@ public class Storage<V> {
                         MessageFormatter.format("基础数据[{}]所对应的资源文件[{}]不存在!", clazz.getName(),
                                 location);
                 LOGGER.error(message.getMessage());
-                return;
+                return false;
             }
             InputStream input = resource.openStream();
             Iterator<V> it = reader.read(input, clazz);
 
+            List<V> rows = new ArrayList<V>();
             List<Object> idList_copy = new ArrayList<Object>();
-            Map<Object, V> dataTable_copy = new HashMap<Object, V>();
+            final Map<Object, V> dataTable_copy = new HashMap<Object, V>();
             Map<String, List<Object>> indexTable_copy = new HashMap<String, List<Object>>();
             while (it.hasNext()) {
                 V obj = it.next();
@@ -217,19 +375,52 @@ public class Storage<V> {
                 if (offer(obj, dataTable_copy) != null) {
                     throw new RuntimeException(String.format("重复异常: [%s]", new Object[] {obj}));
                 }
-                index(obj, indexTable_copy);
+                rows.add(obj);
                 idList_copy.add(identifier.getValue(obj));
             }
-            sort(idList_copy, indexTable_copy, dataTable_copy);
-
-            idList.clear();
-            indexTable.clear();
-            dataTable.clear();
+            Comparator<Object> comparator = createComparator(dataTable_copy);
+            // id排序
+            Collections.sort(idList_copy, comparator);
 
-            dataTable.putAll(dataTable_copy);
-            indexTable.putAll(indexTable_copy);
-            idList.addAll(idList_copy);
+            // 各索引相互独立，表达式判断和排序并行执行
+            boolean parallel = indexVisitors.length + rangeFields.length > 1;
+            List<Future<IndexResult<V>>> indexFutures =
+                    new ArrayList<Future<IndexResult<V>>>(indexVisitors.length);
+            for (IndexBuilder.IndexVisitor indexVisitor : indexVisitors) {
+                indexFutures.add(fork(
+                        createIndexTask(indexVisitor, rows, dataTable_copy, comparator), parallel));
+            }
+            List<Future<SortedIndex<V>>> sortedFutures =
+                    new ArrayList<Future<SortedIndex<V>>>(rangeFields.length);
+            for (final Field rangeField : rangeFields) {
+                final List<Object> idList = idList_copy;
+                sortedFutures.add(fork(new Callable<SortedIndex<V>>() {
+                    @Override
+                    public SortedIndex<V> call() {
+                        return SortedIndex.build(rangeField, idList, dataTable_copy);
+                    }
+                }, parallel));
+            }
+            List<V> values = new ArrayList<V>(idList_copy.size());
+            for (Object id : idList_copy) {
+                values.add(dataTable_copy.get(id));
+            }
+            TypedIndex<V>[] indexes = newTypedIndexes();
+            for (int i = 0; i < indexes.length; i++) {
+                IndexResult<V> result = join(indexFutures.get(i));
+                indexTable_copy.putAll(result.indexTable);
+                indexes[i] = result.index;
+            }
+            SortedIndex<V>[] sortedIndexes = newSortedIndexes();
+            for (int i = 0; i < sortedIndexes.length; i++) {
+                sortedIndexes[i] = join(sortedFutures.get(i));
+            }
+            snapshot = new Snapshot<V>(Collections.unmodifiableMap(dataTable_copy),
+                    Collections.unmodifiableMap(indexTable_copy),
+                    Collections.unmodifiableList(idList_copy),
+                    Collections.unmodifiableList(values), indexes, sortedIndexes);
             LOGGER.info("完成加载  {} 基础数据...", clazz.getName());
+            return true;
         } catch (IOException e) {
             FormattingTuple message =
                     MessageFormatter.format("基础数据[{}]所对应的资源文件[{}]不存在!", clazz.getName(), location);
@@ -237,6 +428,7 @@ public class Storage<V> {
         } catch (Exception e) {
             LOGGER.error("{}", e);
         }
+        return false;
     }
 
     /**
@@ -246,7 +438,7 @@ public class Storage<V> {
      * @param value 索引值
      * @return
      */
-    private String getIndexKey(String name, Object... value) {
+    String getIndexKey(String name, Object... value) {
         return KeyBuilder.buildIndexKey(clazz, name, value);
     }
 
@@ -264,17 +456,71 @@ public class Storage<V> {
     }
 
     /**
-     * 索引基础数据处理
+     * 创建单个索引的构建任务
      * 
-     * @param value 基础数据
-     * @param indexTable 索引集合
+     * @param indexVisitor 索引访问者
+     * @param rows 按读取顺序的基础数据
+     * @param dataTable 基础数据集合
+     * @param comparator 索引ID列表排序器
+     * @return
+     */
+    private Callable<IndexResult<V>> createIndexTask(final IndexBuilder.IndexVisitor indexVisitor,
+            final List<V> rows, final Map<Object, V> dataTable,
+            final Comparator<Object> comparator) {
+        return new Callable<IndexResult<V>>() {
+            @Override
+            public IndexResult<V> call() {
+                Map<String, List<Object>> indexTable = new HashMap<String, List<Object>>();
+                TypedIndex.Builder<V> builder = new TypedIndex.Builder<V>(indexVisitor);
+                for (V value : rows) {
+                    if (indexVisitor.indexable(value)) {
+                        String indexKey = indexVisitor.getIndexKey(value);
+                        addToIndexList(indexKey, value, indexTable);
+                        builder.add(indexKey, value);
+                    }
+                }
+                // 索引排序
+                for (Map.Entry<String, List<Object>> entry : indexTable.entrySet()) {
+                    Collections.sort(entry.getValue(), comparator);
+                    entry.setValue(Collections.unmodifiableList(entry.getValue()));
+                }
+                return new IndexResult<V>(indexTable, builder.build(indexTable, dataTable));
+            }
+        };
+    }
+
+    /**
+     * 提交任务，在加载线程池中执行时提交到该线程池，否则提交到公共线程池；不并行时在当前线程执行
+     * 
+     * @param task
+     * @param parallel
+     * @return
      */
-    private void index(V value, Map<String, List<Object>> indexTable) {
-        for (IndexBuilder.IndexVisitor indexVisitor : indexVisitors.values()) {
-            if (indexVisitor.indexable(value)) {
-                String indexKey = indexVisitor.getIndexKey(value);
-                addToIndexList(indexKey, value, indexTable);
+    private static <T> Future<T> fork(Callable<T> task, boolean parallel) {
+        if (parallel) {
+            return ForkJoinTask.adapt(task).fork();
+        }
+        FutureTask<T> future = new FutureTask<T>(task);
+        future.run();
+        return future;
+    }
+
+    /**
+     * 等待任务完成，任务异常原样抛出
+     * 
+     * @param future
+     * @return
+     * @throws Exception
+     */
+    private static <T> T join(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
             }
+            throw new RuntimeException(cause);
         }
     }
 
@@ -296,14 +542,12 @@ public class Storage<V> {
     }
 
     /**
-     * 排序
+     * 创建ID排序器，基础数据实现了{@link Comparable}时按基础数据排序，否则按ID排序
      * 
-     * @param idList ID列表
-     * @param indexTable 索引集合
      * @param dataTable 基础数据集合
+     * @return
      */
-    private void sort(List<Object> idList, Map<String, List<Object>> indexTable,
-            final Map<Object, V> dataTable) {
+    private Comparator<Object> createComparator(final Map<Object, V> dataTable) {
         Comparator<Object> comparator = null;
         if (Comparable.class.isAssignableFrom(clazz)) {
             comparator = new Comparator<Object>() {
@@ -327,15 +571,64 @@ public class Storage<V> {
                 }
             };
         }
-        
-        //索引排序
-        for (List<Object> indexedIdList : indexTable.values()) {
-            if (indexedIdList != null && !indexedIdList.isEmpty()) {
-                Collections.sort(indexedIdList, comparator);
-            }
+        return comparator;
+    }
+
+    /**
+     * 单个索引的构建结果
+     * 
+     * @param <V>
+     */
+    private static final class IndexResult<V> {
+        final Map<String, List<Object>> indexTable;
+        final TypedIndex<V> index;
+
+        IndexResult(Map<String, List<Object>> indexTable, TypedIndex<V> index) {
+            this.indexTable = indexTable;
+            this.index = index;
+        }
+    }
+
+    /**
+     * 不可修改的数据快照
+     * 
+     * @param <V>
+     */
+    private static final class Snapshot<V> {
+        /**
+         * 基础数据映射集合Map<ID, 基础数据>
+         */
+        final Map<Object, V> dataTable;
+        /**
+         * 索引映射集合Map<索引字段值域的组合名称, List<ID>>
+         */
+        final Map<String, List<Object>> indexTable;
+        /**
+         * 已排序的基础数据ID列表
+         */
+        final List<Object> idList;
+        /**
+         * 按ID列表排序的基础数据列表
+         */
+        final List<V> values;
+        /**
+         * 声明的索引，下标为索引位置
+         */
+        final TypedIndex<V>[] indexes;
+        /**
+         * 有序索引，下标为有序索引位置
+         */
+        final SortedIndex<V>[] sortedIndexes;
+
+        Snapshot(Map<Object, V> dataTable, Map<String, List<Object>> indexTable,
+                List<Object> idList, List<V> values, TypedIndex<V>[] indexes,
+                SortedIndex<V>[] sortedIndexes) {
+            this.dataTable = dataTable;
+            this.indexTable = indexTable;
+            this.idList = idList;
+            this.values = values;
+            this.indexes = indexes;
+            this.sortedIndexes = sortedIndexes;
         }
-        
-        // id排序
-        Collections.sort(idList, comparator);
     }
 }
@@ -0,0 +1,279 @@
+package org.chinasb.common.basedb;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.chinasb.common.utility.ReflectionHelper;
+
+/**
+ * 单个索引的基础数据列表
+ * <p>按索引键值保存已排序、不可修改的基础数据列表；单个整数字段的索引以字段值为long键，
+ * 两个int范围字段的索引将字段值打包为一个long键，查询不需要拼接索引键值；
+ * 其它索引只能按索引键值(类名&索引名称#索引值1^索引值2)查询
+ * <p>打包键与索引键值的匹配规则一致：查询值按字符串形式与字段值比较
+ * 
+ * @author zhujuan
+ * @param <V>
+ */
+final class TypedIndex<V> {
+    /**
+     * 不打包，只能按索引键值查询
+     */
+    static final int NOT_PACKED = 0;
+    /**
+     * 单个整数字段
+     */
+    static final int PACK_LONG = 1;
+    /**
+     * 两个int范围的整数字段，高32位为第一个字段
+     */
+    static final int PACK_INT_PAIR = 2;
+
+    /**
+     * 打包方式
+     */
+    final int packing;
+    /**
+     * 索引字段数量
+     */
+    final int arity;
+    /**
+     * 索引映射集合Map<索引键值, 基础数据列表>
+     */
+    private final Map<String, List<V>> valueTable;
+    /**
+     * 打包键映射集合，不打包时为null
+     */
+    private final LongKeyMap<List<V>> packedTable;
+
+    private TypedIndex(int packing, int arity, Map<String, List<V>> valueTable,
+            LongKeyMap<List<V>> packedTable) {
+        this.packing = packing;
+        this.arity = arity;
+        this.valueTable = valueTable;
+        this.packedTable = packedTable;
+    }
+
+    /**
+     * 按索引键值获取基础数据列表
+     * 
+     * @param indexKey
+     * @return 不可修改的列表
+     */
+    List<V> get(String indexKey) {
+        List<V> values = valueTable.get(indexKey);
+        return values != null ? values : Collections.<V>emptyList();
+    }
+
+    /**
+     * 按打包键获取基础数据列表，调用者需确认打包方式
+     * 
+     * @param key
+     * @return 不可修改的列表
+     */
+    List<V> get(long key) {
+        List<V> values = packedTable.get(key);
+        return values != null ? values : Collections.<V>emptyList();
+    }
+
+    /**
+     * 按索引值获取基础数据列表，调用者需确认已打包
+     * 
+     * @param indexValues
+     * @return 不可修改的列表
+     */
+    List<V> getByValues(Object[] indexValues) {
+        Long key = packValues(indexValues);
+        return key != null ? get(key.longValue()) : Collections.<V>emptyList();
+    }
+
+    /**
+     * 复制并添加基础数据
+     * 
+     * @param indexKey 索引键值
+     * @param indexValues 索引值
+     * @param value 基础数据
+     * @return
+     */
+    TypedIndex<V> with(String indexKey, Object[] indexValues, V value) {
+        List<V> exist = valueTable.get(indexKey);
+        List<V> values = exist != null ? new ArrayList<V>(exist) : new ArrayList<V>(1);
+        values.add(value);
+        List<V> unmodifiable = Collections.unmodifiableList(values);
+        Map<String, List<V>> newValueTable = new HashMap<String, List<V>>(valueTable);
+        newValueTable.put(indexKey, unmodifiable);
+        LongKeyMap<List<V>> newPackedTable = packedTable;
+        Long key = packing != NOT_PACKED ? packValues(indexValues) : null;
+        if (key != null) {
+            Map<Long, List<V>> map = packedTable.toMap();
+            map.put(key, unmodifiable);
+            newPackedTable = new LongKeyMap<List<V>>(map);
+        }
+        return new TypedIndex<V>(packing, arity, Collections.unmodifiableMap(newValueTable),
+                newPackedTable);
+    }
+
+    /**
+     * 打包查询值
+     * 
+     * @param indexValues
+     * @return 查询值不能匹配任何整数字段值时返回null
+     */
+    private Long packValues(Object[] indexValues) {
+        if (indexValues == null || indexValues.length != arity) {
+            return null;
+        }
+        Long first = toLong(indexValues[0]);
+        if (first == null || packing == PACK_LONG) {
+            return first;
+        }
+        Long second = toLong(indexValues[1]);
+        if (second == null || first.longValue() != first.intValue()
+                || second.longValue() != second.intValue()) {
+            return null;
+        }
+        return Long.valueOf(pack(first.intValue(), second.intValue()));
+    }
+
+    /**
+     * 打包两个int
+     * 
+     * @param first
+     * @param second
+     * @return
+     */
+    static long pack(int first, int second) {
+        return ((long) first << 32) | (second & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 查询值转换为整数，字符串形式必须与整数的字符串形式一致
+     * 
+     * @param value
+     * @return
+     */
+    private static Long toLong(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            return Long.valueOf(((Number) value).longValue());
+        }
+        if (value == null) {
+            return null;
+        }
+        String text = String.valueOf(value);
+        try {
+            long result = Long.parseLong(text);
+            return Long.toString(result).equals(text) ? Long.valueOf(result) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 按索引字段类型确定打包方式
+     * 
+     * @param fields
+     * @return
+     */
+    private static int packingOf(List<Field> fields) {
+        if (fields.size() == 1 && isIntegral(fields.get(0).getType())) {
+            return PACK_LONG;
+        }
+        if (fields.size() == 2 && isIntRange(fields.get(0).getType())
+                && isIntRange(fields.get(1).getType())) {
+            return PACK_INT_PAIR;
+        }
+        return NOT_PACKED;
+    }
+
+    private static boolean isIntegral(Class<?> type) {
+        return isIntRange(type) || type == long.class || type == Long.class;
+    }
+
+    private static boolean isIntRange(Class<?> type) {
+        return type == int.class || type == Integer.class || type == short.class
+                || type == Short.class || type == byte.class || type == Byte.class;
+    }
+
+    /**
+     * 索引构建器，在重新加载时收集索引键值
+     * 
+     * @param <V>
+     */
+    static final class Builder<V> {
+        private final List<Field> fields;
+        private final Map<String, Long> packedKeys = new LinkedHashMap<String, Long>();
+        private int packing;
+
+        Builder(IndexBuilder.IndexVisitor visitor) {
+            this.fields = visitor.getFields();
+            this.packing = packingOf(fields);
+        }
+
+        /**
+         * 登记基础数据的索引键值，字段值为null时整个索引不再打包
+         * 
+         * @param indexKey
+         * @param value
+         */
+        void add(String indexKey, Object value) {
+            Long key = null;
+            if (packing != NOT_PACKED) {
+                key = packFields(value);
+                if (key == null) {
+                    packing = NOT_PACKED;
+                }
+            }
+            packedKeys.put(indexKey, key);
+        }
+
+        private Long packFields(Object value) {
+            Object first = getFieldValue(fields.get(0), value);
+            if (first == null || packing == PACK_LONG) {
+                return first != null ? Long.valueOf(((Number) first).longValue()) : null;
+            }
+            Object second = getFieldValue(fields.get(1), value);
+            if (second == null) {
+                return null;
+            }
+            return Long.valueOf(pack(((Number) first).intValue(), ((Number) second).intValue()));
+        }
+
+        private static Object getFieldValue(Field field, Object value) {
+            field.setAccessible(true);
+            return ReflectionHelper.getField(field, value);
+        }
+
+        /**
+         * 按排序后的索引映射集合构建索引
+         * 
+         * @param indexTable 索引映射集合Map<索引键值, List<ID>>
+         * @param dataTable 基础数据映射集合
+         * @return
+         */
+        TypedIndex<V> build(Map<String, List<Object>> indexTable, Map<Object, V> dataTable) {
+            Map<String, List<V>> valueTable = new HashMap<String, List<V>>(packedKeys.size() * 2);
+            Map<Long, List<V>> packedMap = new HashMap<Long, List<V>>(packedKeys.size() * 2);
+            for (Map.Entry<String, Long> entry : packedKeys.entrySet()) {
+                List<Object> idList = indexTable.get(entry.getKey());
+                List<V> values = new ArrayList<V>(idList.size());
+                for (Object id : idList) {
+                    values.add(dataTable.get(id));
+                }
+                List<V> unmodifiable = Collections.unmodifiableList(values);
+                valueTable.put(entry.getKey(), unmodifiable);
+                if (packing != NOT_PACKED) {
+                    packedMap.put(entry.getValue(), unmodifiable);
+                }
+            }
+            return new TypedIndex<V>(packing, fields.size(),
+                    Collections.unmodifiableMap(valueTable),
+                    packing != NOT_PACKED ? new LongKeyMap<List<V>>(packedMap) : null);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.chinasb.common.basedb.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 静态资源数据有序索引声明
+ * <p>按字段值排序，支持floor/ceiling/范围查询；字段类型为整数、浮点数、{@link java.util.Date}
+ * 或实现了{@link Comparable}的类型，字段值为null的数据不加入索引
+ * 
+ * @author zhujuan
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD})
+public @interface RangeIndex {
+    /** 索引名，同一资源的有序索引名必须唯一 */
+    String name();
+}
@@ -19,4 +19,10 @@ public @interface Resource {
 
     /** 资源文件类型 */
     String type() default "json";
+
+    /**
+     * 依赖的资源数据类，依赖的数据加载完成后才加载本数据，
+     * {@link org.chinasb.common.basedb.InitializeBean}中可以访问依赖的数据
+     */
+    Class<?>[] dependsOn() default {};
 }
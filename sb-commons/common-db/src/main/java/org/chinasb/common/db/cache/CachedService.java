@@ -1,7 +1,14 @@
 package org.chinasb.common.db.cache;
 
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
 /**
  * 缓存服务接口
+ * <p>Long/Integer/Short/Byte类型ID的实体存放在各自类型的{@link EntityCacheRegion}中，
+ * 未配置容量的区域平分实体缓存总容量；按"实体类名_ID"格式的字符串键访问时同样使用对应的区域，
+ * 其余字符串键的实体存放在单独的实体缓存中
  * 
  * @author zhujuan
  */
@@ -25,6 +32,14 @@ public interface CachedService {
      */
     Object put2EntityCache(String key, Object value, long timeToLive);
 
+    /**
+     * 批量添加实体缓存（put-if-absent模式）
+     * 
+     * @param entities 键与实体
+     * @return 键与缓存中的实体，已存在的键返回缓存中原有的实体
+     */
+    Map<String, Object> put2EntityCache(Map<String, ?> entities);
+
     /**
      * 获取实体缓存
      * 
@@ -40,6 +55,57 @@ public interface CachedService {
      */
     void removeFromEntityCache(String key);
 
+    /**
+     * 添加实体缓存（put-if-absent模式）
+     * 
+     * @param entityClazz
+     * @param id
+     * @param value
+     * @return 缓存中的实体
+     */
+    Object put2EntityCache(Class<?> entityClazz, Serializable id, Object value);
+
+    /**
+     * 批量添加实体缓存（put-if-absent模式）
+     * 
+     * @param entityClazz
+     * @param entities ID与实体
+     * @return ID与缓存中的实体，已存在的ID返回缓存中原有的实体
+     */
+    Map<Serializable, Object> put2EntityCache(Class<?> entityClazz,
+            Map<? extends Serializable, ?> entities);
+
+    /**
+     * 获取实体缓存
+     * 
+     * @param entityClazz
+     * @param id
+     * @return
+     */
+    Object getFromEntityCache(Class<?> entityClazz, Serializable id);
+
+    /**
+     * 移除实体缓存
+     * 
+     * @param entityClazz
+     * @param id
+     */
+    void removeFromEntityCache(Class<?> entityClazz, Serializable id);
+
+    /**
+     * 获取各实体缓存区域的统计
+     * 
+     * @return
+     */
+    List<EntityCacheStat> getEntityCacheStats();
+
+    /**
+     * 获取冷实体存储的统计
+     * 
+     * @return 未启用冷实体存储时返回null
+     */
+    ColdCacheStat getColdCacheStat();
+
     /**
      * 添加通用缓存（覆盖模式）
      * 
@@ -3,21 +3,32 @@ package org.chinasb.common.db.cache;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.chinasb.common.db.dao.CommonDao;
 import org.chinasb.common.db.model.BaseModel;
+import org.chinasb.common.utility.NamedDaemonThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-
 /**
  * 缓存服务适配器
+ * <p>缓存未命中时同一实体同时只有一个加载者，其它调用者等待(或通过异步接口关联)同一个加载结果
  * 
  * @author zhujuan
  */
@@ -30,18 +41,32 @@ public abstract class CachedServiceAdpter {
     @Autowired
     protected CachedService cachedService;
     /**
-     * 类对象锁缓存集合
+     * 异步加载实体的线程池，未配置时使用默认的守护线程池
      */
-    private static final LoadingCache<String, Object> OBJECT_MAPS = CacheBuilder.newBuilder()
-            .maximumSize(1000).build(new CacheLoader<String, Object>() {
-                @Override
-                public Object load(String clz) {
-                    return new Object();
-                }
-            });
+    @Autowired(required = false)
+    @Qualifier("dbcache.load_executor")
+    private Executor loadExecutor;
+    /**
+     * 子类覆盖了get方法时，{@link #getEntityFromIdList(Collection, Class)}逐个调用get，不绕过子类的实现
+     */
+    private final boolean getOverridden = isOverridden(getClass(), "get", Comparable.class,
+            Class.class)
+            || isOverridden(getClass(), "get", Comparable.class, Class.class, boolean.class);
+    /**
+     * 子类只覆盖了{@link #getEntityFromDB(Serializable, Class)}时，批量加载逐个调用该方法
+     */
+    private final boolean entityFromDBOverridden =
+            isOverridden(getClass(), "getEntityFromDB", Serializable.class, Class.class)
+                    && !isOverridden(getClass(), "getEntitiesFromDB", Collection.class,
+                            Class.class);
+    /**
+     * 正在加载的实体，同一实体的并发加载者等待先到者的结果
+     */
+    private static final ConcurrentMap<String, CompletableFuture<Object>> LOADING_MAP =
+            new ConcurrentHashMap<String, CompletableFuture<Object>>();
 
     /**
-     * 获取实体键名
+     * 获取实体键名，用于登记正在加载的实体，缓存本身按实体类型与ID访问
      * 
      * @param id
      * @param entityClazz
@@ -78,30 +103,140 @@ public abstract class CachedServiceAdpter {
         if (id == null) {
             return null;
         }
-        String key = getEntityIdKey(id, clazz);
         if (!fromCache) {
-            cachedService.removeFromEntityCache(key);
+            cachedService.removeFromEntityCache(clazz, id);
         } else {
-            T entity = (T) cachedService.getFromEntityCache(key);
+            T entity = (T) cachedService.getFromEntityCache(clazz, id);
             if (entity != null) {
                 return entity;
             }
         }
 
-        Object lockObject = OBJECT_MAPS.getUnchecked(key);
         try {
-            synchronized (lockObject) {
-                T entity = (T) cachedService.getFromEntityCache(key);
-                if (entity != null) {
-                    return entity;
+            return (T) load(id, clazz, false).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.error("{}", e.getCause());
+        }
+        return null;
+    }
+
+    /**
+     * 异步获取实体，缓存命中时返回已完成的结果，否则在加载线程池中加载
+     * 
+     * @param id
+     * @param clazz
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends BaseModel<PK>, PK extends Comparable<PK> & Serializable> CompletableFuture<T> getAsync(
+            PK id, Class<T> clazz) {
+        if (id == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        T entity = (T) cachedService.getFromEntityCache(clazz, id);
+        if (entity != null) {
+            return CompletableFuture.completedFuture(entity);
+        }
+        return load(id, clazz, true).thenApply(new Function<Object, T>() {
+            @Override
+            public T apply(Object entity) {
+                return (T) entity;
+            }
+        });
+    }
+
+    /**
+     * 异步批量获取实体，全部命中缓存时返回已完成的结果，否则在加载线程池中执行{@link #getAll(Collection, Class)}
+     * 
+     * @param ids
+     * @param clazz
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends BaseModel<PK>, PK extends Comparable<PK> & Serializable> CompletableFuture<List<T>> getAllAsync(
+            final Collection<PK> ids, final Class<T> clazz) {
+        List<T> entityList = new ArrayList<T>();
+        if ((ids == null) || (ids.isEmpty())) {
+            return CompletableFuture.completedFuture(entityList);
+        }
+        for (PK id : ids) {
+            if (id == null) {
+                continue;
+            }
+            T entity = (T) cachedService.getFromEntityCache(clazz, id);
+            if (entity == null) {
+                return CompletableFuture.supplyAsync(new Supplier<List<T>>() {
+                    @Override
+                    public List<T> get() {
+                        return getAll(ids, clazz);
+                    }
+                }, getLoadExecutor());
+            }
+            entityList.add(entity);
+        }
+        return CompletableFuture.completedFuture(entityList);
+    }
+
+    /**
+     * 加载实体，已有加载者时返回其结果
+     * 
+     * @param id
+     * @param clazz
+     * @param async true:在加载线程池中加载, false:在当前线程加载
+     * @return
+     */
+    private <T extends BaseModel<PK>, PK extends Comparable<PK> & Serializable> CompletableFuture<Object> load(
+            final PK id, final Class<T> clazz, boolean async) {
+        final String key = getEntityIdKey(id, clazz);
+        final CompletableFuture<Object> future = new CompletableFuture<Object>();
+        CompletableFuture<Object> exist = LOADING_MAP.putIfAbsent(key, future);
+        if (exist != null) {
+            return exist;
+        }
+        Runnable loader = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // 检查缓存与登记加载之间可能已由其它加载者放入缓存
+                    Object entity = cachedService.getFromEntityCache(clazz, id);
+                    if (entity == null) {
+                        entity = cachedService.put2EntityCache(clazz, id,
+                                getEntityFromDB(id, clazz));
+                    }
+                    future.complete(entity);
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    LOADING_MAP.remove(key, future);
                 }
-                entity = getEntityFromDB(id, clazz);
-                return (T) cachedService.put2EntityCache(key, entity);
             }
-        } catch (Exception e) {
-            LOGGER.error("{}", e);
+        };
+        if (!async) {
+            loader.run();
+            return future;
         }
-        return null;
+        try {
+            getLoadExecutor().execute(loader);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+            LOADING_MAP.remove(key, future);
+        }
+        return future;
+    }
+
+    private Executor getLoadExecutor() {
+        return loadExecutor != null ? loadExecutor : DefaultLoadExecutor.INSTANCE;
+    }
+
+    /**
+     * 默认的实体加载线程池，首次异步加载时创建
+     */
+    private static final class DefaultLoadExecutor {
+        private static final ExecutorService INSTANCE = Executors.newFixedThreadPool(
+                Math.max(4, Runtime.getRuntime().availableProcessors() * 2),
+                new NamedDaemonThreadFactory("实体加载线程"));
     }
 
 
@@ -114,6 +249,9 @@ public abstract class CachedServiceAdpter {
      */
     protected <T extends BaseModel<PK>, PK extends Comparable<PK> & Serializable> List<T> getEntityFromIdList(
             Collection<PK> idList, Class<T> entityClazz) {
+        if (!getOverridden) {
+            return getAll(idList, entityClazz);
+        }
         List<T> entityList = new ArrayList<T>();
         if ((idList == null) || (idList.isEmpty())) {
             return entityList;
@@ -127,6 +265,122 @@ public abstract class CachedServiceAdpter {
         return entityList;
     }
 
+    /**
+     * 批量获取实体
+     * <p>先从缓存获取，未命中的实体通过{@link #getEntitiesFromDB(Collection, Class)}一次加载并放入缓存；
+     * 其它线程正在加载的实体等待其结果，不重复查询
+     * 
+     * @param ids
+     * @param clazz
+     * @return 按ID顺序返回存在的实体
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends BaseModel<PK>, PK extends Comparable<PK> & Serializable> List<T> getAll(
+            Collection<PK> ids, Class<T> clazz) {
+        List<T> entityList = new ArrayList<T>();
+        if ((ids == null) || (ids.isEmpty())) {
+            return entityList;
+        }
+        Map<PK, Object> entities = new HashMap<PK, Object>(ids.size());
+        Map<PK, CompletableFuture<Object>> waiting = new HashMap<PK, CompletableFuture<Object>>();
+        Map<String, PK> loadingIds = new LinkedHashMap<String, PK>();
+        Map<String, CompletableFuture<Object>> loadingFutures =
+                new HashMap<String, CompletableFuture<Object>>();
+        for (PK id : ids) {
+            if (id == null || entities.containsKey(id) || waiting.containsKey(id)) {
+                continue;
+            }
+            Object entity = cachedService.getFromEntityCache(clazz, id);
+            if (entity != null) {
+                entities.put(id, entity);
+                continue;
+            }
+            String key = getEntityIdKey(id, clazz);
+            CompletableFuture<Object> future = new CompletableFuture<Object>();
+            CompletableFuture<Object> exist = LOADING_MAP.putIfAbsent(key, future);
+            if (exist != null) {
+                waiting.put(id, exist);
+            } else {
+                loadingIds.put(key, id);
+                loadingFutures.put(key, future);
+            }
+        }
+        if (!loadingIds.isEmpty()) {
+            try {
+                loadEntities(loadingIds, loadingFutures, entities, clazz);
+            } catch (Exception e) {
+                LOGGER.error("{}", e);
+            } finally {
+                for (Map.Entry<String, CompletableFuture<Object>> entry : loadingFutures.entrySet()) {
+                    entry.getValue().complete(null);
+                    LOADING_MAP.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        for (Map.Entry<PK, CompletableFuture<Object>> entry : waiting.entrySet()) {
+            try {
+                entities.put(entry.getKey(), entry.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                LOGGER.error("{}", e);
+            }
+        }
+        for (PK id : ids) {
+            Object entity = id == null ? null : entities.remove(id);
+            if (entity != null) {
+                entityList.add((T) entity);
+            }
+        }
+        return entityList;
+    }
+
+    /**
+     * 加载本线程负责的实体并放入缓存，放入缓存后才唤醒等待者
+     * 
+     * @param loadingIds
+     * @param loadingFutures
+     * @param entities
+     * @param clazz
+     */
+    private <T extends BaseModel<PK>, PK extends Comparable<PK> & Serializable> void loadEntities(
+            Map<String, PK> loadingIds, Map<String, CompletableFuture<Object>> loadingFutures,
+            Map<PK, Object> entities, Class<T> clazz) {
+        List<PK> missIds = new ArrayList<PK>(loadingIds.size());
+        for (Map.Entry<String, PK> entry : loadingIds.entrySet()) {
+            // 检查缓存与登记加载之间可能已由其它线程放入缓存
+            Object entity = cachedService.getFromEntityCache(clazz, entry.getValue());
+            if (entity != null) {
+                entities.put(entry.getValue(), entity);
+                loadingFutures.get(entry.getKey()).complete(entity);
+            } else {
+                missIds.add(entry.getValue());
+            }
+        }
+        if (missIds.isEmpty()) {
+            return;
+        }
+        Map<PK, Object> loaded = new HashMap<PK, Object>(missIds.size());
+        for (T entity : getEntitiesFromDB(missIds, clazz)) {
+            if (entity != null && entity.getId() != null) {
+                loaded.put(entity.getId(), entity);
+            }
+        }
+        Map<Serializable, Object> cached = cachedService.put2EntityCache(clazz, loaded);
+        for (Map.Entry<String, PK> entry : loadingIds.entrySet()) {
+            CompletableFuture<Object> future = loadingFutures.get(entry.getKey());
+            if (future.isDone()) {
+                continue;
+            }
+            Object entity = cached.get(entry.getValue());
+            if (entity != null) {
+                entities.put(entry.getValue(), entity);
+            }
+            future.complete(entity);
+        }
+    }
+
     /**
      * 获取实体缓存
      * 
@@ -137,7 +391,7 @@ public abstract class CachedServiceAdpter {
     @SuppressWarnings("unchecked")
     protected <T extends BaseModel<PK>, PK extends Comparable<PK> & Serializable> T getEntityFromCache(
             PK id, Class<T> entityClazz) {
-        return (T) cachedService.getFromEntityCache(getEntityIdKey(id, entityClazz));
+        return (T) cachedService.getFromEntityCache(entityClazz, id);
     }
 
     /**
@@ -151,6 +405,49 @@ public abstract class CachedServiceAdpter {
         return commonDao.get(id, entityClazz);
     }
 
+    /**
+     * 批量获取实体，子类只覆盖了{@link #getEntityFromDB(Serializable, Class)}时逐个调用该方法
+     * 
+     * @param ids
+     * @param entityClazz
+     * @return
+     */
+    protected <T, PK extends Serializable> List<T> getEntitiesFromDB(Collection<PK> ids,
+            Class<T> entityClazz) {
+        if (!entityFromDBOverridden) {
+            return commonDao.getAll(ids, entityClazz);
+        }
+        List<T> entityList = new ArrayList<T>(ids.size());
+        for (PK id : ids) {
+            T entity = getEntityFromDB(id, entityClazz);
+            if (entity != null) {
+                entityList.add(entity);
+            }
+        }
+        return entityList;
+    }
+
+    /**
+     * 子类是否覆盖了本类的方法
+     * 
+     * @param clazz
+     * @param name
+     * @param parameterTypes
+     * @return
+     */
+    private static boolean isOverridden(Class<?> clazz, String name, Class<?>... parameterTypes) {
+        for (Class<?> c = clazz; c != null && c != CachedServiceAdpter.class; c = c
+                .getSuperclass()) {
+            try {
+                c.getDeclaredMethod(name, parameterTypes);
+                return true;
+            } catch (NoSuchMethodException e) {
+                continue;
+            }
+        }
+        return false;
+    }
+
     /**
      * 移除实体缓存
      * 
@@ -159,7 +456,7 @@ public abstract class CachedServiceAdpter {
      */
     public <T extends BaseModel<PK>, PK extends Comparable<PK> & Serializable> void removeEntityFromCache(
             PK id, Class<T> entityClazz) {
-        cachedService.removeFromEntityCache(getEntityIdKey(id, entityClazz));
+        cachedService.removeFromEntityCache(entityClazz, id);
     }
 
     /**
@@ -172,7 +469,7 @@ public abstract class CachedServiceAdpter {
             Collection<PK> idList, Class<T> entityClazz) {
         if ((idList != null) && (!idList.isEmpty())) {
             for (PK id : idList) {
-                cachedService.removeFromEntityCache(getEntityIdKey(id, entityClazz));
+                cachedService.removeFromEntityCache(entityClazz, id);
             }
         }
     }
@@ -189,8 +486,8 @@ public abstract class CachedServiceAdpter {
         if ((entiys != null) && (entiys.length > 0)) {
             List<T> result = new ArrayList<T>();
             for (T entiy : entiys) {
-                result.add((T) cachedService.put2EntityCache(
-                        getEntityIdKey(entiy.getId(), entiy.getClass()), entiy));
+                result.add((T) cachedService.put2EntityCache(entiy.getClass(), entiy.getId(),
+                        entiy));
             }
             return result;
         }
@@ -209,8 +506,8 @@ public abstract class CachedServiceAdpter {
         if ((entiys != null) && (entiys.size() > 0)) {
             List<T> result = new ArrayList<T>();
             for (T entiy : entiys) {
-                result.add((T) cachedService.put2EntityCache(
-                        getEntityIdKey(entiy.getId(), entiy.getClass()), entiy));
+                result.add((T) cachedService.put2EntityCache(entiy.getClass(), entiy.getId(),
+                        entiy));
             }
             return result;
         }
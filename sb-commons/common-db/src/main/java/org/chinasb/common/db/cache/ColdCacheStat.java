@@ -0,0 +1,123 @@
+package org.chinasb.common.db.cache;
+
+/**
+ * 冷实体存储统计快照
+ *
+ * @author zhujuan
+ */
+public class ColdCacheStat {
+    /**
+     * 实体数量(含等待转存的实体)
+     */
+    private final int size;
+    /**
+     * 实体序列化后的总字节数
+     */
+    private final long storedBytes;
+    /**
+     * 已占用的块字节数
+     */
+    private final long usedBytes;
+    /**
+     * 已分配的堆外内存字节数
+     */
+    private final long allocatedBytes;
+    /**
+     * 容量字节数
+     */
+    private final long capacityBytes;
+    /**
+     * 命中次数
+     */
+    private final long hitCount;
+    /**
+     * 未命中次数
+     */
+    private final long missCount;
+    /**
+     * 存入的实体数量
+     */
+    private final long putCount;
+    /**
+     * 空间不足被淘汰的实体数量
+     */
+    private final long evictionCount;
+    /**
+     * 不能序列化、超出容量或转存队列已满被拒绝的实体数量
+     */
+    private final long rejectionCount;
+
+    public ColdCacheStat(int size, long storedBytes, long usedBytes, long allocatedBytes,
+            long capacityBytes, long hitCount, long missCount, long putCount,
+            long evictionCount, long rejectionCount) {
+        this.size = size;
+        this.storedBytes = storedBytes;
+        this.usedBytes = usedBytes;
+        this.allocatedBytes = allocatedBytes;
+        this.capacityBytes = capacityBytes;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+        this.evictionCount = evictionCount;
+        this.rejectionCount = rejectionCount;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getStoredBytes() {
+        return storedBytes;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getPutCount() {
+        return putCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getRejectionCount() {
+        return rejectionCount;
+    }
+
+    /**
+     * 命中率
+     *
+     * @return
+     */
+    public double getHitRate() {
+        long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    @Override
+    public String toString() {
+        return "ColdCacheStat [size=" + size + ", storedBytes=" + storedBytes + ", usedBytes="
+                + usedBytes + ", allocatedBytes=" + allocatedBytes + ", capacityBytes="
+                + capacityBytes + ", hitCount=" + hitCount + ", missCount=" + missCount
+                + ", hitRate=" + getHitRate() + ", putCount=" + putCount + ", evictionCount="
+                + evictionCount + ", rejectionCount=" + rejectionCount + "]";
+    }
+}
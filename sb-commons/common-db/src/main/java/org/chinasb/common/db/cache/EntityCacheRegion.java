@@ -0,0 +1,98 @@
+package org.chinasb.common.db.cache;
+
+/**
+ * 实体缓存区域
+ * <p>每个实体类型一个区域，以long表示的实体ID为键，查询时不再拼接字符串键；
+ * 区域内的实体过期后，仍在入库队列中的实体延长存活时间，其余实体被移除
+ * 
+ * @author zhujuan
+ */
+public interface EntityCacheRegion {
+    /**
+     * 获取区域的实体类型
+     * 
+     * @return
+     */
+    Class<?> getEntityClass();
+
+    /**
+     * 获取区域容量
+     * 
+     * @return
+     */
+    int getCapacity();
+
+    /**
+     * 调整区域容量，超出新容量的实体在后续添加或清除过期实体时移除；
+     * 缓存服务在各区域间分配实体缓存总容量时调用，不支持调整的区域忽略
+     *
+     * @param capacity
+     */
+    default void setCapacity(int capacity) {}
+
+    /**
+     * 获取实体存活时间(毫秒)
+     * 
+     * @return
+     */
+    long getTimeToLive();
+
+    /**
+     * 获取实体
+     * 
+     * @param id
+     * @return 不存在或已过期时返回null
+     */
+    Object get(long id);
+
+    /**
+     * 添加实体（put-if-absent模式）
+     * 
+     * @param id
+     * @param entity
+     * @param timeToLive 存活时间，不大于0时使用区域的存活时间
+     * @return 缓存中的实体
+     */
+    Object putIfAbsent(long id, Object entity, long timeToLive);
+
+    /**
+     * 移除实体
+     * 
+     * @param id
+     */
+    void remove(long id);
+
+    /**
+     * 获取实体数量
+     * 
+     * @return
+     */
+    int size();
+
+    /**
+     * 清除过期实体
+     * 
+     * @return 清除的数量
+     */
+    int clearInvalid();
+
+    /**
+     * 获取区域统计
+     * 
+     * @return
+     */
+    EntityCacheStat getStat();
+
+    /**
+     * 实体移出区域的监听器，过期或超出容量被移除时通知，显式移除时不通知
+     */
+    interface EvictionListener {
+        /**
+         * 实体已被移出区域
+         * 
+         * @param id
+         * @param entity
+         */
+        void onEvicted(long id, Object entity);
+    }
+}
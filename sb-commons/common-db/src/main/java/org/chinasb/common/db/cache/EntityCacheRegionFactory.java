@@ -0,0 +1,24 @@
+package org.chinasb.common.db.cache;
+
+import java.util.function.Predicate;
+
+/**
+ * 实体缓存区域工厂
+ * <p>容器中存在该类型的Bean时，{@link CachedService}使用它创建实体缓存区域
+ * 
+ * @author zhujuan
+ */
+public interface EntityCacheRegionFactory {
+    /**
+     * 创建实体缓存区域
+     * 
+     * @param entityClass 实体类型
+     * @param capacity 区域容量
+     * @param timeToLive 实体存活时间(毫秒)
+     * @param inDbQueue 判断实体是否在入库队列中，在队列中的实体不能被移除
+     * @param evictionListener 实体过期或超出容量被移除后调用，可能为null
+     * @return
+     */
+    EntityCacheRegion createRegion(Class<?> entityClass, int capacity, long timeToLive,
+            Predicate<Object> inDbQueue, EntityCacheRegion.EvictionListener evictionListener);
+}
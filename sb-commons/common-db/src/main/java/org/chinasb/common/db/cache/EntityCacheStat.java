@@ -0,0 +1,104 @@
+package org.chinasb.common.db.cache;
+
+/**
+ * 实体缓存区域统计快照
+ * 
+ * @author zhujuan
+ */
+public class EntityCacheStat {
+    /**
+     * 实体类型
+     */
+    private final Class<?> entityClass;
+    /**
+     * 实体数量
+     */
+    private final int size;
+    /**
+     * 区域容量
+     */
+    private final int capacity;
+    /**
+     * 命中次数
+     */
+    private final long hitCount;
+    /**
+     * 未命中次数
+     */
+    private final long missCount;
+    /**
+     * 添加的实体数量
+     */
+    private final long putCount;
+    /**
+     * 超出容量被移除的实体数量
+     */
+    private final long evictionCount;
+    /**
+     * 过期被移除的实体数量
+     */
+    private final long expirationCount;
+
+    public EntityCacheStat(Class<?> entityClass, int size, int capacity, long hitCount,
+            long missCount, long putCount, long evictionCount, long expirationCount) {
+        this.entityClass = entityClass;
+        this.size = size;
+        this.capacity = capacity;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getPutCount() {
+        return putCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getExpirationCount() {
+        return expirationCount;
+    }
+
+    /**
+     * 命中率
+     * 
+     * @return
+     */
+    public double getHitRate() {
+        long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    @Override
+    public String toString() {
+        return "EntityCacheStat [entityClass=" + entityClass.getName() + ", size=" + size
+                + ", capacity=" + capacity + ", hitCount=" + hitCount + ", missCount="
+                + missCount + ", hitRate=" + getHitRate() + ", putCount=" + putCount
+                + ", evictionCount=" + evictionCount + ", expirationCount=" + expirationCount
+                + "]";
+    }
+}
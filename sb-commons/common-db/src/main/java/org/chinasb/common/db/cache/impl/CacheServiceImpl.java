@@ -1,15 +1,29 @@
 package org.chinasb.common.db.cache.impl;
 
-import java.util.HashSet;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.chinasb.common.db.cache.CachedService;
+import org.chinasb.common.db.cache.ColdCacheStat;
+import org.chinasb.common.db.cache.EntityCacheRegion;
+import org.chinasb.common.db.cache.EntityCacheRegionFactory;
+import org.chinasb.common.db.cache.EntityCacheStat;
 import org.chinasb.common.db.executor.DbService;
+import org.chinasb.common.db.model.BaseModel;
 import org.chinasb.common.db.model.CacheObject;
+import org.chinasb.common.db.model.CacheRegion;
+import org.chinasb.common.threadpool.timer.HashedTimingWheel;
 import org.chinasb.common.utility.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +33,8 @@ import org.springframework.stereotype.Service;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.MapMaker;
 
 /**
@@ -31,6 +47,15 @@ public class CacheServiceImpl implements CachedService {
     private static final Logger LOGGER = LoggerFactory.getLogger(CacheServiceImpl.class);
     private static final int ONE_MIN_MILISECONDS = Constants.ONE_MINUTE_MILLISECOND;
     private static final int MAX_EXTEND_MILISECONDS = Constants.ONE_MINUTE_MILLISECOND * 10;
+    /**
+     * 过期索引时间轮每格时长(毫秒)及格数
+     */
+    private static final int EXPIRY_TICK_MILISECONDS = Constants.ONE_SECOND_MILLISECOND;
+    private static final int EXPIRY_WHEEL_SIZE = 512;
+    /**
+     * 未配置容量的缓存区域分得的最小容量
+     */
+    private static final int MIN_REGION_CAPACITY = 1024;
 
     /**
      * 通用缓存容量大小
@@ -50,9 +75,20 @@ public class CacheServiceImpl implements CachedService {
     @Autowired(required = false)
     @Qualifier("dbcache.ttl_of_entity_cache")
     private Integer entityCacheTTL = ONE_MIN_MILISECONDS * 120;
+    /**
+     * 冷实体存储容量(MB)，0表示不启用；使用堆外内存，-XX:MaxDirectMemorySize不能小于该值
+     */
+    @Autowired(required = false)
+    @Qualifier("dbcache.max_megabytes_of_cold_cache")
+    private Integer coldCacheMegabytes = 0;
 
     @Autowired
     private DbService dbService;
+    /**
+     * 实体缓存区域工厂，未配置时使用{@link LongKeyEntityCacheRegion}
+     */
+    @Autowired(required = false)
+    private EntityCacheRegionFactory entityCacheRegionFactory;
 
     /**
      * 通用缓存
@@ -62,18 +98,123 @@ public class CacheServiceImpl implements CachedService {
      * 实体缓存
      */
     private ConcurrentMap<String, CacheObject> ENTITY_CACHE = null;
+    /**
+     * 数值ID实体的缓存区域
+     */
+    private final ConcurrentMap<Class<?>, EntityCacheRegion> ENTITY_REGIONS =
+            new ConcurrentHashMap<Class<?>, EntityCacheRegion>();
+    /**
+     * 按实体类名登记的缓存区域，按字符串键访问数值ID实体时使用
+     */
+    private final ConcurrentMap<String, EntityCacheRegion> REGIONS_BY_NAME =
+            new ConcurrentHashMap<String, EntityCacheRegion>();
+    /**
+     * 未配置容量的缓存区域，平分实体缓存总容量扣除已配置容量后的部分，创建区域时重新分配
+     */
+    private final List<EntityCacheRegion> sharedRegions = new ArrayList<EntityCacheRegion>();
+    /**
+     * 已配置的区域容量之和
+     */
+    private int reservedCapacity;
+    /**
+     * 冷实体存储，缓存区域移出的实体转存到这里，未启用时为null
+     */
+    private ColdEntityStore coldStore;
+    /**
+     * 过期索引时间轮
+     */
+    private HashedTimingWheel expiryWheel;
+    /**
+     * 实体缓存过期索引
+     */
+    private ExpiryIndex entityExpiryIndex;
+    /**
+     * 通用缓存过期索引，只登记带存活时间的缓存
+     */
+    private ExpiryIndex commonExpiryIndex;
+    /**
+     * 判断实体是否在入库队列中
+     */
+    private final Predicate<Object> inDbQueue = new Predicate<Object>() {
+        @Override
+        public boolean test(Object entity) {
+            return dbService.isInDbQueue(entity);
+        }
+    };
 
     /**
      * 缓存初始化
      */
     @PostConstruct
     protected void initialize() {
-        Cache<String, Object> COMMON =
-                CacheBuilder.newBuilder().maximumSize(commonCacheSize.intValue()).build();
+        expiryWheel = new HashedTimingWheel("缓存过期索引", EXPIRY_TICK_MILISECONDS,
+                TimeUnit.MILLISECONDS, EXPIRY_WHEEL_SIZE);
+        entityExpiryIndex = new ExpiryIndex(expiryWheel);
+        commonExpiryIndex = new ExpiryIndex(expiryWheel);
+        // 移除、替换或超出容量淘汰时取消过期索引条目
+        Cache<String, Object> COMMON = CacheBuilder.newBuilder()
+                .maximumSize(commonCacheSize.intValue())
+                .removalListener(new RemovalListener<String, Object>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, Object> notification) {
+                        onCommonCacheRemoved(notification.getKey(), notification.getValue());
+                    }
+                }).build();
         COMMON_CACHE = COMMON.asMap();
-        Cache<String, CacheObject> ENTITY =
-                CacheBuilder.newBuilder().maximumSize(entityCacheSize.intValue()).build();
+        Cache<String, CacheObject> ENTITY = CacheBuilder.newBuilder()
+                .maximumSize(entityCacheSize.intValue())
+                .removalListener(new RemovalListener<String, CacheObject>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, CacheObject> notification) {
+                        entityExpiryIndex.cancel(notification.getKey(), notification.getValue());
+                    }
+                }).build();
         ENTITY_CACHE = ENTITY.asMap();
+        if (coldCacheMegabytes.intValue() > 0) {
+            coldStore = new ColdEntityStore(coldCacheMegabytes.intValue() * 1024L * 1024L);
+        }
+    }
+
+    /**
+     * 通用缓存移除后取消对应的过期索引条目，哈希缓存取消其中全部子键的条目
+     * 
+     * @param key
+     * @param value
+     */
+    @SuppressWarnings("unchecked")
+    private void onCommonCacheRemoved(String key, Object value) {
+        if (value instanceof CacheObject) {
+            commonExpiryIndex.cancel(key, (CacheObject) value);
+        } else if (value instanceof Map) {
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                if (entry.getValue() instanceof CacheObject) {
+                    commonExpiryIndex.cancel(hashEntryKey(key, entry.getKey()),
+                            (CacheObject) entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * 哈希缓存子键在过期索引中的键
+     * 
+     * @param hashKey
+     * @param subKey
+     * @return
+     */
+    private static Object hashEntryKey(String hashKey, String subKey) {
+        return Arrays.asList(hashKey, subKey);
+    }
+
+    /**
+     * 停止过期索引时间轮，释放冷实体存储
+     */
+    @PreDestroy
+    protected void destroy() {
+        expiryWheel.stop();
+        if (coldStore != null) {
+            coldStore.close();
+        }
     }
 
     @Override
@@ -90,19 +231,62 @@ public class CacheServiceImpl implements CachedService {
             LOGGER.debug("put2EntityCache [key: [{}], timeToLive: [{} ms]",
                     new Object[] {key, Long.valueOf(timeToLive)});
         }
-        if (timeToLive > 0L) {
-            ENTITY_CACHE.putIfAbsent(key, CacheObject.valueOf(value, timeToLive));
-        } else {
-            ENTITY_CACHE.putIfAbsent(key, CacheObject.valueOf(value, entityCacheTTL.intValue()));
+        EntityCacheRegion region = findRegion(key, value);
+        if (region != null) {
+            return put2Region(region, regionIdOf(key), value, timeToLive);
+        }
+        CacheObject cacheObject = CacheObject.valueOf(value,
+                timeToLive > 0L ? timeToLive : entityCacheTTL.intValue());
+        if (ENTITY_CACHE.putIfAbsent(key, cacheObject) == null) {
+            entityExpiryIndex.schedule(new EntityEntry(key, cacheObject));
         }
         return getFromEntityCache(key);
     }
 
+    @Override
+    public Map<String, Object> put2EntityCache(Map<String, ?> entities) {
+        Map<String, Object> result = new LinkedHashMap<String, Object>(entities.size());
+        long ttl = entityCacheTTL.intValue();
+        for (Map.Entry<String, ?> entry : entities.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            if (key == null || value == null) {
+                continue;
+            }
+            EntityCacheRegion region = findRegion(key, value);
+            if (region != null) {
+                result.put(key, put2Region(region, regionIdOf(key), value, -1L));
+                continue;
+            }
+            CacheObject cacheObject = CacheObject.valueOf(value, ttl);
+            CacheObject exist = ENTITY_CACHE.putIfAbsent(key, cacheObject);
+            if (exist != null && !exist.isValidate() && !dbService.isInDbQueue(exist.getValue())
+                    && ENTITY_CACHE.replace(key, exist, cacheObject)) {
+                exist = null;
+            }
+            if (exist == null) {
+                entityExpiryIndex.schedule(new EntityEntry(key, cacheObject));
+            }
+            result.put(key, exist == null ? value : exist.getValue());
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("put2EntityCache [size: [{}]]", result.size());
+        }
+        return result;
+    }
+
     @Override
     public Object getFromEntityCache(String key) {
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("getFromEntityCache-Key:[{}]", key);
         }
+        EntityCacheRegion region = findRegion(key, null);
+        if (region != null) {
+            Object entity = getFromEntityCache(region.getEntityClass(), regionIdOf(key));
+            if (entity != null) {
+                return entity;
+            }
+        }
         CacheObject cacheObject = ENTITY_CACHE.get(key);
         if (cacheObject == null) {
             return null;
@@ -140,11 +324,264 @@ public class CacheServiceImpl implements CachedService {
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("removeFromEntityCache [key: [{}]]", new Object[] {key});
         }
+        EntityCacheRegion region = findRegion(key, null);
+        if (region != null) {
+            removeFromEntityCache(region.getEntityClass(), regionIdOf(key));
+        }
         if (ENTITY_CACHE.containsKey(key)) {
             ENTITY_CACHE.remove(key);
         }
     }
 
+    @Override
+    public Object put2EntityCache(Class<?> entityClazz, Serializable id, Object value) {
+        if (id == null || value == null) {
+            return value;
+        }
+        if (isRegionId(id)) {
+            return put2Region(getRegion(entityClazz), ((Number) id).longValue(), value, -1L);
+        }
+        return put2EntityCache(getEntityKey(entityClazz, id), value);
+    }
+
+    @Override
+    public Map<Serializable, Object> put2EntityCache(Class<?> entityClazz,
+            Map<? extends Serializable, ?> entities) {
+        Map<Serializable, Object> result =
+                new LinkedHashMap<Serializable, Object>(entities.size());
+        for (Map.Entry<? extends Serializable, ?> entry : entities.entrySet()) {
+            Serializable id = entry.getKey();
+            Object value = entry.getValue();
+            if (id == null || value == null) {
+                continue;
+            }
+            result.put(id, put2EntityCache(entityClazz, id, value));
+        }
+        return result;
+    }
+
+    @Override
+    public Object getFromEntityCache(Class<?> entityClazz, Serializable id) {
+        if (id == null) {
+            return null;
+        }
+        if (isRegionId(id)) {
+            EntityCacheRegion region = getRegion(entityClazz);
+            long key = ((Number) id).longValue();
+            Object entity = region.get(key);
+            if (entity == null && coldStore != null) {
+                entity = coldStore.take(getEntityKey(entityClazz, id));
+                if (entity != null) {
+                    entity = region.putIfAbsent(key, entity, -1L);
+                }
+            }
+            return entity;
+        }
+        return getFromEntityCache(getEntityKey(entityClazz, id));
+    }
+
+    @Override
+    public void removeFromEntityCache(Class<?> entityClazz, Serializable id) {
+        if (id == null) {
+            return;
+        }
+        if (isRegionId(id)) {
+            EntityCacheRegion region = ENTITY_REGIONS.get(entityClazz);
+            if (region != null) {
+                region.remove(((Number) id).longValue());
+            }
+            if (coldStore != null) {
+                coldStore.remove(getEntityKey(entityClazz, id));
+            }
+            return;
+        }
+        removeFromEntityCache(getEntityKey(entityClazz, id));
+    }
+
+    @Override
+    public List<EntityCacheStat> getEntityCacheStats() {
+        List<EntityCacheStat> stats = new ArrayList<EntityCacheStat>(ENTITY_REGIONS.size());
+        for (EntityCacheRegion region : ENTITY_REGIONS.values()) {
+            stats.add(region.getStat());
+        }
+        return stats;
+    }
+
+    @Override
+    public ColdCacheStat getColdCacheStat() {
+        return coldStore != null ? coldStore.getStat() : null;
+    }
+
+    /**
+     * 获取实体类型的缓存区域，不存在时按{@link CacheRegion}配置创建
+     * 
+     * @param entityClazz
+     * @return
+     */
+    private EntityCacheRegion getRegion(final Class<?> entityClazz) {
+        EntityCacheRegion region = ENTITY_REGIONS.get(entityClazz);
+        if (region != null) {
+            return region;
+        }
+        synchronized (sharedRegions) {
+            region = ENTITY_REGIONS.get(entityClazz);
+            if (region != null) {
+                return region;
+            }
+            int capacity = -1;
+            long timeToLive = entityCacheTTL.intValue();
+            CacheRegion config = entityClazz.getAnnotation(CacheRegion.class);
+            if (config != null) {
+                capacity = config.capacity();
+                if (config.timeToLive() > 0L) {
+                    timeToLive = config.timeToLive();
+                }
+            }
+            boolean shared = capacity <= 0;
+            if (shared) {
+                capacity = sharedCapacity(sharedRegions.size() + 1);
+            } else {
+                reservedCapacity += capacity;
+            }
+            region = createRegion(entityClazz, capacity, timeToLive);
+            if (shared) {
+                sharedRegions.add(region);
+            }
+            int share = sharedCapacity(sharedRegions.size());
+            for (EntityCacheRegion sharedRegion : sharedRegions) {
+                sharedRegion.setCapacity(share);
+            }
+            ENTITY_REGIONS.put(entityClazz, region);
+            REGIONS_BY_NAME.put(entityClazz.getName(), region);
+            return region;
+        }
+    }
+
+    /**
+     * 创建实体类型的缓存区域
+     * 
+     * @param entityClazz
+     * @param capacity
+     * @param timeToLive
+     * @return
+     */
+    private EntityCacheRegion createRegion(final Class<?> entityClazz, int capacity,
+            long timeToLive) {
+        EntityCacheRegion.EvictionListener evictionListener = null;
+        if (coldStore != null) {
+            evictionListener = new EntityCacheRegion.EvictionListener() {
+                @Override
+                public void onEvicted(long id, Object entity) {
+                    coldStore.offer(getEntityKey(entityClazz, id), entity);
+                }
+            };
+        }
+        if (entityCacheRegionFactory != null) {
+            return entityCacheRegionFactory.createRegion(entityClazz, capacity, timeToLive,
+                    inDbQueue, evictionListener);
+        }
+        return new LongKeyEntityCacheRegion(entityClazz, capacity, timeToLive, inDbQueue,
+                evictionListener, new ExpiryIndex(expiryWheel));
+    }
+
+    /**
+     * 计算未配置容量的区域各自分得的容量，不低于{@link #MIN_REGION_CAPACITY}
+     * 
+     * @param count 未配置容量的区域数量
+     * @return
+     */
+    private int sharedCapacity(int count) {
+        int remaining = entityCacheSize.intValue() - reservedCapacity;
+        return Math.max(remaining / Math.max(count, 1), MIN_REGION_CAPACITY);
+    }
+
+    /**
+     * 添加实体到缓存区域，添加成功时丢弃冷实体存储中的旧副本
+     * 
+     * @param region
+     * @param id
+     * @param value
+     * @param timeToLive
+     * @return 缓存中的实体
+     */
+    private Object put2Region(EntityCacheRegion region, long id, Object value,
+            long timeToLive) {
+        Object entity = region.putIfAbsent(id, value, timeToLive);
+        if (coldStore != null && entity == value) {
+            coldStore.remove(getEntityKey(region.getEntityClass(), Long.valueOf(id)));
+        }
+        return entity;
+    }
+
+    /**
+     * 查找字符串键对应的缓存区域，键的格式与{@link #getEntityKey(Class, Serializable)}相同；
+     * 添加使用数值ID的实体时区域不存在则创建
+     * 
+     * @param key
+     * @param value 添加的实体，获取或移除时为null
+     * @return 不是数值ID实体的键时返回null
+     */
+    private EntityCacheRegion findRegion(String key, Object value) {
+        if (regionIdOf(key) == null) {
+            return null;
+        }
+        String className = key.substring(0, key.lastIndexOf('_'));
+        EntityCacheRegion region = REGIONS_BY_NAME.get(className);
+        if (region == null && value instanceof BaseModel
+                && value.getClass().getName().equals(className)
+                && isRegionId(((BaseModel<?>) value).getId())) {
+            region = getRegion(value.getClass());
+        }
+        return region;
+    }
+
+    /**
+     * 解析字符串键中的数值ID
+     * 
+     * @param key
+     * @return 键不以"_数值"结尾时返回null
+     */
+    private static Long regionIdOf(String key) {
+        int index = key.lastIndexOf('_');
+        int length = key.length() - index - 1;
+        if (index <= 0 || length <= 0 || length > 20) {
+            return null;
+        }
+        for (int i = index + 1; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if ((c < '0' || c > '9') && !(c == '-' && i == index + 1 && length > 1)) {
+                return null;
+            }
+        }
+        try {
+            return Long.valueOf(key.substring(index + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 是否存放在实体缓存区域的ID类型
+     * 
+     * @param id
+     * @return
+     */
+    private static boolean isRegionId(Serializable id) {
+        return id instanceof Long || id instanceof Integer || id instanceof Short
+                || id instanceof Byte;
+    }
+
+    /**
+     * 获取实体的字符串缓存键，冷实体存储及按字符串键访问实体缓存时使用
+     * 
+     * @param entityClazz
+     * @param id
+     * @return
+     */
+    private static String getEntityKey(Class<?> entityClazz, Serializable id) {
+        return entityClazz.getName() + "_" + id;
+    }
+
     @Override
     public void put2CommonCache(String key, Object value) {
         put2CommonCache(key, value, -1L);
@@ -160,7 +597,9 @@ public class CacheServiceImpl implements CachedService {
                     new Object[] {key, Long.valueOf(timeToLive)});
         }
         if (timeToLive > 0L) {
-            COMMON_CACHE.put(key, CacheObject.valueOf(value, timeToLive));
+            CacheObject cacheObject = CacheObject.valueOf(value, timeToLive);
+            COMMON_CACHE.put(key, cacheObject);
+            commonExpiryIndex.schedule(new CommonEntry(key, cacheObject));
         } else {
             COMMON_CACHE.put(key, value);
         }
@@ -181,9 +620,16 @@ public class CacheServiceImpl implements CachedService {
                     key, Long.valueOf(timeToLive),});
         }
         if (timeToLive > 0L) {
-            CacheObject cacheObject =
-                    (CacheObject) COMMON_CACHE.putIfAbsent(key,
-                            CacheObject.valueOf(value, timeToLive));
+            CacheObject newObject = CacheObject.valueOf(value, timeToLive);
+            Object exist = COMMON_CACHE.putIfAbsent(key, newObject);
+            if (exist == null) {
+                commonExpiryIndex.schedule(new CommonEntry(key, newObject));
+                return null;
+            }
+            if (!(exist instanceof CacheObject)) {
+                return exist;
+            }
+            CacheObject cacheObject = (CacheObject) exist;
             if (!cacheObject.isValidate()) {
                 if (COMMON_CACHE.containsKey(key)) {
                     COMMON_CACHE.remove(key);
@@ -224,9 +670,14 @@ public class CacheServiceImpl implements CachedService {
             cacheMap = (Map<String, Object>) COMMON_CACHE.get(hashKey);
         }
         if (timeToLive > 0L) {
-            cacheMap.put(subKey, CacheObject.valueOf(value, timeToLive));
+            CacheObject subCacheObject = CacheObject.valueOf(value, timeToLive);
+            cacheMap.put(subKey, subCacheObject);
+            commonExpiryIndex.schedule(new HashEntry(hashKey, cacheMap, subKey, subCacheObject));
         } else {
-            cacheMap.put(subKey, value);
+            Object previous = cacheMap.put(subKey, value);
+            if (previous instanceof CacheObject) {
+                commonExpiryIndex.cancel(hashEntryKey(hashKey, subKey), (CacheObject) previous);
+            }
         }
     }
 
@@ -261,12 +712,19 @@ public class CacheServiceImpl implements CachedService {
             cacheMap = (Map<String, Object>) COMMON_CACHE.get(hashKey);
         }
         if (timeToLive > 0L) {
-            CacheObject subCacheObject =
-                    (CacheObject) cacheMap.putIfAbsent(subKey,
-                            CacheObject.valueOf(value, timeToLive));
+            CacheObject newObject = CacheObject.valueOf(value, timeToLive);
+            Object exist = cacheMap.putIfAbsent(subKey, newObject);
+            if (exist == null) {
+                commonExpiryIndex.schedule(new HashEntry(hashKey, cacheMap, subKey, newObject));
+                return null;
+            }
+            if (!(exist instanceof CacheObject)) {
+                return exist;
+            }
+            CacheObject subCacheObject = (CacheObject) exist;
             if (!subCacheObject.isValidate()) {
-                if (cacheMap.containsKey(subKey)) {
-                    cacheMap.remove(subKey);
+                if (cacheMap.remove(subKey, subCacheObject)) {
+                    commonExpiryIndex.cancel(hashEntryKey(hashKey, subKey), subCacheObject);
                 }
                 return null;
             }
@@ -333,8 +791,8 @@ public class CacheServiceImpl implements CachedService {
                                 Boolean.valueOf(subCacheObject.isValidate())});
             }
             if (!subCacheObject.isValidate()) {
-                if (cacheMap.containsKey(subKey)) {
-                    cacheMap.remove(subKey);
+                if (cacheMap.remove(subKey, subCacheObject)) {
+                    commonExpiryIndex.cancel(hashEntryKey(hashKey, subKey), subCacheObject);
                 }
                 return null;
             }
@@ -365,63 +823,109 @@ public class CacheServiceImpl implements CachedService {
             return;
         }
         Map<String, Object> map = (Map<String, Object>) cache;
-        if (map.containsKey(subKey)) {
-            map.remove(subKey);
+        Object removed = map.remove(subKey);
+        if (removed instanceof CacheObject) {
+            commonExpiryIndex.cancel(hashEntryKey(hashKey, subKey), (CacheObject) removed);
         }
     }
 
+    /**
+     * 只处理过期索引中已到期的条目，访问延长了过期时间的条目重新登记
+     */
     @Override
-    @SuppressWarnings("unchecked")
     public void clearInValidateCacheObject(boolean clearInValidCommonCache) {
-        Set<String> entiyKeySet = new HashSet<String>(ENTITY_CACHE.keySet());
-        for (String key : entiyKeySet) {
-            CacheObject cacheObject = (CacheObject) ENTITY_CACHE.get(key);
-            if (cacheObject != null) {
-                if (!cacheObject.isValidate()) {
-                    synchronized (cacheObject) {
-                        if (!cacheObject.isValidate()) {
-                            Object entity = cacheObject.getValue();
-                            if (!dbService.isInDbQueue(entity)) {
-                                ENTITY_CACHE.remove(key);
-                            } else {
-                                cacheObject.increaseExpireTime(MAX_EXTEND_MILISECONDS);
-                            }
-                        }
-                    }
+        for (EntityCacheRegion region : ENTITY_REGIONS.values()) {
+            region.clearInvalid();
+        }
+        entityExpiryIndex.expire();
+        if (clearInValidCommonCache) {
+            commonExpiryIndex.expire();
+        }
+    }
+
+    /**
+     * 实体缓存过期索引条目
+     */
+    private final class EntityEntry extends ExpiryIndex.Entry {
+        EntityEntry(String key, CacheObject cacheObject) {
+            super(key, cacheObject);
+        }
+
+        @Override
+        boolean isLive() {
+            return ENTITY_CACHE.get(key) == cacheObject;
+        }
+
+        @Override
+        boolean expire() {
+            synchronized (cacheObject) {
+                if (cacheObject.isValidate()) {
+                    return false;
                 }
+                if (dbService.isInDbQueue(cacheObject.getValue())) {
+                    cacheObject.increaseExpireTime(MAX_EXTEND_MILISECONDS);
+                    return false;
+                }
+                ENTITY_CACHE.remove(key, cacheObject);
+                return true;
             }
         }
-        if (clearInValidCommonCache) {
-            Set<String> commonKeySet = new HashSet<String>(COMMON_CACHE.keySet());
-            for (String key : commonKeySet) {
-                Object object = COMMON_CACHE.get(key);
-                if (object != null) {
-                    if ((object instanceof CacheObject)) {
-                        if (!((CacheObject) object).isValidate()) {
-                            synchronized (object) {
-                                if (!((CacheObject) object).isValidate()) {
-                                    COMMON_CACHE.remove(key);
-                                }
-                            }
-                        }
-                    } else if ((object instanceof Map)) {
-                        Map<String, Object> cacheMap = (Map<String, Object>) object;
-                        Set<String> ckSet = new HashSet<String>(cacheMap.keySet());
-                        for (String ck : ckSet) {
-                            Object subObject = cacheMap.get(ck);
-                            if (subObject != null) {
-                                if (((subObject instanceof CacheObject))
-                                        && (!((CacheObject) subObject).isValidate())) {
-                                    synchronized (subObject) {
-                                        if (!((CacheObject) subObject).isValidate()) {
-                                            cacheMap.remove(ck);
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
+    }
+
+    /**
+     * 通用缓存过期索引条目
+     */
+    private final class CommonEntry extends ExpiryIndex.Entry {
+        CommonEntry(String key, CacheObject cacheObject) {
+            super(key, cacheObject);
+        }
+
+        @Override
+        boolean isLive() {
+            return COMMON_CACHE.get(key) == cacheObject;
+        }
+
+        @Override
+        boolean expire() {
+            synchronized (cacheObject) {
+                if (cacheObject.isValidate()) {
+                    return false;
+                }
+                COMMON_CACHE.remove(key, cacheObject);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 通用哈希缓存过期索引条目
+     */
+    private final class HashEntry extends ExpiryIndex.Entry {
+        private final String hashKey;
+        private final Map<String, Object> cacheMap;
+        private final String subKey;
+
+        HashEntry(String hashKey, Map<String, Object> cacheMap, String subKey,
+                CacheObject cacheObject) {
+            super(hashEntryKey(hashKey, subKey), cacheObject);
+            this.hashKey = hashKey;
+            this.cacheMap = cacheMap;
+            this.subKey = subKey;
+        }
+
+        @Override
+        boolean isLive() {
+            return COMMON_CACHE.get(hashKey) == cacheMap && cacheMap.get(subKey) == cacheObject;
+        }
+
+        @Override
+        boolean expire() {
+            synchronized (cacheObject) {
+                if (cacheObject.isValidate()) {
+                    return false;
                 }
+                cacheMap.remove(subKey, cacheObject);
+                return true;
             }
         }
     }
@@ -0,0 +1,372 @@
+package org.chinasb.common.db.cache.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BiFunction;
+
+import org.chinasb.common.db.cache.ColdCacheStat;
+import org.chinasb.common.utility.NamedDaemonThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 冷实体存储
+ * <p>从实体缓存区域移出的实体序列化后存放在堆外内存，再次访问时反序列化并移出，避免重新查询数据库；
+ * 堆外内存按固定大小的块分配，一个实体占用若干个不要求连续的块，空闲块通过块内的下一块编号串成链表，
+ * 堆内只保留键和块编号；内存按段延迟分配，总量不超过容量，空间不足时按最近最少使用淘汰
+ * <p>所有操作在同一把锁内完成，序列化与反序列化在锁外执行
+ * <p>移出的实体先进入有上限的转存队列，由转存线程序列化后写入堆外内存，移出实体的线程不承担序列化开销；
+ * 队列中的实体可以直接取回，已满时丢弃新移出的实体
+ *
+ * @author zhujuan
+ */
+final class ColdEntityStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ColdEntityStore.class);
+    /**
+     * 块大小(字节)
+     */
+    private static final int BLOCK_SIZE = 512;
+    /**
+     * 每段的块数量，段大小为16M
+     */
+    private static final int BLOCKS_PER_ARENA = 32768;
+    private static final int NO_BLOCK = -1;
+    /**
+     * 转存队列上限
+     */
+    private static final int MAX_PENDING = 65536;
+
+    private final int totalBlocks;
+    private final ByteBuffer[] arenas;
+    /**
+     * 访问顺序的实体索引，第一个为最近最少使用的实体
+     */
+    private final LinkedHashMap<String, Entry> entries =
+            new LinkedHashMap<String, Entry>(1024, 0.75f, true);
+    /**
+     * 等待转存的实体及其键的顺序
+     */
+    private final ConcurrentMap<String, Object> pendingEntities =
+            new ConcurrentHashMap<String, Object>();
+    private final BlockingQueue<String> pendingKeys = new LinkedBlockingQueue<String>();
+    private final BiFunction<String, Object, Object> transfer =
+            new BiFunction<String, Object, Object>() {
+                @Override
+                public Object apply(String key, Object entity) {
+                    store(key, entity);
+                    return null;
+                }
+            };
+    private final Thread transferThread;
+    private volatile boolean closed;
+    /**
+     * 空闲链表头
+     */
+    private int freeHead = NO_BLOCK;
+    private int freeBlocks;
+    /**
+     * 下一个从未使用过的块
+     */
+    private int nextFreshBlock;
+    private long storedBytes;
+
+    private long hitCount;
+    private long missCount;
+    private long putCount;
+    private long evictionCount;
+    private long rejectionCount;
+
+    ColdEntityStore(long capacityBytes) {
+        this.totalBlocks = (int) Math.min(Integer.MAX_VALUE, capacityBytes / BLOCK_SIZE);
+        this.arenas = new ByteBuffer[(totalBlocks + BLOCKS_PER_ARENA - 1) / BLOCKS_PER_ARENA];
+        this.transferThread = new NamedDaemonThreadFactory("冷实体转存线程").newThread(new Runnable() {
+            @Override
+            public void run() {
+                transferPending();
+            }
+        });
+        this.transferThread.start();
+    }
+
+    /**
+     * 放入转存队列，由转存线程写入存储，已存在时替换
+     *
+     * @param key
+     * @param entity
+     * @return false:转存队列已满
+     */
+    boolean offer(String key, Object entity) {
+        if (closed || pendingEntities.size() >= MAX_PENDING) {
+            synchronized (this) {
+                rejectionCount++;
+            }
+            return false;
+        }
+        if (pendingEntities.put(key, entity) == null) {
+            pendingKeys.add(key);
+        }
+        return true;
+    }
+
+    /**
+     * 转存线程，键仍在转存队列中时在该键的映射锁内写入存储，与{@link #remove(String)}互斥
+     */
+    private void transferPending() {
+        while (!closed) {
+            try {
+                String key = pendingKeys.take();
+                pendingEntities.computeIfPresent(key, transfer);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.error("冷实体转存失败", e);
+            }
+        }
+    }
+
+    /**
+     * 存放实体，已存在时替换
+     *
+     * @param key
+     * @param entity
+     * @return false:实体不能序列化或超出容量
+     */
+    private boolean store(String key, Object entity) {
+        byte[] data = serialize(entity);
+        if (data == null) {
+            synchronized (this) {
+                removeStored(key);
+                rejectionCount++;
+            }
+            return false;
+        }
+        int blockCount = Math.max(1, (data.length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        synchronized (this) {
+            Entry exist = entries.remove(key);
+            if (exist != null) {
+                release(exist);
+            }
+            if (blockCount > totalBlocks) {
+                rejectionCount++;
+                return false;
+            }
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (availableBlocks() < blockCount) {
+                release(iterator.next());
+                iterator.remove();
+                evictionCount++;
+            }
+            int[] blocks = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                int block = allocate();
+                int offset = i * BLOCK_SIZE;
+                ByteBuffer buffer = buffer(block);
+                buffer.put(data, offset, Math.min(BLOCK_SIZE, data.length - offset));
+                blocks[i] = block;
+            }
+            entries.put(key, new Entry(blocks, data.length));
+            storedBytes += data.length;
+            putCount++;
+        }
+        return true;
+    }
+
+    /**
+     * 取出实体，取出后不再保留
+     *
+     * @param key
+     * @return
+     */
+    Object take(String key) {
+        Object pending = pendingEntities.remove(key);
+        if (pending != null) {
+            synchronized (this) {
+                hitCount++;
+            }
+            return pending;
+        }
+        byte[] data;
+        synchronized (this) {
+            Entry entry = entries.remove(key);
+            if (entry == null) {
+                missCount++;
+                return null;
+            }
+            data = new byte[entry.length];
+            for (int i = 0; i < entry.blocks.length; i++) {
+                int offset = i * BLOCK_SIZE;
+                ByteBuffer buffer = buffer(entry.blocks[i]);
+                buffer.get(data, offset, Math.min(BLOCK_SIZE, data.length - offset));
+            }
+            release(entry);
+            hitCount++;
+        }
+        return deserialize(data);
+    }
+
+    /**
+     * 移除实体
+     *
+     * @param key
+     */
+    void remove(String key) {
+        if (!pendingEntities.isEmpty()) {
+            pendingEntities.remove(key);
+        }
+        synchronized (this) {
+            removeStored(key);
+        }
+    }
+
+    /**
+     * 停止转存线程，清空存储
+     */
+    void close() {
+        closed = true;
+        transferThread.interrupt();
+        clear();
+    }
+
+    /**
+     * 清空存储并释放所有段的引用
+     */
+    synchronized void clear() {
+        pendingEntities.clear();
+        pendingKeys.clear();
+        entries.clear();
+        for (int i = 0; i < arenas.length; i++) {
+            arenas[i] = null;
+        }
+        freeHead = NO_BLOCK;
+        freeBlocks = 0;
+        nextFreshBlock = 0;
+        storedBytes = 0;
+    }
+
+    synchronized ColdCacheStat getStat() {
+        long allocatedBytes = 0;
+        for (ByteBuffer arena : arenas) {
+            if (arena != null) {
+                allocatedBytes += arena.capacity();
+            }
+        }
+        long usedBytes = (long) (nextFreshBlock - freeBlocks) * BLOCK_SIZE;
+        return new ColdCacheStat(entries.size() + pendingEntities.size(), storedBytes, usedBytes, allocatedBytes,
+                (long) totalBlocks * BLOCK_SIZE, hitCount, missCount, putCount, evictionCount,
+                rejectionCount);
+    }
+
+    /**
+     * 移除已存放的实体，调用者持有锁
+     *
+     * @param key
+     */
+    private void removeStored(String key) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            release(entry);
+        }
+    }
+
+    private int availableBlocks() {
+        return freeBlocks + (totalBlocks - nextFreshBlock);
+    }
+
+    private int allocate() {
+        if (freeHead != NO_BLOCK) {
+            int block = freeHead;
+            freeHead = arenas[block / BLOCKS_PER_ARENA].getInt(offset(block));
+            freeBlocks--;
+            return block;
+        }
+        int block = nextFreshBlock++;
+        int index = block / BLOCKS_PER_ARENA;
+        if (arenas[index] == null) {
+            int blocks = Math.min(BLOCKS_PER_ARENA, totalBlocks - index * BLOCKS_PER_ARENA);
+            arenas[index] = ByteBuffer.allocateDirect(blocks * BLOCK_SIZE);
+        }
+        return block;
+    }
+
+    private void release(Entry entry) {
+        for (int block : entry.blocks) {
+            arenas[block / BLOCKS_PER_ARENA].putInt(offset(block), freeHead);
+            freeHead = block;
+            freeBlocks++;
+        }
+        storedBytes -= entry.length;
+    }
+
+    /**
+     * 定位到块起始位置的段缓冲区，调用者持有锁
+     *
+     * @param block
+     * @return
+     */
+    private ByteBuffer buffer(int block) {
+        ByteBuffer buffer = arenas[block / BLOCKS_PER_ARENA];
+        buffer.position(offset(block));
+        return buffer;
+    }
+
+    private static int offset(int block) {
+        return (block % BLOCKS_PER_ARENA) * BLOCK_SIZE;
+    }
+
+    private static byte[] serialize(Object entity) {
+        if (!(entity instanceof Serializable)) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(BLOCK_SIZE);
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(entity);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            LOGGER.debug("实体序列化失败:{}", entity.getClass().getName(), e);
+            return null;
+        }
+    }
+
+    private static Object deserialize(byte[] data) {
+        try {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+            try {
+                return in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            LOGGER.error("冷实体反序列化失败", e);
+            return null;
+        }
+    }
+
+    /**
+     * 实体占用的块
+     */
+    private static final class Entry {
+        final int[] blocks;
+        final int length;
+
+        Entry(int[] blocks, int length) {
+            this.blocks = blocks;
+            this.length = length;
+        }
+    }
+}
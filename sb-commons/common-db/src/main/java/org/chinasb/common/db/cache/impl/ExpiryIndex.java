@@ -0,0 +1,168 @@
+package org.chinasb.common.db.cache.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.chinasb.common.db.model.CacheObject;
+import org.chinasb.common.threadpool.timer.HashedTimingWheel;
+import org.chinasb.common.threadpool.timer.Timeout;
+import org.chinasb.common.utility.CoarseClock;
+
+/**
+ * 缓存过期索引
+ * <p>条目按过期时间登记到时间轮，到期时只是放入到期队列，{@link #expire()}处理到期队列中的条目：
+ * 访问延长了过期时间的条目按新的过期时间重新登记，已过期的条目交给{@link Entry#expire()}处理；
+ * 清理开销只与到期条目数量相关，不再遍历整个缓存
+ * <p>每个键最多保留一个登记中的条目，重新登记同一个键时取消原条目；缓存移除键时应调用
+ * {@link #cancel(Object)}或{@link #cancel(Object, CacheObject)}，时间轮不再持有已移除的缓存对象
+ *
+ * @author zhujuan
+ */
+final class ExpiryIndex {
+    private final HashedTimingWheel wheel;
+    private final Queue<Entry> dueEntries = new ConcurrentLinkedQueue<Entry>();
+    /**
+     * 登记中的条目，每个键一个
+     */
+    private final ConcurrentMap<Object, Entry> scheduled = new ConcurrentHashMap<Object, Entry>();
+
+    ExpiryIndex(HashedTimingWheel wheel) {
+        this.wheel = wheel;
+    }
+
+    /**
+     * 按缓存对象当前的过期时间登记条目，取消同一个键原有的条目
+     *
+     * @param entry
+     */
+    void schedule(Entry entry) {
+        Entry previous = scheduled.put(entry.key, entry);
+        if (previous != null && previous != entry) {
+            previous.cancel();
+        }
+        arm(entry);
+    }
+
+    /**
+     * 取消键的条目
+     *
+     * @param key
+     */
+    void cancel(Object key) {
+        Entry entry = scheduled.remove(key);
+        if (entry != null) {
+            entry.cancel();
+        }
+    }
+
+    /**
+     * 键的条目仍对应该缓存对象时取消，缓存对象已被替换时保留新条目
+     *
+     * @param key
+     * @param cacheObject
+     */
+    void cancel(Object key, CacheObject cacheObject) {
+        Entry entry = scheduled.get(key);
+        if (entry != null && entry.cacheObject == cacheObject && scheduled.remove(key, entry)) {
+            entry.cancel();
+        }
+    }
+
+    /**
+     * 在时间轮线程中尽快执行任务
+     *
+     * @param task
+     */
+    void execute(Runnable task) {
+        wheel.newTimeout(task, 0L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 登记中的条目数量
+     *
+     * @return
+     */
+    int size() {
+        return scheduled.size();
+    }
+
+    private void arm(final Entry entry) {
+        long delay = entry.cacheObject.getExpireTime() - CoarseClock.currentTimeMillis();
+        Timeout timeout = wheel.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                dueEntries.add(entry);
+            }
+        }, Math.max(delay, 0L), TimeUnit.MILLISECONDS);
+        entry.timeout = timeout;
+        if (entry.cancelled) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * 处理到期的条目
+     *
+     * @return 移除的条目数量
+     */
+    int expire() {
+        int count = 0;
+        Entry entry;
+        while ((entry = dueEntries.poll()) != null) {
+            if (entry.cancelled || scheduled.get(entry.key) != entry) {
+                continue;
+            }
+            if (!entry.isLive()) {
+                scheduled.remove(entry.key, entry);
+                continue;
+            }
+            if (entry.cacheObject.isValidate() || !entry.expire()) {
+                arm(entry);
+            } else {
+                scheduled.remove(entry.key, entry);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 过期索引条目
+     */
+    abstract static class Entry {
+        final Object key;
+        final CacheObject cacheObject;
+        private volatile Timeout timeout;
+        private volatile boolean cancelled;
+
+        Entry(Object key, CacheObject cacheObject) {
+            this.key = key;
+            this.cacheObject = cacheObject;
+        }
+
+        private void cancel() {
+            cancelled = true;
+            Timeout current = timeout;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        /**
+         * 缓存中的值是否仍是该条目的缓存对象，已被移除或替换的条目直接丢弃
+         *
+         * @return
+         */
+        abstract boolean isLive();
+
+        /**
+         * 处理过期的条目
+         *
+         * @return true:已移除, false:保留(按新的过期时间重新登记)
+         */
+        abstract boolean expire();
+    }
+}
@@ -0,0 +1,295 @@
+package org.chinasb.common.db.cache.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import org.chinasb.common.db.cache.EntityCacheRegion;
+import org.chinasb.common.db.cache.EntityCacheStat;
+import org.chinasb.common.db.model.CacheObject;
+import org.chinasb.common.utility.Constants;
+import org.chinasb.common.utility.ConcurrentLongHashMap;
+import org.chinasb.common.utility.ConcurrentLongHashMap.EntryProcessor;
+
+/**
+ * 默认的实体缓存区域
+ * <p>基于{@link ConcurrentLongHashMap}，键不装箱；实体数量超出容量时批量移除过期时间最早的一部分实体，
+ * 访问会延长过期时间，因此移除的近似为最久未访问的实体；移除在过期索引的时间轮线程中进行，
+ * 不占用添加实体的线程，移除阈值取自抽样的过期时间，不对全部实体排序；过期清理由{@link ExpiryIndex}驱动
+ *
+ * @author zhujuan
+ */
+final class LongKeyEntityCacheRegion implements EntityCacheRegion {
+    private static final int MAX_EXTEND_MILISECONDS = Constants.ONE_MINUTE_MILLISECOND * 10;
+    /**
+     * 超出容量时移除到容量的(1 - 1/EVICTION_DIVISOR)
+     */
+    private static final int EVICTION_DIVISOR = 10;
+    /**
+     * 选取移除阈值时抽样的实体数量
+     */
+    private static final int EVICTION_SAMPLE_SIZE = 1024;
+
+    private final Class<?> entityClass;
+    private volatile int capacity;
+    private final long timeToLive;
+    private final Predicate<Object> inDbQueue;
+    private final ConcurrentLongHashMap<CacheObject> entries;
+    private final ExpiryIndex expiryIndex;
+    private final EvictionListener evictionListener;
+    /**
+     * 是否有线程正在移除
+     */
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    /**
+     * 是否已提交移除任务
+     */
+    private final AtomicBoolean evictionScheduled = new AtomicBoolean();
+    private final Runnable evictionTask = new Runnable() {
+        @Override
+        public void run() {
+            evictionScheduled.set(false);
+            tryEvict();
+        }
+    };
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder putCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+
+    LongKeyEntityCacheRegion(Class<?> entityClass, int capacity, long timeToLive,
+            Predicate<Object> inDbQueue, EvictionListener evictionListener,
+            ExpiryIndex expiryIndex) {
+        this.entityClass = entityClass;
+        this.capacity = capacity;
+        this.timeToLive = timeToLive;
+        this.inDbQueue = inDbQueue;
+        this.expiryIndex = expiryIndex;
+        this.evictionListener = evictionListener;
+        this.entries = new ConcurrentLongHashMap<CacheObject>(Math.min(capacity, 1024));
+    }
+
+    @Override
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    @Override
+    public Object get(long id) {
+        CacheObject cacheObject = entries.get(id);
+        if (cacheObject == null) {
+            missCount.increment();
+            return null;
+        }
+        if (!cacheObject.isValidate()) {
+            synchronized (cacheObject) {
+                if (!cacheObject.isValidate()) {
+                    if (!inDbQueue.test(cacheObject.getValue())) {
+                        if (entries.remove(id, cacheObject)) {
+                            expiryIndex.cancel(Long.valueOf(id), cacheObject);
+                            expirationCount.increment();
+                            onEvicted(id, cacheObject);
+                        }
+                        missCount.increment();
+                        return null;
+                    }
+                }
+            }
+        }
+        cacheObject.increaseExpireTime(MAX_EXTEND_MILISECONDS);
+        hitCount.increment();
+        return cacheObject.getValue();
+    }
+
+    @Override
+    public Object putIfAbsent(long id, Object entity, long timeToLive) {
+        CacheObject cacheObject =
+                CacheObject.valueOf(entity, timeToLive > 0L ? timeToLive : this.timeToLive);
+        for (;;) {
+            CacheObject exist = entries.putIfAbsent(id, cacheObject);
+            if (exist == null) {
+                putCount.increment();
+                expiryIndex.schedule(new RegionEntry(id, cacheObject));
+                int size = entries.size();
+                if (size > capacity) {
+                    // 移除任务跟不上添加速度时由添加线程直接移除
+                    if (size / 2 >= capacity) {
+                        tryEvict();
+                    } else {
+                        scheduleEviction();
+                    }
+                }
+                return entity;
+            }
+            synchronized (exist) {
+                if (exist.isValidate() || inDbQueue.test(exist.getValue())) {
+                    exist.increaseExpireTime(MAX_EXTEND_MILISECONDS);
+                    return exist.getValue();
+                }
+            }
+            if (entries.remove(id, exist)) {
+                expirationCount.increment();
+            }
+        }
+    }
+
+    @Override
+    public void remove(long id) {
+        if (entries.remove(id) != null) {
+            expiryIndex.cancel(Long.valueOf(id));
+        }
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public int clearInvalid() {
+        int cleared = expiryIndex.expire();
+        if (entries.size() > capacity) {
+            tryEvict();
+        }
+        return cleared;
+    }
+
+    /**
+     * 在时间轮线程中执行移除，已提交的移除任务尚未执行时直接返回
+     */
+    private void scheduleEviction() {
+        if (!evictionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            expiryIndex.execute(evictionTask);
+        } catch (RejectedExecutionException e) {
+            evictionScheduled.set(false);
+        }
+    }
+
+    /**
+     * 移除超出容量的实体，同一时间只有一个线程执行，其它线程直接返回
+     */
+    private void tryEvict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            evict();
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * 移除过期时间最早的实体，直到数量低于容量的(1 - 1/EVICTION_DIVISOR)；
+     * 按步长抽样最多EVICTION_SAMPLE_SIZE个过期时间，取对应比例的分位数作为阈值，
+     * 移除不晚于阈值的实体，最多移除超出的数量
+     */
+    private void evict() {
+        int size = entries.size();
+        int limit = capacity;
+        final int excess = size - (limit - limit / EVICTION_DIVISOR);
+        if (excess <= 0) {
+            return;
+        }
+        final int step = Math.max(1, size / EVICTION_SAMPLE_SIZE);
+        final long[] samples = new long[EVICTION_SAMPLE_SIZE];
+        final int[] count = new int[2];
+        entries.forEach(new EntryProcessor<CacheObject>() {
+            @Override
+            public void accept(long id, CacheObject cacheObject) {
+                if (count[1]++ % step == 0 && count[0] < samples.length) {
+                    samples[count[0]++] = cacheObject.getExpireTime();
+                }
+            }
+        });
+        if (count[0] == 0) {
+            return;
+        }
+        Arrays.sort(samples, 0, count[0]);
+        int rank = (int) Math.ceil((double) excess * count[0] / Math.max(size, 1));
+        final long threshold = samples[Math.min(Math.max(rank, 1), count[0]) - 1];
+        final int[] evicted = new int[1];
+        entries.forEach(new EntryProcessor<CacheObject>() {
+            @Override
+            public void accept(long id, CacheObject cacheObject) {
+                if (evicted[0] < excess && cacheObject.getExpireTime() <= threshold
+                        && !inDbQueue.test(cacheObject.getValue())
+                        && entries.remove(id, cacheObject)) {
+                    expiryIndex.cancel(Long.valueOf(id), cacheObject);
+                    evicted[0]++;
+                    onEvicted(id, cacheObject);
+                }
+            }
+        });
+        evictionCount.add(evicted[0]);
+    }
+
+    private void onEvicted(long id, CacheObject cacheObject) {
+        if (evictionListener != null) {
+            evictionListener.onEvicted(id, cacheObject.getValue());
+        }
+    }
+
+    /**
+     * 区域过期索引条目
+     */
+    private final class RegionEntry extends ExpiryIndex.Entry {
+        private final long id;
+
+        RegionEntry(long id, CacheObject cacheObject) {
+            super(Long.valueOf(id), cacheObject);
+            this.id = id;
+        }
+
+        @Override
+        boolean isLive() {
+            return entries.get(id) == cacheObject;
+        }
+
+        @Override
+        boolean expire() {
+            synchronized (cacheObject) {
+                if (cacheObject.isValidate()) {
+                    return false;
+                }
+                if (inDbQueue.test(cacheObject.getValue())) {
+                    cacheObject.increaseExpireTime(MAX_EXTEND_MILISECONDS);
+                    return false;
+                }
+                if (entries.remove(id, cacheObject)) {
+                    expirationCount.increment();
+                    onEvicted(id, cacheObject);
+                }
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public EntityCacheStat getStat() {
+        return new EntityCacheStat(entityClass, entries.size(), capacity, hitCount.sum(),
+                missCount.sum(), putCount.sum(), evictionCount.sum(), expirationCount.sum());
+    }
+}
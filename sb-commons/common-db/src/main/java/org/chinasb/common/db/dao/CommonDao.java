@@ -2,6 +2,7 @@ package org.chinasb.common.db.dao;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.List;
 
 import org.chinasb.common.db.model.BaseModel;
 import org.hibernate.criterion.DetachedCriteria;
@@ -21,6 +22,22 @@ public interface CommonDao {
      */
     <T> T get(Serializable id, Class<T> entityClazz);
 
+    /**
+     * 按ID批量获取实体，ID按批次拆分为IN查询，不存在的实体不在结果中，结果不保证与ID顺序一致
+     * 
+     * @param ids
+     * @param entityClazz
+     * @return
+     */
+    <T> List<T> getAll(Collection<? extends Serializable> ids, Class<T> entityClazz);
+
+    /**
+     * 获取不存在实体的缓存与ID过滤器统计
+     * 
+     * @return
+     */
+    MissingEntityStat getMissingEntityStat();
+
     /**
      * 保存实体
      * 
@@ -0,0 +1,114 @@
+package org.chinasb.common.db.dao;
+
+/**
+ * ID布隆过滤器统计快照
+ * 
+ * @author zhujuan
+ */
+public class IdFilterStat {
+    /**
+     * 实体类型
+     */
+    private final Class<?> entityClass;
+    /**
+     * 位数
+     */
+    private final long bitSize;
+    /**
+     * 哈希函数数量
+     */
+    private final int hashFunctions;
+    /**
+     * 加入的ID数量
+     */
+    private final long insertions;
+    /**
+     * 配置的误判率
+     */
+    private final double expectedFpp;
+    /**
+     * 按已置位比例估算的误判率
+     */
+    private final double estimatedFpp;
+    /**
+     * 判定不存在、未查询数据库的次数
+     */
+    private final long rejections;
+    /**
+     * 判定可能存在、但数据库中不存在的次数
+     */
+    private final long falsePositives;
+
+    public IdFilterStat(Class<?> entityClass, long bitSize, int hashFunctions, long insertions,
+            double expectedFpp, double estimatedFpp, long rejections, long falsePositives) {
+        this.entityClass = entityClass;
+        this.bitSize = bitSize;
+        this.hashFunctions = hashFunctions;
+        this.insertions = insertions;
+        this.expectedFpp = expectedFpp;
+        this.estimatedFpp = estimatedFpp;
+        this.rejections = rejections;
+        this.falsePositives = falsePositives;
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    public long getBitSize() {
+        return bitSize;
+    }
+
+    public int getHashFunctions() {
+        return hashFunctions;
+    }
+
+    /**
+     * 占用内存(字节)
+     * 
+     * @return
+     */
+    public long getMemoryBytes() {
+        return bitSize / 8;
+    }
+
+    public long getInsertions() {
+        return insertions;
+    }
+
+    public double getExpectedFpp() {
+        return expectedFpp;
+    }
+
+    public double getEstimatedFpp() {
+        return estimatedFpp;
+    }
+
+    public long getRejections() {
+        return rejections;
+    }
+
+    public long getFalsePositives() {
+        return falsePositives;
+    }
+
+    /**
+     * 实际误判率，不存在的ID中被判定为可能存在的比例
+     * 
+     * @return
+     */
+    public double getObservedFpp() {
+        long negatives = rejections + falsePositives;
+        return negatives == 0 ? 0.0 : (double) falsePositives / negatives;
+    }
+
+    @Override
+    public String toString() {
+        return "IdFilterStat [entityClass=" + entityClass.getName() + ", bitSize=" + bitSize
+                + ", hashFunctions=" + hashFunctions + ", memoryBytes=" + getMemoryBytes()
+                + ", insertions=" + insertions + ", expectedFpp=" + expectedFpp
+                + ", estimatedFpp=" + estimatedFpp + ", rejections=" + rejections
+                + ", falsePositives=" + falsePositives + ", observedFpp=" + getObservedFpp()
+                + "]";
+    }
+}
@@ -0,0 +1,49 @@
+package org.chinasb.common.db.dao;
+
+import java.util.List;
+
+/**
+ * 不存在实体的缓存与ID过滤器统计快照
+ * 
+ * @author zhujuan
+ */
+public class MissingEntityStat {
+    /**
+     * 不存在实体缓存的数量
+     */
+    private final long negativeCacheSize;
+    /**
+     * 命中不存在实体缓存的次数
+     */
+    private final long negativeHitCount;
+    /**
+     * 各实体类型的ID过滤器统计
+     */
+    private final List<IdFilterStat> idFilterStats;
+
+    public MissingEntityStat(long negativeCacheSize, long negativeHitCount,
+            List<IdFilterStat> idFilterStats) {
+        this.negativeCacheSize = negativeCacheSize;
+        this.negativeHitCount = negativeHitCount;
+        this.idFilterStats = idFilterStats;
+    }
+
+    public long getNegativeCacheSize() {
+        return negativeCacheSize;
+    }
+
+    public long getNegativeHitCount() {
+        return negativeHitCount;
+    }
+
+    public List<IdFilterStat> getIdFilterStats() {
+        return idFilterStats;
+    }
+
+    @Override
+    public String toString() {
+        return "MissingEntityStat [negativeCacheSize=" + negativeCacheSize
+                + ", negativeHitCount=" + negativeHitCount + ", idFilterStats=" + idFilterStats
+                + "]";
+    }
+}
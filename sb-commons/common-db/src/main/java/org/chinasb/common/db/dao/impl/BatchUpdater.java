@@ -0,0 +1,264 @@
+package org.chinasb.common.db.dao.impl;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.chinasb.common.db.model.BaseModel;
+import org.chinasb.common.db.model.DirtyTracking;
+import org.hibernate.StaleStateException;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.SingleTableEntityPersister;
+import org.hibernate.type.Type;
+
+/**
+ * 实体JDBC批量更新器
+ * <p>按实体映射生成"update 表 set 列 where 主键"语句，
+ * 同一类型的实体通过{@link PreparedStatement#addBatch()}一次提交；
+ * 绕过了Hibernate的会话与事件，只用于单表、无版本、无二级缓存、无集合与级联的实体，
+ * 其余实体由{@link #create(ClassMetadata)}返回null交给Hibernate更新
+ * <p>{@link DirtyTracking}实体与上次写入的快照比较，跳过未修改的实体，
+ * 修改的实体按变化的列分组，每组一条只更新这些列的语句
+ * 
+ * @author zhujuan
+ */
+final class BatchUpdater {
+    /**
+     * 缓存的部分列更新语句上限，超出后不再缓存
+     */
+    private static final int MAX_CACHED_STATEMENTS = 256;
+
+    private final SingleTableEntityPersister persister;
+    private final String sql;
+    /**
+     * 参与更新的属性下标
+     */
+    private final int[] properties;
+    private final Type[] propertyTypes;
+    private final boolean dirtyTracking;
+    /**
+     * 变化属性集合对应的更新语句
+     */
+    private final ConcurrentMap<BitSet, String> dirtyStatements =
+            new ConcurrentHashMap<BitSet, String>();
+
+    private BatchUpdater(SingleTableEntityPersister persister, String sql, int[] properties) {
+        this.persister = persister;
+        this.sql = sql;
+        this.properties = properties;
+        this.propertyTypes = persister.getPropertyTypes();
+        Class<?> mappedClass = persister.getMappedClass();
+        this.dirtyTracking = BaseModel.class.isAssignableFrom(mappedClass)
+                && mappedClass.isAnnotationPresent(DirtyTracking.class);
+    }
+
+    /**
+     * 创建实体类型的批量更新器
+     * 
+     * @param metadata
+     * @return 实体映射不适合直接批量更新时返回null
+     */
+    static BatchUpdater create(ClassMetadata metadata) {
+        if (!(metadata instanceof SingleTableEntityPersister)) {
+            return null;
+        }
+        SingleTableEntityPersister persister = (SingleTableEntityPersister) metadata;
+        if (persister.getTableSpan() != 1 || !persister.isMutable() || persister.isVersioned()
+                || persister.hasCache() || persister.hasCollections() || persister.hasCascades()
+                || persister.hasUpdateGeneratedProperties()) {
+            return null;
+        }
+        boolean[] updateability = persister.getPropertyUpdateability();
+        int[] properties = new int[updateability.length];
+        int count = 0;
+        for (int i = 0; i < updateability.length; i++) {
+            if (!updateability[i]) {
+                continue;
+            }
+            for (String column : persister.getPropertyColumnNames(i)) {
+                if (column == null) {
+                    return null;
+                }
+            }
+            properties[count++] = i;
+        }
+        if (count == 0) {
+            return null;
+        }
+        int[] used = new int[count];
+        System.arraycopy(properties, 0, used, 0, count);
+        return new BatchUpdater(persister, buildSql(persister, used, null), used);
+    }
+
+    private static String buildSql(SingleTableEntityPersister persister, int[] properties,
+            BitSet dirty) {
+        StringBuilder sql =
+                new StringBuilder("update ").append(persister.getTableName()).append(" set ");
+        for (int property : properties) {
+            if (dirty != null && !dirty.get(property)) {
+                continue;
+            }
+            for (String column : persister.getPropertyColumnNames(property)) {
+                sql.append(column).append("=?,");
+            }
+        }
+        sql.setLength(sql.length() - 1);
+        sql.append(" where ");
+        String[] idColumns = persister.getIdentifierColumnNames();
+        for (int i = 0; i < idColumns.length; i++) {
+            if (i > 0) {
+                sql.append(" and ");
+            }
+            sql.append(idColumns[i]).append("=?");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * 记录实体当前状态作为快照，用于刚从数据库加载的实体
+     * 
+     * @param entity
+     * @param factory
+     */
+    void snapshot(Object entity, SessionFactoryImplementor factory) {
+        if (dirtyTracking) {
+            ((BaseModel<?>) entity).persistedState(copyState(entity, factory));
+        }
+    }
+
+    /**
+     * 批量更新实体，所有实体必须属于本更新器的类型
+     * 
+     * @param connection
+     * @param session 用于类型转换
+     * @param entities
+     * @param written 输出已写入的行，事务提交后通过{@link #commit(List)}保存快照
+     * @throws SQLException
+     */
+    void update(Connection connection, SessionImplementor session, Collection<?> entities,
+            List<Row> written) throws SQLException {
+        SessionFactoryImplementor factory = session.getFactory();
+        Map<BitSet, List<Row>> groups = new LinkedHashMap<BitSet, List<Row>>();
+        for (Object entity : entities) {
+            Object[] state = copyState(entity, factory);
+            BitSet dirty = null;
+            if (dirtyTracking) {
+                Object[] persisted = ((BaseModel<?>) entity).persistedState();
+                if (persisted != null && persisted.length == state.length) {
+                    dirty = new BitSet(state.length);
+                    for (int property : properties) {
+                        if (!propertyTypes[property].isEqual(persisted[property],
+                                state[property], factory)) {
+                            dirty.set(property);
+                        }
+                    }
+                    if (dirty.isEmpty()) {
+                        continue;
+                    }
+                }
+            }
+            List<Row> rows = groups.get(dirty);
+            if (rows == null) {
+                rows = new ArrayList<Row>();
+                groups.put(dirty, rows);
+            }
+            rows.add(new Row(entity, state, persister.getIdentifier(entity, session)));
+        }
+        for (Map.Entry<BitSet, List<Row>> entry : groups.entrySet()) {
+            executeBatch(connection, session, entry.getKey(), entry.getValue());
+            written.addAll(entry.getValue());
+        }
+    }
+
+    /**
+     * 事务提交后保存已写入行的快照
+     * 
+     * @param written
+     */
+    void commit(List<Row> written) {
+        if (!dirtyTracking) {
+            return;
+        }
+        for (Row row : written) {
+            ((BaseModel<?>) row.entity).persistedState(row.state);
+        }
+    }
+
+    private void executeBatch(Connection connection, SessionImplementor session, BitSet dirty,
+            List<Row> rows) throws SQLException {
+        String statement = dirty == null ? sql : getDirtyStatement(dirty);
+        PreparedStatement ps = connection.prepareStatement(statement);
+        try {
+            for (Row row : rows) {
+                int index = 1;
+                for (int property : properties) {
+                    if (dirty != null && !dirty.get(property)) {
+                        continue;
+                    }
+                    propertyTypes[property].nullSafeSet(ps, row.state[property], index, session);
+                    index += persister.getPropertyColumnNames(property).length;
+                }
+                persister.getIdentifierType().nullSafeSet(ps, row.id, index, session);
+                ps.addBatch();
+            }
+            int[] counts = ps.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0 || counts[i] == Statement.EXECUTE_FAILED) {
+                    throw new StaleStateException("Batch update returned unexpected row count "
+                            + counts[i] + " for " + persister.getEntityName() + ": " + statement);
+                }
+            }
+        } finally {
+            ps.close();
+        }
+    }
+
+    private String getDirtyStatement(BitSet dirty) {
+        String statement = dirtyStatements.get(dirty);
+        if (statement == null) {
+            statement = buildSql(persister, properties, dirty);
+            if (dirtyStatements.size() < MAX_CACHED_STATEMENTS) {
+                dirtyStatements.putIfAbsent(dirty, statement);
+            }
+        }
+        return statement;
+    }
+
+    /**
+     * 复制参与更新的属性值，可变类型深拷贝，保证写入的值与快照一致
+     */
+    private Object[] copyState(Object entity, SessionFactoryImplementor factory) {
+        Object[] values = persister.getPropertyValues(entity);
+        for (int property : properties) {
+            values[property] = propertyTypes[property].deepCopy(values[property], factory);
+        }
+        return values;
+    }
+
+    /**
+     * 待写入的行
+     */
+    static final class Row {
+        final Object entity;
+        final Object[] state;
+        final Serializable id;
+
+        Row(Object entity, Object[] state, Serializable id) {
+            this.entity = entity;
+            this.state = state;
+            this.id = id;
+        }
+    }
+}
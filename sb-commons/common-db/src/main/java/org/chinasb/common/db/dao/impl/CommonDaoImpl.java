@@ -1,21 +1,58 @@
 package org.chinasb.common.db.dao.impl;
 
 import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.PostConstruct;
 
 import org.chinasb.common.db.dao.CommonDao;
+import org.chinasb.common.db.dao.IdFilterStat;
+import org.chinasb.common.db.dao.MissingEntityStat;
 import org.chinasb.common.db.model.BaseModel;
+import org.chinasb.common.db.model.CacheMissing;
+import org.chinasb.common.db.model.IdFilter;
+import org.chinasb.common.utility.Constants;
 import org.hibernate.Criteria;
+import org.hibernate.HibernateException;
 import org.hibernate.SQLQuery;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
 import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.jdbc.Work;
+import org.hibernate.metadata.ClassMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.orm.hibernate5.HibernateTemplate;
+import org.springframework.orm.hibernate5.SessionFactoryUtils;
 import org.springframework.stereotype.Service;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 /**
  * 通用DAO
@@ -24,8 +61,85 @@ import com.google.common.base.Strings;
  */
 @Service
 public class CommonDaoImpl implements CommonDao {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommonDaoImpl.class);
+    /**
+     * 默认每批更新的实体数量
+     */
+    private static final int DEFAULT_BATCH_SIZE = 50;
+    /**
+     * 默认每条IN查询的ID数量
+     */
+    private static final int DEFAULT_IN_QUERY_SIZE = 500;
+    /**
+     * 不支持JDBC批量更新的实体类型占位
+     */
+    private static final Object NO_BATCH_UPDATER = new Object();
+    /**
+     * 默认不存在实体的缓存时间
+     */
+    private static final int DEFAULT_MISSING_CACHE_TTL = Constants.ONE_SECOND_MILLISECOND * 30;
+    /**
+     * 默认不存在实体的缓存容量
+     */
+    private static final int DEFAULT_MISSING_CACHE_SIZE = 100000;
+    /**
+     * 保存代数的分段数量
+     */
+    private static final int SAVE_GENERATION_STRIPES = 256;
+    /**
+     * 建立ID过滤器时每次读取的ID数量
+     */
+    private static final int ID_FETCH_SIZE = 10000;
 
     protected HibernateTemplate hibernateTemplate;
+    /**
+     * 每批更新的实体数量，每批在一个事务中提交
+     */
+    @Autowired(required = false)
+    @Qualifier("dbcache.jdbc_batch_size")
+    private Integer batchSize = Integer.valueOf(DEFAULT_BATCH_SIZE);
+    /**
+     * 批量获取时每条IN查询的ID数量
+     */
+    @Autowired(required = false)
+    @Qualifier("dbcache.in_query_size")
+    private Integer inQuerySize = Integer.valueOf(DEFAULT_IN_QUERY_SIZE);
+    /**
+     * 实体类型对应的批量更新器
+     */
+    private final ConcurrentMap<Class<?>, Object> batchUpdaters =
+            new ConcurrentHashMap<Class<?>, Object>();
+    /**
+     * 不存在实体的缓存时间，不大于0时不缓存；只缓存标注{@link CacheMissing}的实体类型
+     */
+    @Autowired(required = false)
+    @Qualifier("dbcache.ttl_of_missing_cache")
+    private Integer missingCacheTTL = Integer.valueOf(DEFAULT_MISSING_CACHE_TTL);
+    /**
+     * 不存在实体的缓存容量
+     */
+    @Autowired(required = false)
+    @Qualifier("dbcache.max_capacity_of_missing_cache")
+    private Integer missingCacheSize = Integer.valueOf(DEFAULT_MISSING_CACHE_SIZE);
+    /**
+     * 不存在实体的缓存，值无意义
+     */
+    private Cache<String, Boolean> missingCache;
+    /**
+     * 实体类型是否标注{@link CacheMissing}
+     */
+    private final ConcurrentMap<Class<?>, Boolean> missingCacheTypes =
+            new ConcurrentHashMap<Class<?>, Boolean>();
+    /**
+     * 按不存在实体的缓存键分段的保存代数，保存实体时递增；查询前后代数不同说明期间可能保存了该实体，
+     * 查询未找到的结果不再缓存，避免刚保存的实体被记为不存在
+     */
+    private final AtomicLongArray saveGenerations = new AtomicLongArray(SAVE_GENERATION_STRIPES);
+    /**
+     * 标注{@link IdFilter}的实体类型对应的ID过滤器
+     */
+    private final ConcurrentMap<Class<?>, EntityIdFilter> idFilters =
+            new ConcurrentHashMap<Class<?>, EntityIdFilter>();
 
     @Autowired
     public void setSessionFactory0(SessionFactory sessionFactory) {
@@ -35,6 +149,72 @@ public class CommonDaoImpl implements CommonDao {
         }
     }
 
+    /**
+     * 初始化不存在实体的缓存，建立ID过滤器
+     */
+    @PostConstruct
+    protected void initialize() {
+        if (missingCacheTTL != null && missingCacheTTL.intValue() > 0) {
+            missingCache = CacheBuilder.newBuilder().maximumSize(missingCacheSize.intValue())
+                    .expireAfterWrite(missingCacheTTL.intValue(), TimeUnit.MILLISECONDS)
+                    .recordStats().build();
+        }
+        for (ClassMetadata metadata : getSessionFactory().getAllClassMetadata().values()) {
+            Class<?> clazz = metadata.getMappedClass();
+            IdFilter config = clazz == null ? null : clazz.getAnnotation(IdFilter.class);
+            if (config == null) {
+                continue;
+            }
+            Class<?> idClass = metadata.getIdentifierType().getReturnedClass();
+            if (metadata.getIdentifierPropertyName() == null || !(idClass == Long.class
+                    || idClass == Integer.class || idClass == Short.class
+                    || idClass == Byte.class)) {
+                LOGGER.warn("实体:{} 的ID不是数值类型, 忽略IdFilter", clazz.getName());
+                continue;
+            }
+            idFilters.put(clazz, buildIdFilter(metadata, config));
+        }
+    }
+
+    /**
+     * 读取实体表的全部ID建立过滤器
+     * 
+     * @param metadata
+     * @param config
+     * @return
+     */
+    private EntityIdFilter buildIdFilter(ClassMetadata metadata, IdFilter config) {
+        long start = System.currentTimeMillis();
+        String entityName = metadata.getEntityName();
+        double fpp = config.fpp() > 0 && config.fpp() < 1 ? config.fpp() : 0.01;
+        StatelessSession session = getSessionFactory().openStatelessSession();
+        try {
+            Number count = (Number) session.createQuery("select count(*) from " + entityName)
+                    .uniqueResult();
+            EntityIdFilter filter = new EntityIdFilter(metadata.getMappedClass(),
+                    Math.max(config.expectedInsertions(), count.longValue() * 2), fpp);
+            ScrollableResults results = session
+                    .createQuery("select e." + metadata.getIdentifierPropertyName() + " from "
+                            + entityName + " e").setFetchSize(ID_FETCH_SIZE)
+                    .scroll(ScrollMode.FORWARD_ONLY);
+            try {
+                while (results.next()) {
+                    Object id = results.get(0);
+                    if (id instanceof Number) {
+                        filter.put(((Number) id).longValue());
+                    }
+                }
+            } finally {
+                results.close();
+            }
+            LOGGER.info("实体:{} ID过滤器建立完成, ID数量:{}, 耗时:{}ms", entityName, count,
+                    System.currentTimeMillis() - start);
+            return filter;
+        } finally {
+            session.close();
+        }
+    }
+
 	/**
 	 * Return the Hibernate SessionFactory used by this DAO.
 	 */
@@ -75,7 +255,79 @@ public class CommonDaoImpl implements CommonDao {
 
     @Override
     public <T> T get(Serializable id, Class<T> entityClazz) {
-        return hibernateTemplate.get(entityClazz, id);
+        if (isKnownMissing(id, entityClazz)) {
+            return null;
+        }
+        long generation = getSaveGeneration(id, entityClazz);
+        T entity = hibernateTemplate.get(entityClazz, id);
+        if (entity == null) {
+            onMissing(id, entityClazz, generation);
+        } else if (entity instanceof BaseModel) {
+            BatchUpdater updater = getBatchUpdater(entity.getClass());
+            if (updater != null) {
+                updater.snapshot(entity, (SessionFactoryImplementor) getSessionFactory());
+            }
+        }
+        return entity;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getAll(Collection<? extends Serializable> ids, Class<T> entityClazz) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<T>(0);
+        }
+        List<T> result = new ArrayList<T>(ids.size());
+        ClassMetadata metadata = getSessionFactory().getClassMetadata(entityClazz);
+        String idProperty = metadata == null ? null : metadata.getIdentifierPropertyName();
+        if (idProperty == null) {
+            for (Serializable id : ids) {
+                T entity = get(id, entityClazz);
+                if (entity != null) {
+                    result.add(entity);
+                }
+            }
+            return result;
+        }
+        List<Serializable> idList = new ArrayList<Serializable>(ids.size());
+        for (Serializable id : new LinkedHashSet<Serializable>(ids)) {
+            if (id != null && !isKnownMissing(id, entityClazz)) {
+                idList.add(id);
+            }
+        }
+        long[] generations = new long[idList.size()];
+        for (int i = 0; i < generations.length; i++) {
+            generations[i] = getSaveGeneration(idList.get(i), entityClazz);
+        }
+        int size = inQuerySize == null || inQuerySize.intValue() <= 0 ? DEFAULT_IN_QUERY_SIZE
+                : inQuerySize.intValue();
+        for (int from = 0; from < idList.size(); from += size) {
+            List<Serializable> chunk = new ArrayList<Serializable>(
+                    idList.subList(from, Math.min(from + size, idList.size())));
+            DetachedCriteria criteria = DetachedCriteria.forClass(entityClazz)
+                    .add(Restrictions.in(idProperty, chunk));
+            result.addAll((List<T>) hibernateTemplate.findByCriteria(criteria));
+        }
+        if (result.size() < idList.size()) {
+            Set<Serializable> found = new HashSet<Serializable>(result.size());
+            for (T entity : result) {
+                found.add(metadata.getIdentifier(entity, (SessionImplementor) null));
+            }
+            for (int i = 0; i < idList.size(); i++) {
+                Serializable id = idList.get(i);
+                if (!found.contains(id)) {
+                    onMissing(id, entityClazz, generations[i]);
+                }
+            }
+        }
+        BatchUpdater updater = getBatchUpdater(entityClazz);
+        if (updater != null) {
+            SessionFactoryImplementor factory = (SessionFactoryImplementor) getSessionFactory();
+            for (T entity : result) {
+                updater.snapshot(entity, factory);
+            }
+        }
+        return result;
     }
 
     @Override
@@ -83,22 +335,146 @@ public class CommonDaoImpl implements CommonDao {
     public <T extends BaseModel<PK>, PK extends Comparable<PK> & Serializable> void save(T... entities) {
         for (T entity : entities) {
             hibernateTemplate.save(entity);
+            Serializable id = entity.getId();
+            EntityIdFilter filter = idFilters.get(entity.getClass());
+            if (filter != null && isNumericId(id)) {
+                filter.put(((Number) id).longValue());
+            }
+            if (missingCache != null) {
+                String key = getMissingKey(id, entity.getClass());
+                saveGenerations.incrementAndGet(getStripe(key));
+                missingCache.invalidate(key);
+            }
         }
     }
 
+    /**
+     * 经由Hibernate写入，不与属性快照比较；写入前清除快照，之后的批量更新写入完整的行，
+     * 避免实体改回快照中的值时被误判为未修改
+     */
     @Override
     @SuppressWarnings("unchecked")
     public <T> void update(T... entities) {
         for (T entity : entities) {
+            if (entity instanceof BaseModel) {
+                ((BaseModel<?>) entity).persistedState(null);
+            }
             hibernateTemplate.update(entity);
         }
     }
 
+    /**
+     * 按实体类型分组，每组按批次大小拆分，每批在独立事务中通过JDBC批量提交；
+     * 批次失败时回滚并逐个实体更新，全部尝试后抛出第一个异常
+     */
     @Override
     public <T> void update(Collection<T> entities) {
+        if (entities == null || entities.isEmpty()) {
+            return;
+        }
+        Map<Class<?>, List<Object>> groups = new LinkedHashMap<Class<?>, List<Object>>();
         for (T entity : entities) {
-            hibernateTemplate.update(entity);
+            List<Object> group = groups.get(entity.getClass());
+            if (group == null) {
+                group = new ArrayList<Object>();
+                groups.put(entity.getClass(), group);
+            }
+            group.add(entity);
         }
+        int size = batchSize == null || batchSize.intValue() <= 0 ? DEFAULT_BATCH_SIZE
+                : batchSize.intValue();
+        RuntimeException failure = null;
+        for (Map.Entry<Class<?>, List<Object>> entry : groups.entrySet()) {
+            List<Object> group = entry.getValue();
+            for (int from = 0; from < group.size(); from += size) {
+                List<Object> batch = group.subList(from, Math.min(from + size, group.size()));
+                try {
+                    updateInTransaction(entry.getKey(), batch);
+                } catch (RuntimeException ex) {
+                    if (batch.size() == 1) {
+                        failure = failure == null ? ex : failure;
+                        continue;
+                    }
+                    LOGGER.warn("批量更新失败, 改为逐个更新. class:{} size:{}", entry.getKey(),
+                            batch.size(), ex);
+                    for (Object entity : batch) {
+                        try {
+                            updateInTransaction(entry.getKey(), Collections.singletonList(entity));
+                        } catch (RuntimeException e) {
+                            LOGGER.error("更新实体失败:{}", entity, e);
+                            failure = failure == null ? e : failure;
+                        }
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * 在独立的会话与事务中更新同一类型的实体
+     * 
+     * @param clazz
+     * @param entities
+     */
+    private void updateInTransaction(Class<?> clazz, final List<Object> entities) {
+        final BatchUpdater updater = getBatchUpdater(clazz);
+        final List<BatchUpdater.Row> written = new ArrayList<BatchUpdater.Row>();
+        Session session = getSessionFactory().openSession();
+        Transaction tx = null;
+        try {
+            tx = session.beginTransaction();
+            if (updater != null) {
+                final SessionImplementor sessionImplementor = (SessionImplementor) session;
+                session.doWork(new Work() {
+                    @Override
+                    public void execute(Connection connection) throws SQLException {
+                        updater.update(connection, sessionImplementor, entities, written);
+                    }
+                });
+            } else {
+                for (Object entity : entities) {
+                    session.update(entity);
+                }
+                session.flush();
+            }
+            tx.commit();
+            if (updater != null) {
+                updater.commit(written);
+            }
+        } catch (HibernateException ex) {
+            rollback(tx);
+            throw SessionFactoryUtils.convertHibernateAccessException(ex);
+        } catch (RuntimeException ex) {
+            rollback(tx);
+            throw ex;
+        } finally {
+            session.close();
+        }
+    }
+
+    private void rollback(Transaction tx) {
+        if (tx != null && tx.getStatus().canRollback()) {
+            try {
+                tx.rollback();
+            } catch (RuntimeException ex) {
+                LOGGER.error("事务回滚失败", ex);
+            }
+        }
+    }
+
+    private BatchUpdater getBatchUpdater(Class<?> clazz) {
+        Object updater = batchUpdaters.get(clazz);
+        if (updater == null) {
+            updater = BatchUpdater.create(getSessionFactory().getClassMetadata(clazz));
+            if (updater == null) {
+                updater = NO_BATCH_UPDATER;
+            }
+            batchUpdaters.putIfAbsent(clazz, updater);
+        }
+        return updater == NO_BATCH_UPDATER ? null : (BatchUpdater) updater;
     }
 
     @Override
@@ -106,7 +482,116 @@ public class CommonDaoImpl implements CommonDao {
         T entity = get(id, entityClazz);
         if (entity != null) {
             hibernateTemplate.delete(entity);
+            if (isMissingCached(entityClazz)) {
+                missingCache.put(getMissingKey(id, entityClazz), Boolean.TRUE);
+            }
+        }
+    }
+
+    @Override
+    public MissingEntityStat getMissingEntityStat() {
+        List<IdFilterStat> filterStats = new ArrayList<IdFilterStat>(idFilters.size());
+        for (EntityIdFilter filter : idFilters.values()) {
+            filterStats.add(filter.getStat());
+        }
+        if (missingCache == null) {
+            return new MissingEntityStat(0, 0, filterStats);
+        }
+        return new MissingEntityStat(missingCache.size(), missingCache.stats().hitCount(),
+                filterStats);
+    }
+
+    /**
+     * 判断实体是否已知不存在，ID过滤器判定不存在或在不存在实体的缓存中
+     * 
+     * @param id
+     * @param entityClazz
+     * @return
+     */
+    private boolean isKnownMissing(Serializable id, Class<?> entityClazz) {
+        if (id == null) {
+            return false;
+        }
+        if (!idFilters.isEmpty() && isNumericId(id)) {
+            EntityIdFilter filter = idFilters.get(entityClazz);
+            if (filter != null && !filter.mightContain(((Number) id).longValue())) {
+                filter.recordRejection();
+                return true;
+            }
         }
+        return isMissingCached(entityClazz)
+                && missingCache.getIfPresent(getMissingKey(id, entityClazz)) != null;
+    }
+
+    /**
+     * 数据库中不存在实体时记录，ID过滤器未能判定不存在的记为误判；
+     * 查询期间保存代数变化时移除刚放入的缓存
+     * 
+     * @param id
+     * @param entityClazz
+     * @param generation 查询前的保存代数
+     */
+    private void onMissing(Serializable id, Class<?> entityClazz, long generation) {
+        if (id == null) {
+            return;
+        }
+        if (isMissingCached(entityClazz)) {
+            String key = getMissingKey(id, entityClazz);
+            missingCache.put(key, Boolean.TRUE);
+            if (saveGenerations.get(getStripe(key)) != generation) {
+                missingCache.invalidate(key);
+            }
+        }
+        EntityIdFilter filter = idFilters.isEmpty() ? null : idFilters.get(entityClazz);
+        if (filter != null && isNumericId(id)) {
+            filter.recordFalsePositive();
+        }
+    }
+
+    /**
+     * 实体类型是否缓存不存在的实体
+     * 
+     * @param entityClazz
+     * @return
+     */
+    private boolean isMissingCached(Class<?> entityClazz) {
+        if (missingCache == null) {
+            return false;
+        }
+        Boolean cached = missingCacheTypes.get(entityClazz);
+        if (cached == null) {
+            cached = Boolean.valueOf(entityClazz.isAnnotationPresent(CacheMissing.class));
+            missingCacheTypes.putIfAbsent(entityClazz, cached);
+        }
+        return cached.booleanValue();
+    }
+
+    /**
+     * 获取查询前的保存代数，实体类型不缓存不存在的实体时返回0
+     * 
+     * @param id
+     * @param entityClazz
+     * @return
+     */
+    private long getSaveGeneration(Serializable id, Class<?> entityClazz) {
+        if (id == null || !isMissingCached(entityClazz)) {
+            return 0L;
+        }
+        return saveGenerations.get(getStripe(getMissingKey(id, entityClazz)));
+    }
+
+    private static int getStripe(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (SAVE_GENERATION_STRIPES - 1);
+    }
+
+    private static boolean isNumericId(Serializable id) {
+        return id instanceof Long || id instanceof Integer || id instanceof Short
+                || id instanceof Byte;
+    }
+
+    private static String getMissingKey(Serializable id, Class<?> entityClazz) {
+        return entityClazz.getName() + "_" + id;
     }
 
     @Override
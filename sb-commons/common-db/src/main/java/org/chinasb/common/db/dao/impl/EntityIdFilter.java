@@ -0,0 +1,106 @@
+package org.chinasb.common.db.dao.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.chinasb.common.db.dao.IdFilterStat;
+
+/**
+ * 实体ID布隆过滤器
+ * <p>位数组为{@link AtomicLongArray}，加入与查询可以并发执行，加入完成后的查询一定能看到该ID；
+ * 按两个64位哈希组合出k个位置
+ *
+ * @author zhujuan
+ */
+final class EntityIdFilter {
+    private final Class<?> entityClass;
+    private final AtomicLongArray bits;
+    private final long bitSize;
+    private final int hashFunctions;
+    private final double expectedFpp;
+
+    private final LongAdder insertions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    EntityIdFilter(Class<?> entityClass, long expectedInsertions, double fpp) {
+        long n = Math.max(expectedInsertions, 1L);
+        long m = (long) (-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE, Math.max((m + 63) >>> 6, 1L));
+        this.entityClass = entityClass;
+        this.bits = new AtomicLongArray(words);
+        this.bitSize = (long) words << 6;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitSize / n * Math.log(2)));
+        this.expectedFpp = fpp;
+    }
+
+    /**
+     * 加入ID
+     *
+     * @param id
+     */
+    void put(long id) {
+        long hash1 = mix(id);
+        long hash2 = mix(id ^ 0x9E3779B97F4A7C15L);
+        for (int i = 1; i <= hashFunctions; i++) {
+            long index = ((hash1 + i * hash2) & Long.MAX_VALUE) % bitSize;
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            for (;;) {
+                long value = bits.get(word);
+                if ((value & mask) != 0 || bits.compareAndSet(word, value, value | mask)) {
+                    break;
+                }
+            }
+        }
+        insertions.increment();
+    }
+
+    /**
+     * 判断ID是否可能存在
+     *
+     * @param id
+     * @return false表示一定不存在
+     */
+    boolean mightContain(long id) {
+        long hash1 = mix(id);
+        long hash2 = mix(id ^ 0x9E3779B97F4A7C15L);
+        for (int i = 1; i <= hashFunctions; i++) {
+            long index = ((hash1 + i * hash2) & Long.MAX_VALUE) % bitSize;
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 记录一次判定不存在
+     */
+    void recordRejection() {
+        rejections.increment();
+    }
+
+    /**
+     * 记录一次误判
+     */
+    void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    IdFilterStat getStat() {
+        long setBits = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            setBits += Long.bitCount(bits.get(i));
+        }
+        double estimatedFpp = Math.pow((double) setBits / bitSize, hashFunctions);
+        return new IdFilterStat(entityClass, bitSize, hashFunctions, insertions.sum(),
+                expectedFpp, estimatedFpp, rejections.sum(), falsePositives.sum());
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -46,4 +46,18 @@ public interface DbService extends ApplicationListener<ContextClosedEvent> {
      * @return
      */
     <T> boolean isInDbQueue(T entity);
+
+    /**
+     * 获取异步入库统计
+     *
+     * @return
+     */
+    WriteBehindStat getWriteBehindStat();
+
+    /**
+     * 重新提交死信文件中的实体，提交后删除文件
+     *
+     * @return 重新提交的实体数量
+     */
+    int replayDeadLetters();
 }
@@ -0,0 +1,110 @@
+package org.chinasb.common.db.executor;
+
+/**
+ * 异步入库统计快照
+ *
+ * @author zhujuan
+ */
+public class WriteBehindStat {
+    /**
+     * 等待提交的实体数量
+     */
+    private final int pendingEntities;
+    /**
+     * 已提交未完成(含等待重试)的批次数量
+     */
+    private final int inflightBatches;
+    /**
+     * 入库成功的批次数量
+     */
+    private final long flushedBatches;
+    /**
+     * 入库成功的实体数量
+     */
+    private final long flushedEntities;
+    /**
+     * 入库失败的次数
+     */
+    private final long failedBatches;
+    /**
+     * 转入死信文件的实体数量
+     */
+    private final long deadLetterEntities;
+    /**
+     * 最近一次入库耗时(毫秒)
+     */
+    private final long lastFlushMillis;
+    /**
+     * 单批最大入库耗时(毫秒)
+     */
+    private final long maxFlushMillis;
+    /**
+     * 累计入库耗时(毫秒)
+     */
+    private final long totalFlushMillis;
+
+    public WriteBehindStat(int pendingEntities, int inflightBatches, long flushedBatches,
+            long flushedEntities, long failedBatches, long deadLetterEntities,
+            long lastFlushMillis, long maxFlushMillis, long totalFlushMillis) {
+        this.pendingEntities = pendingEntities;
+        this.inflightBatches = inflightBatches;
+        this.flushedBatches = flushedBatches;
+        this.flushedEntities = flushedEntities;
+        this.failedBatches = failedBatches;
+        this.deadLetterEntities = deadLetterEntities;
+        this.lastFlushMillis = lastFlushMillis;
+        this.maxFlushMillis = maxFlushMillis;
+        this.totalFlushMillis = totalFlushMillis;
+    }
+
+    public int getPendingEntities() {
+        return pendingEntities;
+    }
+
+    public int getInflightBatches() {
+        return inflightBatches;
+    }
+
+    public long getFlushedBatches() {
+        return flushedBatches;
+    }
+
+    public long getFlushedEntities() {
+        return flushedEntities;
+    }
+
+    public long getFailedBatches() {
+        return failedBatches;
+    }
+
+    public long getDeadLetterEntities() {
+        return deadLetterEntities;
+    }
+
+    public long getLastFlushMillis() {
+        return lastFlushMillis;
+    }
+
+    public long getMaxFlushMillis() {
+        return maxFlushMillis;
+    }
+
+    /**
+     * 平均每批入库耗时(毫秒)
+     *
+     * @return
+     */
+    public long getAvgFlushMillis() {
+        return flushedBatches == 0 ? 0 : totalFlushMillis / flushedBatches;
+    }
+
+    @Override
+    public String toString() {
+        return "WriteBehindStat [pendingEntities=" + pendingEntities + ", inflightBatches="
+                + inflightBatches + ", flushedBatches=" + flushedBatches + ", flushedEntities="
+                + flushedEntities + ", failedBatches=" + failedBatches + ", deadLetterEntities="
+                + deadLetterEntities + ", lastFlushMillis=" + lastFlushMillis
+                + ", maxFlushMillis=" + maxFlushMillis + ", avgFlushMillis="
+                + getAvgFlushMillis() + "]";
+    }
+}
@@ -1,27 +1,45 @@
 package org.chinasb.common.db.executor.impl;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.PostConstruct;
 
 import org.chinasb.common.db.dao.CommonDao;
 import org.chinasb.common.db.executor.DbCallback;
 import org.chinasb.common.db.executor.DbService;
+import org.chinasb.common.db.executor.WriteBehindStat;
+import org.chinasb.common.db.executor.impl.EntityJournal.Checkpoint;
 import org.chinasb.common.db.model.BaseModel;
-import org.chinasb.common.threadpool.ringbuffer.DisruptorExecutor;
-import org.chinasb.common.threadpool.ringbuffer.Event;
-import org.chinasb.common.utility.CollectionUtils;
+import org.chinasb.common.threadpool.ordered.AbstractDelayTask;
+import org.chinasb.common.threadpool.ordered.AbstractTask;
+import org.chinasb.common.threadpool.ordered.OrderedTaskQueueExecutor;
+import org.chinasb.common.threadpool.ordered.TaskQueue;
 import org.chinasb.common.utility.Constants;
 import org.chinasb.common.utility.NamedDaemonThreadFactory;
 import org.slf4j.Logger;
@@ -35,16 +53,19 @@ import com.google.common.collect.Sets;
 
 /**
  * 数据库持久化服务
+ * <p>实体按类型与ID散列到固定的入库通道，同一实体总在同一通道内串行入库，不同通道并行；
+ * 在途批次数受限，达到上限时批次退回持久化集合，由下一周期重新提交，不阻塞提交线程。
+ * 入库失败按指数退避重试，超过重试次数后写入死信文件，可通过{@link #replayDeadLetters()}重新提交
+ * <p>已投递到入库通道和等待重试的实体按对象身份登记为在途，{@link #isInDbQueue(Object)}
+ * 对在途实体同样返回true，缓存不会在入库完成前移除它们
+ * <p>配置了dbcache.journal_path时，进入队列的实体先写入{@link EntityJournal}，
+ * 启动时重放上次未入库的实体，因此可以加长合并窗口而不担心进程异常退出丢失数据
  * 
  * @author zhujuan
  */
 @Service
 public class DbServiceImpl implements DbService {
     private static final Logger LOGGER = LoggerFactory.getLogger(DbServiceImpl.class);
-    /**
-     * 任务调度器
-     */
-    private final DisruptorExecutor disruptorExecutor;
     /**
      * 实体集合
      */
@@ -54,41 +75,146 @@ public class DbServiceImpl implements DbService {
      * 允许尝试提交次数
      */
     private static final int MAX_RETRY_COUNT = 5;
+    /**
+     * 首次重试间隔(毫秒)，之后每次翻倍
+     */
+    private static final int RETRY_BASE_DELAY = Constants.ONE_SECOND_MILLISECOND;
+    /**
+     * 最大重试间隔(毫秒)
+     */
+    private static final int MAX_RETRY_DELAY = Constants.ONE_MINUTE_MILLISECOND;
+    /**
+     * 每批默认实体数量
+     */
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    /**
+     * 默认日志段大小
+     */
+    private static final int DEFAULT_JOURNAL_SEGMENT_SIZE = 8 * 1024 * 1024;
+    /**
+     * 死信文件后缀
+     */
+    private static final String DEAD_LETTER_SUFFIX = ".dlq";
+    private static final AtomicInteger DEAD_LETTER_SEQ = new AtomicInteger();
+    private static final Integer ONE = Integer.valueOf(1);
+    private static final BiFunction<Integer, Integer, Integer> INCREMENT =
+            new BiFunction<Integer, Integer, Integer>() {
+                @Override
+                public Integer apply(Integer count, Integer one) {
+                    return Integer.valueOf(count.intValue() + 1);
+                }
+            };
+    private static final BiFunction<EntityRef, Integer, Integer> DECREMENT =
+            new BiFunction<EntityRef, Integer, Integer>() {
+                @Override
+                public Integer apply(EntityRef ref, Integer count) {
+                    return count.intValue() > 1 ? Integer.valueOf(count.intValue() - 1) : null;
+                }
+            };
     /**
      * （实时任务：entityBlockTime <= 0，周期性任务：entityBlockTime > 0）
      */
     @Autowired(required = false)
     @Qualifier("dbcache.max_block_time_of_entity_cache")
     private Integer entityBlockTime;
+    /**
+     * 入库通道(线程)数量
+     */
+    @Autowired(required = false)
+    @Qualifier("dbcache.flush_threads")
+    private Integer flushThreads;
+    /**
+     * 每批入库的实体数量
+     */
+    @Autowired(required = false)
+    @Qualifier("dbcache.flush_batch_size")
+    private Integer flushBatchSize;
+    /**
+     * 最大在途批次数量(含等待重试的批次)，默认为通道数量的4倍
+     */
+    @Autowired(required = false)
+    @Qualifier("dbcache.max_inflight_batches")
+    private Integer maxInflightBatches;
+    /**
+     * 死信文件目录
+     */
+    @Autowired(required = false)
+    @Qualifier("dbcache.dead_letter_path")
+    private String deadLetterPath;
+    /**
+     * 写前日志目录，未配置时不记录日志
+     */
+    @Autowired(required = false)
+    @Qualifier("dbcache.journal_path")
+    private String journalPath;
+    /**
+     * 写前日志段大小(字节)
+     */
+    @Autowired(required = false)
+    @Qualifier("dbcache.journal_segment_size")
+    private Integer journalSegmentSize;
 
     @Autowired
     @Qualifier("commonDaoImpl")
     private CommonDao commonDao;
+    /**
+     * 入库线程池，通道序号作为任务键
+     */
+    private OrderedTaskQueueExecutor flushExecutor;
+    private Semaphore inflightPermits;
+    private int lanes;
+    private volatile boolean shutdown;
+    /**
+     * 写前日志，追加与入队持有读锁，切分检查点持有写锁，保证检查点之前的记录都已进入本周期
+     */
+    private EntityJournal journal;
+    private final ReentrantReadWriteLock journalLock = new ReentrantReadWriteLock();
     private final ReentrantLock takeLock;
+    /**
+     * 在途实体(已投递到入库通道或等待重试)，按对象身份计数，同一实体可能同时位于多个批次
+     */
+    private final ConcurrentMap<EntityRef, Integer> inflightEntities =
+            new ConcurrentHashMap<EntityRef, Integer>(1024);
     private final Condition notEmpty;
+    /**
+     * 入库统计
+     */
+    private final AtomicLong flushedBatches = new AtomicLong();
+    private final AtomicLong flushedEntities = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong deadLetterEntities = new AtomicLong();
+    private final AtomicLong totalFlushMillis = new AtomicLong();
+    private final AtomicLong maxFlushMillis = new AtomicLong();
+    private volatile long lastFlushMillis;
     /**
      * 周期性处理提交实体任务
      */
     public final Runnable HANDLER_CACHED_OBJ_TASK;
 
     public DbServiceImpl() {
-        disruptorExecutor = new DisruptorExecutor("缓存模块:入库线程池");
         entityBlockTime = Integer.valueOf(Constants.ONE_MINUTE_MILLISECOND);
+        flushThreads = Integer.valueOf(DEFAULT_DB_THREADS);
+        flushBatchSize = Integer.valueOf(DEFAULT_BATCH_SIZE);
+        deadLetterPath = "dbcache_dead_letter";
+        journalSegmentSize = Integer.valueOf(DEFAULT_JOURNAL_SEGMENT_SIZE);
         takeLock = new ReentrantLock();
         notEmpty = takeLock.newCondition();
         HANDLER_CACHED_OBJ_TASK = new Runnable() {
             public void run() {
                 try {
-                    for (;;) {
-                        if (entityBlockTime.intValue() > 0) {
-                            takeLock.lockInterruptibly();
-                            try {
-                                notEmpty.await(entityBlockTime.intValue(), TimeUnit.MILLISECONDS);
-                            } finally {
-                                takeLock.unlock();
-                            }
+                    while (!shutdown) {
+                        // 实时模式下队列只承接重试失败回退的实体，按秒检查即可
+                        int blockTime = Math.max(entityBlockTime.intValue(),
+                                Constants.ONE_SECOND_MILLISECOND);
+                        takeLock.lockInterruptibly();
+                        try {
+                            notEmpty.await(blockTime, TimeUnit.MILLISECONDS);
+                        } finally {
+                            takeLock.unlock();
+                        }
+                        if (!shutdown) {
+                            submitCachedDbObject();
                         }
-                        submitCachedDbObject();
                     }
                 } catch (Exception ex) {
                     LOGGER.error("Error: " + ex.getMessage());
@@ -105,34 +231,205 @@ public class DbServiceImpl implements DbService {
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Initialize DB Daemon Thread...");
         }
+        lanes = Math.max(1, flushThreads.intValue());
+        if (flushBatchSize.intValue() <= 0) {
+            flushBatchSize = Integer.valueOf(DEFAULT_BATCH_SIZE);
+        }
+        if (maxInflightBatches == null || maxInflightBatches.intValue() <= 0) {
+            maxInflightBatches = Integer.valueOf(lanes * 4);
+        }
+        inflightPermits = new Semaphore(maxInflightBatches.intValue());
+        flushExecutor = new OrderedTaskQueueExecutor(lanes, "缓存模块:入库线程池");
+        if (journalPath != null && !journalPath.isEmpty()) {
+            openJournal();
+        }
         ThreadFactory factory = new NamedDaemonThreadFactory("数据库入库Daemon线程");
         Thread pollCachedObjThread = factory.newThread(HANDLER_CACHED_OBJ_TASK);
         pollCachedObjThread.start();
     }
 
     /**
-     * 创建实体缓存持久化任务
+     * 打开写前日志并重放上次未入库的实体
+     * <p>重放的实体立即同步入库，避免业务先从数据库加载到旧数据；入库失败的实体重新进入队列
+     */
+    private void openJournal() {
+        try {
+            journal = new EntityJournal(new File(journalPath), journalSegmentSize.intValue());
+        } catch (IOException ex) {
+            throw new IllegalStateException("Can not open entity journal: " + journalPath, ex);
+        }
+        List<BaseModel<?>> recovered = journal.recover();
+        if (!recovered.isEmpty()) {
+            LOGGER.info("重放写前日志, 实体数量:{}", recovered.size());
+            int batchSize = flushBatchSize.intValue();
+            for (int from = 0; from < recovered.size(); from += batchSize) {
+                List<BaseModel<?>> batch = new ArrayList<BaseModel<?>>(
+                        recovered.subList(from, Math.min(from + batchSize, recovered.size())));
+                try {
+                    commonDao.update(batch);
+                    recordFlush(batch.size(), 0);
+                } catch (Exception ex) {
+                    LOGGER.error("重放写前日志入库失败, 重新进入队列. 实体数量:{}", batch.size(), ex);
+                    submitUpdate2Queue(batch.toArray());
+                }
+            }
+        }
+        journal.discardRecovered();
+    }
+
+    /**
+     * 计算实体所属的入库通道
      * 
-     * @param callback
-     * @param entityCache
+     * @param entity
      * @return
      */
-    private Runnable createTask(final DbCallback callback, final EntityCache entityCache) {
-        return new Runnable() {
-            public void run() {
-                handleTask(callback, entityCache, false);
+    private int laneOf(BaseModel<?> entity) {
+        Object id = entity.getId();
+        int h = entity.getClass().hashCode() * 31 + (id == null ? 0 : id.hashCode());
+        h ^= (h >>> 16);
+        return (h & Integer.MAX_VALUE) % lanes;
+    }
+
+    /**
+     * 按通道与批次大小拆分实体
+     * 
+     * @param entities
+     * @param retryCount
+     * @return
+     */
+    private List<EntityCache> split(Collection<BaseModel<?>> entities, int retryCount) {
+        List<List<BaseModel<?>>> shards = new ArrayList<List<BaseModel<?>>>(lanes);
+        for (int lane = 0; lane < lanes; lane++) {
+            shards.add(null);
+        }
+        for (BaseModel<?> entity : entities) {
+            int lane = laneOf(entity);
+            List<BaseModel<?>> shard = shards.get(lane);
+            if (shard == null) {
+                shard = new ArrayList<BaseModel<?>>();
+                shards.set(lane, shard);
             }
-        };
+            shard.add(entity);
+        }
+        int batchSize = flushBatchSize.intValue();
+        List<EntityCache> batches = new ArrayList<EntityCache>();
+        for (int lane = 0; lane < lanes; lane++) {
+            List<BaseModel<?>> shard = shards.get(lane);
+            if (shard == null) {
+                continue;
+            }
+            for (int from = 0; from < shard.size(); from += batchSize) {
+                List<BaseModel<?>> batch = new ArrayList<BaseModel<?>>(
+                        shard.subList(from, Math.min(from + batchSize, shard.size())));
+                batches.add(new EntityCache(lane, batch, retryCount));
+            }
+        }
+        return batches;
+    }
+
+    /**
+     * 提交实体缓存持久化任务，实体应已登记为在途
+     * 
+     * @param entities
+     */
+    private void add2Queue(Collection<BaseModel<?>> entities, Checkpoint checkpoint) {
+        for (EntityCache batch : split(entities, 0)) {
+            if (checkpoint != null) {
+                checkpoint.retain();
+                batch.checkpoint = checkpoint;
+            }
+            dispatch(batch);
+        }
+    }
+
+    /**
+     * 占用在途额度后投递到批次所属通道，没有额度时退回持久化集合
+     * 
+     * @param entityCache
+     */
+    private void dispatch(EntityCache entityCache) {
+        if (!inflightPermits.tryAcquire()) {
+            requeue(entityCache);
+            return;
+        }
+        try {
+            flushExecutor.execute(entityCache.getLane(), new FlushTask(entityCache));
+        } catch (RejectedExecutionException e) {
+            inflightPermits.release();
+            deadLetter(entityCache);
+            finish(entityCache);
+        }
+    }
+
+    /**
+     * 批次退回持久化集合，由守护线程在下一周期重新提交；
+     * 批次持有检查点时实体重新写入日志，保证释放检查点后仍能在异常退出时恢复
+     * 
+     * @param entityCache
+     */
+    private void requeue(EntityCache entityCache) {
+        Collection<BaseModel<?>> entities = entityCache.getEntities();
+        if (journal != null && entityCache.checkpoint != null) {
+            journalLock.readLock().lock();
+            try {
+                journal.append(entities);
+            } catch (IOException ex) {
+                LOGGER.error("重新写入写前日志失败. 实体数量:{}", entities.size(), ex);
+            } finally {
+                journalLock.readLock().unlock();
+            }
+        }
+        put2ObjectMap(entities);
+        finish(entityCache);
+    }
+
+    /**
+     * 批次结束(入库、退回或转入死信)，取消实体的在途登记并释放检查点
+     * 
+     * @param entityCache
+     */
+    private void finish(EntityCache entityCache) {
+        untrack(entityCache.getEntities());
+        entityCache.complete();
+    }
+
+    /**
+     * 登记在途实体
+     * 
+     * @param entities
+     */
+    private void track(Collection<BaseModel<?>> entities) {
+        for (BaseModel<?> entity : entities) {
+            inflightEntities.merge(new EntityRef(entity), ONE, INCREMENT);
+        }
+    }
+
+    /**
+     * 取消在途实体登记
+     * 
+     * @param entities
+     */
+    private void untrack(Collection<BaseModel<?>> entities) {
+        for (BaseModel<?> entity : entities) {
+            inflightEntities.computeIfPresent(new EntityRef(entity), DECREMENT);
+        }
     }
 
     /**
-     * 提交实体缓存持久化任务
+     * 在入库通道中执行批次，完成(成功或转入死信)后释放在途额度
      * 
-     * @param callback
      * @param entityCache
      */
-    private void add2Queue(DbCallback callback, EntityCache entityCache) {
-        disruptorExecutor.dispatch(Event.wrap(createTask(null, entityCache)));
+    private void flush(EntityCache entityCache) {
+        boolean done = true;
+        try {
+            done = handleTask(null, entityCache, true);
+        } finally {
+            if (done) {
+                inflightPermits.release();
+                finish(entityCache);
+            }
+        }
     }
 
     /**
@@ -140,12 +437,13 @@ public class DbServiceImpl implements DbService {
      * 
      * @param callback 回调
      * @param entityCache 实体对象缓存数据
-     * @param removeFromSubmitCache
+     * @param inflight 是否为已占用在途额度的异步批次
+     * @return 批次是否已结束，false表示已安排延时重试并继续占用在途额度
      */
-    private void handleTask(DbCallback callback, EntityCache entityCache,
-            boolean removeFromSubmitCache) {
+    private boolean handleTask(DbCallback callback, EntityCache entityCache, boolean inflight) {
         Collection<BaseModel<?>> entities = entityCache.getEntities();
         if ((entities != null) && (!entities.isEmpty())) {
+            long startTime = System.currentTimeMillis();
             try {
                 for (BaseModel<?> entity : entities) {
                     Set<BaseModel<?>> entitySet = DB_OBJECT_MAP.get(entity.getClass());
@@ -155,12 +453,12 @@ public class DbServiceImpl implements DbService {
                 }
                 commonDao.update(entities);
             } catch (Exception ex) {
-                LOGGER.error("执行入库时产生异常", ex);
-                if (entityCache.getRetryCount() < MAX_RETRY_COUNT) {
-                    add2Queue(callback, entityCache);
-                }
-                return;
+                failedBatches.incrementAndGet();
+                LOGGER.error("执行入库时产生异常, 已尝试次数:{}, 实体数量:{}",
+                        entityCache.getRetryCount() + 1, entities.size(), ex);
+                return retry(entityCache, inflight);
             }
+            recordFlush(entities.size(), System.currentTimeMillis() - startTime);
         }
         if (callback != null) {
             try {
@@ -169,53 +467,133 @@ public class DbServiceImpl implements DbService {
                 LOGGER.error("执行入库后回调时产生异常", ex);
             }
         }
+        return true;
     }
 
     /**
-     * 提交实体持久化任务异步处理
+     * 入库失败后按指数退避安排重试，超过重试次数或服务停止时转入死信
+     * 
+     * @param entityCache
+     * @param inflight
+     * @return 批次是否已结束
      */
-    private final void submitCachedDbObject() {
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("submitCachedDbObject [size[{}]]", DB_OBJECT_MAP.size());
+    private boolean retry(EntityCache entityCache, boolean inflight) {
+        int retryCount = entityCache.incrementRetryCount();
+        if (retryCount >= MAX_RETRY_COUNT || shutdown) {
+            deadLetter(entityCache);
+            return true;
         }
-        if (DB_OBJECT_MAP.isEmpty()) {
-            return;
+        int delay = (int) Math.min((long) RETRY_BASE_DELAY << (retryCount - 1), MAX_RETRY_DELAY);
+        if (inflight) {
+            if (scheduleRetry(entityCache, delay)) {
+                return false;
+            }
+            deadLetter(entityCache);
+            return true;
+        }
+        // 实时入库失败，拆分到各通道后按异步批次重试
+        for (EntityCache batch : split(entityCache.getEntities(), retryCount)) {
+            track(batch.getEntities());
+            if (!inflightPermits.tryAcquire()) {
+                requeue(batch);
+                continue;
+            }
+            if (!scheduleRetry(batch, delay)) {
+                inflightPermits.release();
+                deadLetter(batch);
+                finish(batch);
+            }
+        }
+        return true;
+    }
+
+    private boolean scheduleRetry(EntityCache entityCache, int delay) {
+        try {
+            TaskQueue taskQueue = flushExecutor.getTaskQueue(entityCache.getLane());
+            taskQueue.enDelayQueue(new RetryTask(taskQueue, delay, entityCache));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private void recordFlush(int size, long millis) {
+        flushedBatches.incrementAndGet();
+        flushedEntities.addAndGet(size);
+        totalFlushMillis.addAndGet(millis);
+        lastFlushMillis = millis;
+        long max;
+        while (millis > (max = maxFlushMillis.get()) && !maxFlushMillis.compareAndSet(max, millis)) {
+            // retry
         }
-		Iterator<Class<?>> iterator = DB_OBJECT_MAP.keySet().iterator();
-		while (iterator.hasNext()) {
-			Object key = iterator.next();
-			Set<BaseModel<?>> set = DB_OBJECT_MAP.remove(key);
-			if ((set != null) && (set.size() > 0)) {
-				disruptorExecutor.dispatch(
-						Event.wrap(createTask(null, new EntityCache(new Object[] {set}))));
-			}
-		}
     }
 
     /**
-     * 提交实体持久化任务实时处理
+     * 将批次写入死信文件
+     * 
+     * @param entityCache
      */
-    private final void updateIntimeCachedDbObject() {
-        if (DB_OBJECT_MAP.isEmpty()) {
-            return;
+    private void deadLetter(EntityCache entityCache) {
+        Collection<BaseModel<?>> entities = entityCache.getEntities();
+        deadLetterEntities.addAndGet(entities.size());
+        File file = new File(deadLetterPath, System.currentTimeMillis() + "_"
+                + DEAD_LETTER_SEQ.incrementAndGet() + DEAD_LETTER_SUFFIX);
+        try {
+            File dir = file.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+                throw new IOException("Can not create dead letter directory: " + dir);
+            }
+            ObjectOutputStream out = new ObjectOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                out.writeObject(new ArrayList<BaseModel<?>>(entities));
+            } finally {
+                out.close();
+            }
+            LOGGER.error("实体入库失败{}次, 已写入死信文件:{}, 实体:{}", entityCache.getRetryCount(),
+                    file.getPath(), entities);
+        } catch (IOException ex) {
+            LOGGER.error("写入死信文件失败, 实体未能保存:{}", entities, ex);
+        }
+    }
+
+    /**
+     * 提交实体持久化任务异步处理
+     */
+    private final void submitCachedDbObject() {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("submitCachedDbObject [size[{}]]", DB_OBJECT_MAP.size());
+        }
+        Checkpoint checkpoint = null;
+        if (journal != null) {
+            journalLock.writeLock().lock();
+            try {
+                checkpoint = journal.rotate();
+            } finally {
+                journalLock.writeLock().unlock();
+            }
         }
-        int subCount = 100;
-		Iterator<Class<?>> iterator = DB_OBJECT_MAP.keySet().iterator();
-		while (iterator.hasNext()) {
-			Object key = iterator.next();
-			Set<BaseModel<?>> set = DB_OBJECT_MAP.remove(key);
-			if ((set != null) && (set.size() > 0)) {
-				int maxSize = set.size();
-                List<BaseModel<?>> list = new ArrayList<BaseModel<?>>(set);
-                int maxCount =
-                        maxSize % subCount == 0 ? maxSize / subCount : maxSize / subCount + 1;
-                for (int index = 0; index < maxCount; index++) {
-                    List<BaseModel<?>> subList =
-                            CollectionUtils.subListCopy(list, subCount * index, subCount);
-                    updateEntityIntime(new Object[] {subList});
+        try {
+            if (DB_OBJECT_MAP.isEmpty()) {
+                return;
+            }
+            for (Set<BaseModel<?>> set : DB_OBJECT_MAP.values()) {
+                if (set.isEmpty()) {
+                    continue;
+                }
+                // 先登记在途再移出集合，实体任何时刻都能被isInDbQueue看到
+                List<BaseModel<?>> entities = new ArrayList<BaseModel<?>>(set);
+                track(entities);
+                for (BaseModel<?> entity : entities) {
+                    set.remove(entity);
                 }
-			}
-		}
+                add2Queue(entities, checkpoint);
+            }
+        } finally {
+            if (checkpoint != null) {
+                checkpoint.release();
+            }
+        }
     }
 
     /**
@@ -234,16 +612,16 @@ public class DbServiceImpl implements DbService {
      * 
      * @param entity
      */
-	private void put2ObjectMap(BaseModel<?> entity) {
-		Class<?> clazz = entity.getClass();
-		Set<BaseModel<?>> objs = DB_OBJECT_MAP.get(clazz);
-		if (objs == null) {
-			Set<BaseModel<?>> concurrentHashSet = Sets.newConcurrentHashSet();
-			DB_OBJECT_MAP.putIfAbsent(clazz, concurrentHashSet);
-			objs = DB_OBJECT_MAP.get(clazz);
-		}
-		objs.add(entity);
-	}
+    private void put2ObjectMap(BaseModel<?> entity) {
+        Class<?> clazz = entity.getClass();
+        Set<BaseModel<?>> objs = DB_OBJECT_MAP.get(clazz);
+        if (objs == null) {
+            Set<BaseModel<?>> concurrentHashSet = Sets.newConcurrentHashSet();
+            DB_OBJECT_MAP.putIfAbsent(clazz, concurrentHashSet);
+            objs = DB_OBJECT_MAP.get(clazz);
+        }
+        objs.add(entity);
+    }
 
     @Override
     @SuppressWarnings("unchecked")
@@ -251,39 +629,133 @@ public class DbServiceImpl implements DbService {
         if (entities.length <= 0) {
             return;
         }
-        if (entityBlockTime.intValue() <= 0) {
-            add2Queue(null, new EntityCache(entities));
+        Collection<BaseModel<?>> baseModels = getBaseModelList(entities);
+        if (journal == null) {
+            if (entityBlockTime.intValue() <= 0) {
+                track(baseModels);
+                add2Queue(baseModels, null);
+            } else {
+                put2ObjectMap(baseModels);
+            }
             return;
         }
-        Collection<BaseModel<?>> baseModels = getBaseModelList(entities);
-        put2ObjectMap(baseModels);
+        Checkpoint checkpoint = null;
+        journalLock.readLock().lock();
+        try {
+            try {
+                journal.append(baseModels);
+            } catch (IOException ex) {
+                LOGGER.error("写入写前日志失败, 实体仍进入入库队列. 实体数量:{}", baseModels.size(), ex);
+            }
+            if (entityBlockTime.intValue() <= 0) {
+                checkpoint = journal.current();
+                checkpoint.retain();
+                track(baseModels);
+            } else {
+                put2ObjectMap(baseModels);
+            }
+        } finally {
+            journalLock.readLock().unlock();
+        }
+        if (checkpoint != null) {
+            try {
+                add2Queue(baseModels, checkpoint);
+            } finally {
+                checkpoint.release();
+            }
+        }
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public <T> void updateEntityIntime(T... entities) {
         if (entities.length > 0) {
-            handleTask(null, new EntityCache(entities), true);
+            handleTask(null, new EntityCache(entities), false);
         }
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public <T> void updateEntityIntime(DbCallback callback, T... entities) {
-        handleTask(callback, new EntityCache(entities), true);
+        handleTask(callback, new EntityCache(entities), false);
     }
 
     @Override
     public <T> boolean isInDbQueue(T entity) {
         if ((entity != null) && ((entity instanceof BaseModel))) {
             Set<BaseModel<?>> entitySet = DB_OBJECT_MAP.get(entity.getClass());
-            if ((entitySet != null) && (!entitySet.isEmpty())) {
-                return entitySet.contains(entity);
+            if ((entitySet != null) && (!entitySet.isEmpty()) && entitySet.contains(entity)) {
+                return true;
             }
+            return !inflightEntities.isEmpty()
+                    && inflightEntities.containsKey(new EntityRef(entity));
         }
         return false;
     }
 
+    @Override
+    public WriteBehindStat getWriteBehindStat() {
+        int pending = pendingEntities();
+        int inflight = inflightPermits == null ? 0
+                : maxInflightBatches.intValue() - inflightPermits.availablePermits();
+        return new WriteBehindStat(pending, Math.max(inflight, 0), flushedBatches.get(),
+                flushedEntities.get(), failedBatches.get(), deadLetterEntities.get(),
+                lastFlushMillis, maxFlushMillis.get(), totalFlushMillis.get());
+    }
+
+    /**
+     * 持久化集合中等待提交的实体数量
+     * 
+     * @return
+     */
+    private int pendingEntities() {
+        int pending = 0;
+        for (Set<BaseModel<?>> set : DB_OBJECT_MAP.values()) {
+            pending += set.size();
+        }
+        return pending;
+    }
+
+    /**
+     * 死信文件保存的是失败时的实体副本，应在缓存中没有对应实体的更新版本时(如启动时)调用
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int replayDeadLetters() {
+        File[] files = new File(deadLetterPath).listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(DEAD_LETTER_SUFFIX);
+            }
+        });
+        if (files == null || files.length == 0) {
+            return 0;
+        }
+        Arrays.sort(files);
+        int count = 0;
+        for (File file : files) {
+            List<BaseModel<?>> entities;
+            try {
+                ObjectInputStream in = new ObjectInputStream(
+                        new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    entities = (List<BaseModel<?>>) in.readObject();
+                } finally {
+                    in.close();
+                }
+            } catch (IOException | ClassNotFoundException ex) {
+                LOGGER.error("读取死信文件失败:{}", file.getPath(), ex);
+                continue;
+            }
+            submitUpdate2Queue(entities);
+            if (!file.delete()) {
+                LOGGER.warn("删除死信文件失败:{}", file.getPath());
+            }
+            count += entities.size();
+        }
+        return count;
+    }
+
     @Override
     public void onApplicationEvent(ContextClosedEvent event) {
         workDone();
@@ -293,19 +765,97 @@ public class DbServiceImpl implements DbService {
      * 服务停止处理
      */
     public void workDone() {
-        while (disruptorExecutor != null) {
-            if (!disruptorExecutor.alive()) {
-                break;
-            }
-            if (!DB_OBJECT_MAP.isEmpty()) {
-                updateIntimeCachedDbObject();
-            }
-            try {
-                Thread.sleep(1000L);
-            } catch (InterruptedException e) {
-                LOGGER.error("{}", e);
+        if (flushExecutor == null || shutdown) {
+            return;
+        }
+        shutdown = true;
+        takeLock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            takeLock.unlock();
+        }
+        long deadline = System.currentTimeMillis() + Constants.ONE_MINUTE_MILLISECOND * 5;
+        int permits = maxInflightBatches.intValue();
+        boolean drained = false;
+        try {
+            // 在途额度不足时批次会退回持久化集合，反复提交直到集合清空
+            submitCachedDbObject();
+            while (pendingEntities() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100L);
+                submitCachedDbObject();
             }
-			disruptorExecutor.shutdown(Constants.ONE_MINUTE_MILLISECOND * 5, TimeUnit.MILLISECONDS);
+            drained = inflightPermits.tryAcquire(permits,
+                    Math.max(deadline - System.currentTimeMillis(), 0L), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!drained) {
+            LOGGER.error("等待入库完成超时, 剩余批次:{}, 未提交实体:{}",
+                    permits - inflightPermits.availablePermits(), pendingEntities());
+        }
+        flushExecutor.shutdown(Constants.ONE_MINUTE_MILLISECOND);
+        if (drained) {
+            inflightPermits.release(permits);
+        }
+        if (journal != null) {
+            // 未完成的日志段保留到下次启动重放
+            journal.close();
+        }
+    }
+
+    /**
+     * 入库任务
+     */
+    private class FlushTask extends AbstractTask {
+        private final EntityCache entityCache;
+
+        FlushTask(EntityCache entityCache) {
+            super(null);
+            this.entityCache = entityCache;
+        }
+
+        @Override
+        public void run() {
+            flush(entityCache);
+        }
+    }
+
+    /**
+     * 入库重试任务，到期后在原通道中执行
+     */
+    private class RetryTask extends AbstractDelayTask {
+        private final EntityCache entityCache;
+
+        RetryTask(TaskQueue taskQueue, int delayTime, EntityCache entityCache) {
+            super(taskQueue, delayTime);
+            this.entityCache = entityCache;
+        }
+
+        @Override
+        public void run() {
+            flush(entityCache);
+        }
+    }
+
+    /**
+     * 按对象身份比较的实体引用
+     */
+    private static final class EntityRef {
+        private final Object entity;
+
+        EntityRef(Object entity) {
+            this.entity = entity;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(entity);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof EntityRef && ((EntityRef) obj).entity == entity;
         }
     }
 
@@ -321,6 +871,14 @@ public class DbServiceImpl implements DbService {
          * 尝试次数
          */
         private int retryCount;
+        /**
+         * 入库通道
+         */
+        private int lane;
+        /**
+         * 批次所属的写前日志检查点
+         */
+        private Checkpoint checkpoint;
 
         /**
          * 获取实体集合
@@ -340,6 +898,29 @@ public class DbServiceImpl implements DbService {
             return retryCount;
         }
 
+        /**
+         * 获取入库通道
+         * 
+         * @return
+         */
+        public int getLane() {
+            return lane;
+        }
+
+        int incrementRetryCount() {
+            return ++retryCount;
+        }
+
+        /**
+         * 批次结束(入库或转入死信)
+         */
+        void complete() {
+            if (checkpoint != null) {
+                checkpoint.release();
+                checkpoint = null;
+            }
+        }
+
         public EntityCache(Object... entities) {
             this.entities = getBaseModelList(entities);
         }
@@ -347,6 +928,12 @@ public class DbServiceImpl implements DbService {
         public EntityCache(Collection<Object> entities) {
             this.entities = getBaseModelList(new Object[] {entities});
         }
+
+        EntityCache(int lane, Collection<BaseModel<?>> entities, int retryCount) {
+            this.lane = lane;
+            this.entities = entities;
+            this.retryCount = retryCount;
+        }
     }
 
 
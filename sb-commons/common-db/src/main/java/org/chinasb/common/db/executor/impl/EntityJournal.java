@@ -0,0 +1,346 @@
+package org.chinasb.common.db.executor.impl;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import org.chinasb.common.db.model.BaseModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 实体写前日志
+ * <p>实体进入入库队列前将序列化快照追加到内存映射的日志段，JVM异常退出后由下次启动重放；
+ * 每个入库周期开始时通过{@link #rotate()}切分出一个{@link Checkpoint}，记录当前日志段的写入位置，
+ * 该周期提交的批次全部完成(入库或转入死信)后，之前的日志段被删除，所在日志段的重放起点前移到该位置；
+ * 日志段只在写满时切换，切分检查点不产生新的日志段与内存映射
+ * <p>日志段格式：重放起点(int) + 记录...；记录格式：长度(int) + CRC32(int) + 序列化的实体，长度为0表示段结束
+ * 
+ * @author zhujuan
+ */
+final class EntityJournal {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityJournal.class);
+    private static final String SUFFIX = ".journal";
+    private static final int HEADER_SIZE = 8;
+    /**
+     * 日志段头长度，保存重放起点
+     */
+    private static final int SEGMENT_HEADER_SIZE = 4;
+
+    private final File dir;
+    private final int segmentSize;
+    /**
+     * 启动时已存在、等待重放的日志段
+     */
+    private final List<File> recoveredFiles;
+    /**
+     * 未删除的日志段，按编号递增
+     */
+    private final Deque<Segment> segments = new ArrayDeque<Segment>();
+    /**
+     * 未完成的检查点，按创建顺序，最后一个为当前检查点
+     */
+    private final Deque<Checkpoint> checkpoints = new ArrayDeque<Checkpoint>();
+    private long nextSegmentId;
+    private Checkpoint current;
+    private boolean closed;
+
+    EntityJournal(File dir, int segmentSize) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Can not create journal directory: " + dir);
+        }
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX);
+            }
+        });
+        Arrays.sort(files);
+        this.recoveredFiles = Arrays.asList(files);
+        for (File file : files) {
+            nextSegmentId = Math.max(nextSegmentId, segmentId(file) + 1);
+        }
+        this.current = new Checkpoint();
+        this.checkpoints.add(current);
+    }
+
+    private static long segmentId(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 读取启动时已存在的日志，同一实体只保留最后一次快照
+     * 
+     * @return
+     */
+    List<BaseModel<?>> recover() {
+        Map<String, BaseModel<?>> entities = new LinkedHashMap<String, BaseModel<?>>();
+        for (File file : recoveredFiles) {
+            int count = 0;
+            try {
+                DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    int replayOffset = in.readInt();
+                    in.skipBytes(Math.max(replayOffset - SEGMENT_HEADER_SIZE, 0));
+                    CRC32 crc = new CRC32();
+                    for (;;) {
+                        int length = in.readInt();
+                        if (length <= 0) {
+                            break;
+                        }
+                        int checksum = in.readInt();
+                        byte[] data = new byte[length];
+                        in.readFully(data);
+                        crc.reset();
+                        crc.update(data, 0, length);
+                        if ((int) crc.getValue() != checksum) {
+                            LOGGER.warn("日志段:{} 第{}条记录校验失败, 忽略之后的记录", file, count + 1);
+                            break;
+                        }
+                        BaseModel<?> entity = deserialize(data);
+                        if (entity != null) {
+                            String key = entity.getClass().getName() + "#" + entity.getId();
+                            entities.remove(key);
+                            entities.put(key, entity);
+                        }
+                        count++;
+                    }
+                } finally {
+                    in.close();
+                }
+            } catch (EOFException e) {
+                // 最后一条记录未写完
+            } catch (IOException e) {
+                LOGGER.error("读取日志段失败:{}", file, e);
+            }
+            LOGGER.info("读取日志段:{} 记录数:{}", file, count);
+        }
+        return new ArrayList<BaseModel<?>>(entities.values());
+    }
+
+    private static BaseModel<?> deserialize(byte[] data) {
+        try {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+            try {
+                return (BaseModel<?>) in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            LOGGER.error("日志记录反序列化失败", e);
+            return null;
+        }
+    }
+
+    /**
+     * 删除启动时已存在的日志段，应在重放的实体入库或重新进入日志后调用
+     */
+    void discardRecovered() {
+        for (File file : recoveredFiles) {
+            if (!file.delete()) {
+                LOGGER.warn("删除日志段失败:{}", file);
+            }
+        }
+    }
+
+    /**
+     * 追加实体快照
+     * 
+     * @param entities
+     * @throws IOException
+     */
+    void append(Collection<BaseModel<?>> entities) throws IOException {
+        List<byte[]> records = new ArrayList<byte[]>(entities.size());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        for (BaseModel<?> entity : entities) {
+            bytes.reset();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(entity);
+            out.close();
+            records.add(bytes.toByteArray());
+        }
+        CRC32 crc = new CRC32();
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Journal closed.");
+            }
+            for (byte[] record : records) {
+                Segment segment = segments.peekLast();
+                if (segment == null || segment.sealed
+                        || segment.buffer.remaining() < HEADER_SIZE + record.length) {
+                    if (segment != null) {
+                        segment.seal();
+                    }
+                    segment = newSegment(HEADER_SIZE + record.length);
+                }
+                crc.reset();
+                crc.update(record, 0, record.length);
+                segment.buffer.putInt(record.length);
+                segment.buffer.putInt((int) crc.getValue());
+                segment.buffer.put(record);
+                segment.records++;
+            }
+        }
+    }
+
+    private Segment newSegment(int minSize) throws IOException {
+        long id = nextSegmentId++;
+        File file = new File(dir, String.format("%020d%s", id, SUFFIX));
+        Segment segment =
+                new Segment(id, file, Math.max(segmentSize, SEGMENT_HEADER_SIZE + minSize));
+        segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * 获取当前检查点，实时入库的批次直接持有当前检查点
+     * 
+     * @return
+     */
+    synchronized Checkpoint current() {
+        return current;
+    }
+
+    /**
+     * 切分检查点，之前写入的记录归属返回的检查点，之后的记录继续写入当前日志段
+     * <p>调用者持有返回检查点的初始引用，提交完本周期的批次后应调用{@link Checkpoint#release()}
+     * 
+     * @return
+     */
+    synchronized Checkpoint rotate() {
+        Checkpoint checkpoint = current;
+        Segment last = segments.peekLast();
+        checkpoint.lastSegmentId = last == null ? -1 : last.id;
+        checkpoint.lastPosition = last == null ? 0 : last.buffer.position();
+        current = new Checkpoint();
+        checkpoints.add(current);
+        return checkpoint;
+    }
+
+    /**
+     * 删除已完成检查点覆盖的日志段，检查点所在的日志段从检查点位置开始重放
+     */
+    private synchronized void onCheckpointDone() {
+        Iterator<Checkpoint> iterator = checkpoints.iterator();
+        while (iterator.hasNext()) {
+            Checkpoint checkpoint = iterator.next();
+            if (checkpoint.refCnt.get() > 0 || checkpoint == current) {
+                break;
+            }
+            iterator.remove();
+            while (!segments.isEmpty() && segments.peekFirst().id < checkpoint.lastSegmentId) {
+                segments.pollFirst().delete();
+            }
+            Segment first = segments.peekFirst();
+            if (first != null && first.id == checkpoint.lastSegmentId) {
+                first.buffer.putInt(0, checkpoint.lastPosition);
+            }
+        }
+    }
+
+    /**
+     * 日志段数量
+     * 
+     * @return
+     */
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * 关闭日志，未删除的日志段保留到下次启动重放
+     */
+    synchronized void close() {
+        closed = true;
+        for (Segment segment : segments) {
+            if (!segment.sealed) {
+                segment.seal();
+            }
+        }
+    }
+
+    /**
+     * 检查点，引用计数归零后覆盖的日志段可以删除
+     */
+    final class Checkpoint {
+        private final AtomicInteger refCnt = new AtomicInteger(1);
+        private long lastSegmentId = -1;
+        private int lastPosition;
+
+        void retain() {
+            refCnt.incrementAndGet();
+        }
+
+        void release() {
+            if (refCnt.decrementAndGet() == 0) {
+                onCheckpointDone();
+            }
+        }
+    }
+
+    /**
+     * 日志段
+     */
+    private static final class Segment {
+        final long id;
+        final File file;
+        final MappedByteBuffer buffer;
+        boolean sealed;
+        int records;
+
+        Segment(long id, File file, int size) throws IOException {
+            this.id = id;
+            this.file = file;
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } finally {
+                raf.close();
+            }
+            buffer.putInt(SEGMENT_HEADER_SIZE);
+        }
+
+        void seal() {
+            sealed = true;
+            if (records > 0) {
+                buffer.force();
+            }
+        }
+
+        void delete() {
+            if (!file.delete()) {
+                LOGGER.warn("删除日志段失败:{}", file);
+            }
+        }
+    }
+}
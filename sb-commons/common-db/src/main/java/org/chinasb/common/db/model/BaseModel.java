@@ -14,6 +14,10 @@ import org.chinasb.common.lock.IEntity;
 @SuppressWarnings("serial")
 public abstract class BaseModel<PK extends Comparable<PK> & Serializable> implements IEntity<PK>,
         Serializable {
+    /**
+     * 最近一次与数据库一致的属性快照，只用于{@link DirtyTracking}实体
+     */
+    private transient volatile Object[] persistedState;
 
     /**
      * 获取实体ID
@@ -60,4 +64,18 @@ public abstract class BaseModel<PK extends Comparable<PK> & Serializable> implem
     public PK getIdentity() {
         return getId();
     }
+
+    /**
+     * 获取属性快照，由持久化层维护
+     */
+    public final Object[] persistedState() {
+        return persistedState;
+    }
+
+    /**
+     * 设置属性快照，由持久化层维护
+     */
+    public final void persistedState(Object[] persistedState) {
+        this.persistedState = persistedState;
+    }
 }
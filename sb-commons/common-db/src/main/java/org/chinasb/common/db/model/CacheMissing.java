@@ -0,0 +1,22 @@
+package org.chinasb.common.db.model;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记实体启用不存在实体的缓存
+ * <p>数据库中不存在的ID在dbcache.ttl_of_missing_cache内直接返回null，不再查询数据库；
+ * 通过CommonDao保存实体时清除对应的缓存，绕过CommonDao写入数据库的实体在缓存过期前不可见
+ *
+ * @author zhujuan
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface CacheMissing {
+}
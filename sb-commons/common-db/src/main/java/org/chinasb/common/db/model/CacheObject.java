@@ -1,9 +1,11 @@
 package org.chinasb.common.db.model;
 
+import org.chinasb.common.utility.CoarseClock;
 import org.chinasb.common.utility.Constants;
 
 /**
  * 缓存对象
+ * <p>时间取自{@link CoarseClock}，过期判断有毫秒级误差
  * 
  * @author zhujuan
  */
@@ -19,11 +21,11 @@ public class CacheObject {
     /**
      * 创建时间
      */
-    private long createTime = System.currentTimeMillis();
+    private long createTime = CoarseClock.currentTimeMillis();
     /**
-     * 过期时间
+     * 过期时间，访问时由任意线程延长，过期清理线程读取
      */
-    private long expireTime = createTime + ttl;
+    private volatile long expireTime = createTime + ttl;
 
     /**
      * 将普通对象转换为缓存对象
@@ -35,7 +37,7 @@ public class CacheObject {
         CacheObject cacheObject = new CacheObject();
         cacheObject.value = value;
         cacheObject.ttl = Constants.ONE_DAY_MILLISECOND;
-        cacheObject.createTime = System.currentTimeMillis();
+        cacheObject.createTime = CoarseClock.currentTimeMillis();
         cacheObject.expireTime = (cacheObject.createTime + cacheObject.ttl);
         return cacheObject;
     }
@@ -51,7 +53,7 @@ public class CacheObject {
         CacheObject cacheObject = new CacheObject();
         cacheObject.value = value;
         cacheObject.ttl = timeToLive;
-        cacheObject.createTime = System.currentTimeMillis();
+        cacheObject.createTime = CoarseClock.currentTimeMillis();
         cacheObject.expireTime = (cacheObject.createTime + cacheObject.ttl);
         return cacheObject;
     }
@@ -62,7 +64,7 @@ public class CacheObject {
      * @return true: 有效; false: 无效
      */
     public boolean isValidate() {
-        return expireTime >= System.currentTimeMillis();
+        return expireTime >= CoarseClock.currentTimeMillis();
     }
 
     /**
@@ -71,7 +73,7 @@ public class CacheObject {
      * @param addExpireTime
      */
     public void increaseExpireTime(int addExpireTime) {
-        if (expireTime < (addExpireTime + System.currentTimeMillis())) {
+        if (expireTime < (addExpireTime + CoarseClock.currentTimeMillis())) {
             expireTime += addExpireTime;
         }
     }
@@ -0,0 +1,28 @@
+package org.chinasb.common.db.model;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 实体缓存区域配置
+ * <p>使用数值ID的实体按类型分区缓存，未标注或取值不大于0时使用全局的实体缓存容量与存活时间
+ * 
+ * @author zhujuan
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface CacheRegion {
+    /**
+     * 区域容量
+     */
+    int capacity() default -1;
+
+    /**
+     * 实体存活时间(毫秒)
+     */
+    long timeToLive() default -1L;
+}
@@ -0,0 +1,21 @@
+package org.chinasb.common.db.model;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记实体启用脏字段跟踪
+ * <p>实体加载或写入数据库后保存一份属性快照，批量更新时与快照比较，
+ * 未修改的实体不再写入，已修改的实体只更新变化的列；
+ * 只对可以JDBC批量更新的实体(单表、无版本、无二级缓存、无集合与级联)生效
+ *
+ * @author zhujuan
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface DirtyTracking {
+}
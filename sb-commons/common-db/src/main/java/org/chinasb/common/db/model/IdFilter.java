@@ -0,0 +1,30 @@
+package org.chinasb.common.db.model;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记实体启用ID布隆过滤器
+ * <p>启动时读取实体表的全部ID建立过滤器，通过CommonDao保存的实体加入过滤器；
+ * 过滤器判定不存在的ID直接返回null，不再查询数据库。
+ * 只对数值ID的实体生效，绕过CommonDao写入数据库的实体在重启前不可见
+ * 
+ * @author zhujuan
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface IdFilter {
+    /**
+     * 预期的ID数量，启动时的实际数量的两倍更大时以两倍为准
+     */
+    int expectedInsertions() default 1000000;
+
+    /**
+     * 预期的误判率
+     */
+    double fpp() default 0.01;
+}
@@ -1,17 +1,24 @@
 package org.chinasb.common.socket;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelId;
+import io.netty.channel.EventLoop;
+import io.netty.util.ReferenceCountUtil;
 
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.chinasb.common.socket.codec.ResponseEncoder;
 import org.chinasb.common.socket.message.Response;
@@ -381,18 +388,67 @@ public class SessionManager {
         if ((playerIdList == null) || (playerIdList.isEmpty())) {
             return;
         }
-        byte[] bytes = encoder.encodeResponse(response);
-        if (bytes == null) {
-            return;
-        }
+        // 按EventLoop分组，每个EventLoop只提交一次写任务
+        Map<EventLoop, List<Channel>> sessionGroups =
+                new IdentityHashMap<EventLoop, List<Channel>>();
         for (Iterator<Long> it = playerIdList.iterator(); it.hasNext();) {
             long playerId = ((Long) it.next()).longValue();
             Channel session = getSession(playerId);
             if (session != null) {
-                ByteBuf byteBuf = encoder.transformByteArray(bytes);
-                if (byteBuf != null) {
-                    write(session, byteBuf);
+                List<Channel> sessions = sessionGroups.get(session.eventLoop());
+                if (sessions == null) {
+                    sessions = new ArrayList<Channel>();
+                    sessionGroups.put(session.eventLoop(), sessions);
+                }
+                sessions.add(session);
+            }
+        }
+        if (sessionGroups.isEmpty()) {
+            return;
+        }
+        // 只编码一次，各连接共享同一个缓冲区
+        ByteBuf byteBuf = encoder.encodeFrame(response, ByteBufAllocator.DEFAULT);
+        if (byteBuf == null) {
+            return;
+        }
+        try {
+            for (Entry<EventLoop, List<Channel>> entry : sessionGroups.entrySet()) {
+                ByteBuf buffer = byteBuf.retain();
+                try {
+                    entry.getKey().execute(new BroadcastTask(entry.getValue(), buffer));
+                } catch (RejectedExecutionException ex) {
+                    buffer.release();
+                    LOGGER.error("广播消息提交失败: {}", ex.getMessage());
+                }
+            }
+        } finally {
+            byteBuf.release();
+        }
+    }
+
+    /**
+     * 同一EventLoop上的广播写任务
+     * 
+     * @author zhujuan
+     *
+     */
+    private class BroadcastTask implements Runnable {
+        private final List<Channel> sessions;
+        private final ByteBuf buffer;
+
+        BroadcastTask(List<Channel> sessions, ByteBuf buffer) {
+            this.sessions = sessions;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (Channel session : sessions) {
+                    write(session, buffer.retainedDuplicate());
                 }
+            } finally {
+                buffer.release();
             }
         }
     }
@@ -419,13 +475,14 @@ public class SessionManager {
     }
 
     /**
-     * 发送消息
+     * 发送消息，未能发送的缓冲区将被释放
      * 
      * @param session
      * @param buffer
      */
     public void write(Channel session, ByteBuf buffer) {
         if (session == null) {
+            ReferenceCountUtil.release(buffer);
             return;
         }
         Long playerId = getPlayerId(session);
@@ -437,6 +494,7 @@ public class SessionManager {
                 session.writeAndFlush(buffer);
             }
         } else {
+            ReferenceCountUtil.release(buffer);
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug(String.format("写数据 给玩家[playerId: %d], 因Session未连接, 从在线列表删除",
                         new Object[] {playerId}));
@@ -0,0 +1,51 @@
+package org.chinasb.common.socket.codec;
+
+/**
+ * 编解码器子类覆盖检查
+ * <p>零拷贝路径不经过字节数组方法，子类只覆盖了字节数组方法时，零拷贝会绕过子类的实现
+ *
+ * @author zhujuan
+ */
+final class CodecOverrides {
+
+    private CodecOverrides() {}
+
+    /**
+     * 子类是否覆盖了基类的方法
+     *
+     * @param clazz 子类
+     * @param base 基类
+     * @param name 方法名
+     * @param parameterTypes 参数类型
+     * @return
+     */
+    static boolean isOverridden(Class<?> clazz, Class<?> base, String name,
+            Class<?>... parameterTypes) {
+        for (Class<?> c = clazz; c != null && c != base; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(name, parameterTypes);
+                return true;
+            } catch (NoSuchMethodException e) {
+                continue;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 子类是否覆盖了字节数组方法而未覆盖对应的零拷贝方法
+     *
+     * @param clazz 子类
+     * @param base 基类
+     * @param name 字节数组方法名
+     * @param parameterTypes 字节数组方法参数类型
+     * @param zeroCopyName 零拷贝方法名
+     * @param zeroCopyParameterTypes 零拷贝方法参数类型
+     * @return
+     */
+    static boolean isBypassed(Class<?> clazz, Class<?> base, String name,
+            Class<?>[] parameterTypes, String zeroCopyName, Class<?>[] zeroCopyParameterTypes) {
+        return isOverridden(clazz, base, name, parameterTypes)
+                && !isOverridden(clazz, base, zeroCopyName, zeroCopyParameterTypes);
+    }
+}
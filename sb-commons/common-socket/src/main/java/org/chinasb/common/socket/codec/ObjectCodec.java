@@ -3,8 +3,10 @@ package org.chinasb.common.socket.codec;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -15,6 +17,9 @@ import com.fasterxml.jackson.databind.JsonNode;
 import flex.messaging.io.SerializationContext;
 import flex.messaging.io.amf.Amf3Input;
 import flex.messaging.io.amf.Amf3Output;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 
 /**
  * 对象编解码
@@ -61,6 +66,34 @@ public class ObjectCodec {
         return obj;
     }
 
+    /**
+     * ByteBuf -> ASObject
+     * 
+     * @param buffer
+     * @return
+     */
+    public static Object byteBuf2ASObject(ByteBuf buffer) {
+        if ((buffer == null) || (!buffer.isReadable())) {
+            return null;
+        }
+        Amf3Input amfIn = new Amf3Input(context);
+        amfIn.setInputStream(new ByteBufInputStream(buffer));
+        Object obj = null;
+        try {
+            obj = amfIn.readObject();
+        } catch (Exception e) {
+            LOGGER.error("ByteBuf2ASObject Error: " + e.getMessage());
+        } finally {
+            try {
+                amfIn.close();
+            } catch (Exception e) {
+                LOGGER.error("Amf3Input.close() error: " + e.getMessage());
+            }
+            amfIn = null;
+        }
+        return obj;
+    }
+
     /**
      * ASObject -> ByteArray
      * 
@@ -98,6 +131,36 @@ public class ObjectCodec {
         return bytes;
     }
 
+    /**
+     * ASObject -> ByteBuf
+     * 
+     * @param obj
+     * @param out
+     * @return
+     */
+    public static boolean asObject2ByteBuf(Object obj, ByteBuf out) {
+        if (obj == null) {
+            return false;
+        }
+        Amf3Output amfOut = new Amf3Output(context);
+        amfOut.setOutputStream(new ByteBufOutputStream(out));
+        try {
+            amfOut.writeObject(obj);
+            amfOut.flush();
+            return true;
+        } catch (Exception ex) {
+            LOGGER.error("Amf3Output.writeObject(obj) error: " + ex.getMessage());
+        } finally {
+            try {
+                amfOut.close();
+            } catch (Exception ex) {
+                LOGGER.error("Amf3Output.close() error: " + ex.getMessage());
+            }
+            amfOut = null;
+        }
+        return false;
+    }
+
     /**
      * Object -> ByteArray
      * 
@@ -118,6 +181,28 @@ public class ObjectCodec {
         return null;
     }
 
+    /**
+     * Object -> ByteBuf
+     * 
+     * @param obj
+     * @param out
+     * @return
+     */
+    public static boolean object2ByteBuf(Object obj, ByteBuf out) {
+        if (obj == null) {
+            return false;
+        }
+        try {
+            ObjectOutputStream oos = new ObjectOutputStream(new ByteBufOutputStream(out));
+            oos.writeObject(obj);
+            oos.flush();
+            return true;
+        } catch (IOException ex) {
+            LOGGER.error("failed to serialize obj", ex);
+        }
+        return false;
+    }
+
     /**
      * ByteArray -> Object
      * 
@@ -150,6 +235,33 @@ public class ObjectCodec {
         }
     }
 
+    /**
+     * ByteBuf -> Object
+     * 
+     * @param buffer
+     * @return
+     */
+    public static Object byteBuf2Object(ByteBuf buffer) {
+        if ((buffer == null) || (!buffer.isReadable())) {
+            return null;
+        }
+        ObjectInputStream ois = null;
+        try {
+            ois = new ObjectInputStream(new ByteBufInputStream(buffer));
+            return ois.readObject();
+        } catch (Exception ex) {
+            LOGGER.error("failed to deserialize obj", ex);
+            return null;
+        } finally {
+            try {
+                if (ois != null) {
+                    ois.close();
+                }
+            } catch (Exception e) {
+            }
+        }
+    }
+
     /**
      * ByteArray -> JsonNode
      * 
@@ -168,6 +280,25 @@ public class ObjectCodec {
         }
     }
 
+    /**
+     * ByteBuf -> JsonNode
+     * 
+     * @param buffer
+     * @return
+     */
+    public static Object byteBuf2JsonNode(ByteBuf buffer) {
+        if ((buffer == null) || (!buffer.isReadable())) {
+            return null;
+        }
+        try {
+            return JSONUtils.getObjectMapper().readValue(
+                    (InputStream) new ByteBufInputStream(buffer), JsonNode.class);
+        } catch (Exception e) {
+            LOGGER.error("byteBuf2JsonNode Error: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * JsonObject -> ByteArray
      * 
@@ -187,4 +318,24 @@ public class ObjectCodec {
         }
         return bytes;
     }
+
+    /**
+     * JsonObject -> ByteBuf
+     * 
+     * @param obj
+     * @param out
+     * @return
+     */
+    public static boolean jsonObject2ByteBuf(Object obj, ByteBuf out) {
+        if (obj == null) {
+            return false;
+        }
+        try {
+            JSONUtils.getWriter().writeValue((OutputStream) new ByteBufOutputStream(out), obj);
+            return true;
+        } catch (Exception ex) {
+            LOGGER.error("jsonObject2ByteBuf error: " + ex.getMessage());
+        }
+        return false;
+    }
 }
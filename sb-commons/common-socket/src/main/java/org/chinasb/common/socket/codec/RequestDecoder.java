@@ -7,9 +7,11 @@ import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.List;
 
+import org.aeonbits.owner.ConfigCache;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.chinasb.common.socket.SessionManager;
+import org.chinasb.common.socket.config.ServerConfig;
 import org.chinasb.common.socket.firewall.ClientType;
 import org.chinasb.common.socket.firewall.Firewall;
 import org.chinasb.common.socket.message.Request;
@@ -84,6 +86,40 @@ public class RequestDecoder extends ByteToMessageDecoder {
     private Firewall firewall;
     @Autowired
     private SessionManager sessionManager;
+    /**
+     * 是否启用零拷贝解码，子类只覆盖了字节数组的解码方法时不启用
+     */
+    private boolean zeroCopyDecode = ConfigCache.getOrCreate(ServerConfig.class).zeroCopyDecode()
+            && !overridesByteArrayDecoding();
+
+    /**
+     * 设置是否启用零拷贝解码
+     * 
+     * @param zeroCopyDecode
+     */
+    public void setZeroCopyDecode(boolean zeroCopyDecode) {
+        this.zeroCopyDecode = zeroCopyDecode;
+    }
+
+    /**
+     * 子类是否覆盖了字节数组的解码方法而未覆盖对应的ByteBuf方法，零拷贝解码会绕过这类子类的实现
+     * 
+     * @return
+     */
+    private boolean overridesByteArrayDecoding() {
+        Class<?> clazz = getClass();
+        boolean overridden = CodecOverrides.isBypassed(clazz, RequestDecoder.class,
+                "transferObject", new Class<?>[] {int.class, int.class, int.class, byte[].class},
+                "transferObject", new Class<?>[] {int.class, int.class, int.class, ByteBuf.class})
+                || CodecOverrides.isBypassed(clazz, RequestDecoder.class, "decodeBuffer",
+                        new Class<?>[] {Channel.class, byte[].class}, "decodeBuffer",
+                        new Class<?>[] {Channel.class, ByteBuf.class});
+        if (overridden) {
+            LOGGER.warn(String.format("%s 覆盖了字节数组解码方法, 不启用零拷贝解码",
+                    new Object[] {clazz.getName()}));
+        }
+        return overridden;
+    }
 
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
@@ -97,12 +133,8 @@ public class RequestDecoder extends ByteToMessageDecoder {
                 return;
             }
             
-            // 读取数据
-            byte[] buffer = new byte[codecContext.getBytesNeeded()];
-            in.readBytes(buffer);
-            
-            // 解码
-            Request reqest = decodeBuffer(session, buffer);
+            // 读取数据并解码
+            Request reqest = decodeFrame(session, in, codecContext.getBytesNeeded());
             if (reqest != null) {
                 out.add(reqest);
             }
@@ -184,14 +216,29 @@ public class RequestDecoder extends ByteToMessageDecoder {
         }
         
         // 读取数据
-        byte[] buffer = new byte[len];
-        in.readBytes(buffer);
-        Request request = decodeBuffer(session, buffer);
+        Request request = decodeFrame(session, in, len);
         if (request != null) {
             out.add(request);
         }
     }
 
+    /**
+     * 读取并解码一个完整的数据包
+     * 
+     * @param session
+     * @param in
+     * @param len 包体长度
+     * @return
+     */
+    private Request decodeFrame(Channel session, ByteBuf in, int len) {
+        if (zeroCopyDecode) {
+            return decodeBuffer(session, in.readSlice(len));
+        }
+        byte[] buffer = new byte[len];
+        in.readBytes(buffer);
+        return decodeBuffer(session, buffer);
+    }
+
     /**
      * 解码数据包
      * 
@@ -225,20 +272,7 @@ public class RequestDecoder extends ByteToMessageDecoder {
             int messageType = dataInputStream.readByte();
             int calcAuthCode = (int) HashUtils.fnv32(authData, 0, authData.length);
             if (authCode != calcAuthCode) {
-                LOGGER.error(String
-                        .format("协议解析FVN Hash不匹配: [sn: %d, module: %d, cmd: %d, authCode: %d, calcAuthCode:%d]",
-                                new Object[] {Integer.valueOf(sn), Integer.valueOf(module),
-                                        Integer.valueOf(cmd), Integer.valueOf(authCode),
-                                        Integer.valueOf(calcAuthCode)}));
-                ChannelFuture future =
-                        session.writeAndFlush(Response.valueOf(sn, module, cmd, messageType,
-                                ResponseCode.RESPONSE_CODE_AUTH_CODE_ERROR));
-                if ((firewall.getClientType(session) != ClientType.MIS)
-                        && (firewall.blockedByAuthCodeErrors(session, 1))) {
-                    String ip = sessionManager.getRemoteIp(session);
-                    LOGGER.error(String.format("In blacklist: [ip: %s]", new Object[] {ip}));
-                    future.addListener(ChannelFutureListener.CLOSE);
-                }
+                authCodeError(session, sn, module, cmd, messageType, authCode, calcAuthCode);
                 return null;
             }
             
@@ -248,13 +282,7 @@ public class RequestDecoder extends ByteToMessageDecoder {
                 dataInputStream.read(byteArray);
                 Object value = transferObject(module, cmd, messageType, byteArray);
                 if (value == null) {
-                    LOGGER.error(String.format(
-                            "解析协议错误: [sn: %d, module: %d, cmd: %d]",
-                            new Object[] {Integer.valueOf(sn), Integer.valueOf(module),
-                                    Integer.valueOf(cmd)}));
-                    session.writeAndFlush(
-                            Response.valueOf(sn, module, cmd, messageType,
-                                    ResponseCode.RESPONSE_CODE_RESOLVE_ERROR));
+                    resolveError(session, sn, module, cmd, messageType);
                     return null;
                 }
                 request.setValue(value);
@@ -290,6 +318,129 @@ public class RequestDecoder extends ByteToMessageDecoder {
         return null;
     }
 
+    /**
+     * 解码数据包（零拷贝）
+     * <p>直接在ByteBuf上读取包头并计算校验码，消息内容以切片形式交给编解码器，不产生中间字节数组
+     * 
+     * @param session
+     * @param buffer 包体数据，仅在本次调用期间有效
+     * @return
+     */
+    public Request decodeBuffer(Channel session, ByteBuf buffer) {
+        if (buffer == null) {
+            LOGGER.error("buffer 为空异常");
+            return null;
+        }
+        
+        int bufferSize = buffer.readableBytes();
+        if (bufferSize < HEADER_LEN) {
+            LOGGER.error(String.format("协议解析错误, 数据长度小于包头长度 [bufferSize: %d, HEADER_LEN: %d]",
+                    new Object[] {Integer.valueOf(bufferSize), Integer.valueOf(HEADER_LEN)}));
+            return null;
+        }
+        
+        try {
+            int calcAuthCode = (int) fnv32(buffer, buffer.readerIndex() + IGNORE_AUTH_CODE_BYTES,
+                    bufferSize - IGNORE_AUTH_CODE_BYTES);
+            int authCode = buffer.readInt();
+            int sn = buffer.readInt();
+            int module = buffer.readShort();
+            int cmd = buffer.readShort();
+            int messageType = buffer.readByte();
+            if (authCode != calcAuthCode) {
+                authCodeError(session, sn, module, cmd, messageType, authCode, calcAuthCode);
+                return null;
+            }
+            
+            Request request = Request.valueOf(sn, module, cmd, messageType);
+            if (buffer.isReadable()) {
+                Object value = transferObject(module, cmd, messageType, buffer);
+                if (value == null) {
+                    resolveError(session, sn, module, cmd, messageType);
+                    return null;
+                }
+                request.setValue(value);
+            }
+            
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(request);
+            }
+            
+            return request;
+        } catch (Exception ex) {
+            LOGGER.error("解码异常: ", ex);
+        }
+        return null;
+    }
+
+    /**
+     * 校验码不匹配处理
+     * 
+     * @param session
+     * @param sn 流水号
+     * @param module 功能模块
+     * @param cmd 模块指令
+     * @param messageType 消息类型
+     * @param authCode 校验码
+     * @param calcAuthCode 计算的校验码
+     */
+    private void authCodeError(Channel session, int sn, int module, int cmd, int messageType,
+            int authCode, int calcAuthCode) {
+        LOGGER.error(String
+                .format("协议解析FVN Hash不匹配: [sn: %d, module: %d, cmd: %d, authCode: %d, calcAuthCode:%d]",
+                        new Object[] {Integer.valueOf(sn), Integer.valueOf(module),
+                                Integer.valueOf(cmd), Integer.valueOf(authCode),
+                                Integer.valueOf(calcAuthCode)}));
+        ChannelFuture future =
+                session.writeAndFlush(Response.valueOf(sn, module, cmd, messageType,
+                        ResponseCode.RESPONSE_CODE_AUTH_CODE_ERROR));
+        if ((firewall.getClientType(session) != ClientType.MIS)
+                && (firewall.blockedByAuthCodeErrors(session, 1))) {
+            String ip = sessionManager.getRemoteIp(session);
+            LOGGER.error(String.format("In blacklist: [ip: %s]", new Object[] {ip}));
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    /**
+     * 消息内容解析错误处理
+     * 
+     * @param session
+     * @param sn 流水号
+     * @param module 功能模块
+     * @param cmd 模块指令
+     * @param messageType 消息类型
+     */
+    private void resolveError(Channel session, int sn, int module, int cmd, int messageType) {
+        LOGGER.error(String.format(
+                "解析协议错误: [sn: %d, module: %d, cmd: %d]",
+                new Object[] {Integer.valueOf(sn), Integer.valueOf(module),
+                        Integer.valueOf(cmd)}));
+        session.writeAndFlush(
+                Response.valueOf(sn, module, cmd, messageType,
+                        ResponseCode.RESPONSE_CODE_RESOLVE_ERROR));
+    }
+
+    /**
+     * 在ByteBuf上计算FNV校验码，与{@link HashUtils#fnv32(byte[], int, int)}结果一致
+     * 
+     * @param buffer
+     * @param offset
+     * @param len
+     * @return
+     */
+    private static long fnv32(ByteBuf buffer, int offset, int len) {
+        if (buffer.hasArray()) {
+            return HashUtils.fnv32(buffer.array(), buffer.arrayOffset() + offset, len);
+        }
+        long seed = HashUtils.FNV1_32_INIT;
+        for (int i = offset; i < offset + len; i++) {
+            seed += (seed << 1) + (seed << 4) + (seed << 7) + (seed << 8) + (seed << 24);
+            seed ^= buffer.getByte(i);
+        }
+        return (seed & 0x00000000ffffffffL);
+    }
+
     /**
      * 字节数组转换成消息对象
      * 
@@ -311,4 +462,26 @@ public class RequestDecoder extends ByteToMessageDecoder {
         }
         return null;
     }
+
+    /**
+     * ByteBuf转换成消息对象（零拷贝解码模式）
+     * 
+     * @param module 功能模块
+     * @param cmd 模块指令
+     * @param messageType 消息类型
+     * @param buffer 消息数据
+     * @return
+     */
+    protected Object transferObject(int module, int cmd, int messageType, ByteBuf buffer) {
+        if (messageType == MessageType.AMF3.ordinal()) {
+            return ObjectCodec.byteBuf2ASObject(buffer);
+        }
+        if (messageType == MessageType.JAVA.ordinal()) {
+            return ObjectCodec.byteBuf2Object(buffer);
+        }
+        if (messageType == MessageType.JSON.ordinal()) {
+            return ObjectCodec.byteBuf2JsonNode(buffer);
+        }
+        return null;
+    }
 }
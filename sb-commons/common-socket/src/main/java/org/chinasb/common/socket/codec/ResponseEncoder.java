@@ -4,14 +4,18 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
+import org.aeonbits.owner.ConfigCache;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.chinasb.common.socket.config.ServerConfig;
 import org.chinasb.common.socket.message.Response;
 import org.chinasb.common.socket.type.ResponseCode;
 import org.springframework.stereotype.Component;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 
@@ -21,10 +25,58 @@ import io.netty.handler.codec.MessageToByteEncoder;
  * @author zhujuan
  *
  */
+@Sharable
 @Component
 public class ResponseEncoder extends MessageToByteEncoder<Object> {
 
     private static final Log LOGGER = LogFactory.getLog(RequestDecoder.class);
+    /**
+     * 是否启用零拷贝编码，子类只覆盖了字节数组的编码方法时不启用
+     */
+    private boolean zeroCopyEncode = ConfigCache.getOrCreate(ServerConfig.class).zeroCopyEncode()
+            && !overridesByteArrayEncoding();
+
+    /**
+     * 设置是否启用零拷贝编码
+     * 
+     * @param zeroCopyEncode
+     */
+    public void setZeroCopyEncode(boolean zeroCopyEncode) {
+        this.zeroCopyEncode = zeroCopyEncode;
+    }
+
+    /**
+     * 子类是否覆盖了字节数组的编码方法而未覆盖对应的ByteBuf方法，零拷贝编码会绕过这类子类的实现
+     * 
+     * @return
+     */
+    private boolean overridesByteArrayEncoding() {
+        Class<?> clazz = getClass();
+        Class<?>[] encodeFrame = new Class<?>[] {Response.class, ByteBuf.class};
+        boolean overridden = CodecOverrides.isBypassed(clazz, ResponseEncoder.class,
+                "transferByteArray", new Class<?>[] {int.class, Object.class},
+                "transferByteBuf", new Class<?>[] {int.class, Object.class, ByteBuf.class})
+                || CodecOverrides.isBypassed(clazz, ResponseEncoder.class, "encodeResponse",
+                        new Class<?>[] {Object.class}, "encodeResponse", encodeFrame)
+                || CodecOverrides.isBypassed(clazz, ResponseEncoder.class, "transform",
+                        new Class<?>[] {Object.class}, "encodeResponse", encodeFrame)
+                || CodecOverrides.isBypassed(clazz, ResponseEncoder.class, "transformByteArray",
+                        new Class<?>[] {byte[].class}, "encodeResponse", encodeFrame);
+        if (overridden) {
+            LOGGER.warn(String.format("%s 覆盖了字节数组编码方法, 不启用零拷贝编码",
+                    new Object[] {clazz.getName()}));
+        }
+        return overridden;
+    }
+
+    @Override
+    public boolean acceptOutboundMessage(Object message) throws Exception {
+        // 零拷贝模式下已经成帧的ByteBuf直接透传，广播共享的缓冲区不再逐个复制
+        if (zeroCopyEncode && (message instanceof ByteBuf)) {
+            return false;
+        }
+        return super.acceptOutboundMessage(message);
+    }
 
     @Override
     protected void encode(ChannelHandlerContext ctx, Object message, ByteBuf out) throws Exception {
@@ -37,6 +89,8 @@ public class ResponseEncoder extends MessageToByteEncoder<Object> {
         } else if (message instanceof byte[]) {
             byte[] bytes = (byte[]) message;
             out.writeBytes(bytes);
+        } else if (zeroCopyEncode && (message instanceof Response)) {
+            encodeResponse((Response) message, out);
         } else {
             ByteBuf buf = transform(message);
             if (buf != null) {
@@ -45,6 +99,65 @@ public class ResponseEncoder extends MessageToByteEncoder<Object> {
         }
     }
 
+    /**
+     * 消息对象直接编码到输出缓冲区
+     * <p>依次写入包头、消息头和消息内容，包体长度在写完后回填，不产生中间字节数组
+     * 
+     * @param response 消息对象
+     * @param out 输出缓冲区
+     */
+    public void encodeResponse(Response response, ByteBuf out) {
+        response.setTime(System.currentTimeMillis());
+        int frameIndex = out.writerIndex();
+        try {
+            int messageType = response.getMessageType();
+            out.writeInt(RequestDecoder.PACKAGE_HEADER_ID);
+            out.writeInt(0);
+            int bodyIndex = out.writerIndex();
+            out.writeInt(response.getSn());
+            out.writeShort(response.getModule());
+            out.writeShort(response.getCmd());
+            out.writeByte(messageType);
+            out.writeLong(response.getTime());
+            int statusIndex = out.writerIndex();
+            out.writeInt(response.getStatus());
+
+            Object value = response.getValue();
+            if (value != null) {
+                int valueIndex = out.writerIndex();
+                if (!transferByteBuf(messageType, value, out)) {
+                    out.writerIndex(valueIndex);
+                    response.setStatus(ResponseCode.RESPONSE_CODE_ERROR);
+                    out.setInt(statusIndex, response.getStatus());
+                }
+            }
+            out.setInt(bodyIndex - 4, out.writerIndex() - bodyIndex);
+        } catch (Exception ex) {
+            out.writerIndex(frameIndex);
+            LOGGER.error("ERROR", ex);
+        }
+    }
+
+    /**
+     * 消息编码成完整的数据包，用于一次编码多次发送
+     * 
+     * @param response 消息对象
+     * @param alloc 缓冲区分配器
+     * @return
+     */
+    public ByteBuf encodeFrame(Response response, ByteBufAllocator alloc) {
+        if (!zeroCopyEncode) {
+            return transform(response);
+        }
+        ByteBuf buf = alloc.ioBuffer();
+        encodeResponse(response, buf);
+        if (!buf.isReadable()) {
+            buf.release();
+            return null;
+        }
+        return buf;
+    }
+
     /**
      * 消息编码
      * 
@@ -131,6 +244,27 @@ public class ResponseEncoder extends MessageToByteEncoder<Object> {
         return null;
     }
 
+    /**
+     * 转换消息数据并写入输出缓冲区
+     * 
+     * @param messageType 消息类型
+     * @param obj 消息内容
+     * @param out 输出缓冲区
+     * @return 是否写入成功
+     */
+    protected boolean transferByteBuf(int messageType, Object obj, ByteBuf out) {
+        if (messageType == MessageType.AMF3.ordinal()) {
+            return ObjectCodec.asObject2ByteBuf(obj, out);
+        }
+        if (messageType == MessageType.JAVA.ordinal()) {
+            return ObjectCodec.object2ByteBuf(obj, out);
+        }
+        if (messageType == MessageType.JSON.ordinal()) {
+            return ObjectCodec.jsonObject2ByteBuf(obj, out);
+        }
+        return false;
+    }
+
     /**
      * 转换消息字节数据
      * 
@@ -75,6 +75,69 @@ public interface ServerConfig extends Config {
     @DefaultValue("1024")
     int serverMaxBacklog();
 
+    /**
+     * 是否启用零拷贝解码，直接在ByteBuf上读取包头、计算校验码并解析消息内容
+     */
+    @Key("server.codec.decode.zerocopy")
+    @DefaultValue("true")
+    boolean zeroCopyDecode();
+
+    /**
+     * 是否启用零拷贝编码，直接将消息写入输出缓冲区并回填包体长度
+     */
+    @Key("server.codec.encode.zerocopy")
+    @DefaultValue("true")
+    boolean zeroCopyEncode();
+
+    /**
+     * 接收连接的线程数量，启用SO_REUSEPORT时每个线程各自绑定一次端口
+     */
+    @Key("server.boss.threads")
+    @DefaultValue("1")
+    int bossThreads();
+
+    /**
+     * IO线程数量，0为Netty默认值(CPU核数 * 2)
+     */
+    @Key("server.worker.threads")
+    @DefaultValue("0")
+    int workerThreads();
+
+    /**
+     * 是否在Linux上使用epoll原生传输，不可用时回退到NIO
+     */
+    @Key("server.epoll.enabled")
+    @DefaultValue("true")
+    boolean epollEnabled();
+
+    /**
+     * 读空闲超时时间(秒)，0为不检测
+     */
+    @Key("server.reader.idle.seconds")
+    @DefaultValue("0")
+    int readerIdleSeconds();
+
+    /**
+     * 是否在Spring容器启动完成后自动启动Socket服务
+     */
+    @Key("server.bootstrap.autostart")
+    @DefaultValue("false")
+    boolean autoStart();
+
+    /**
+     * 指令处理线程数量，0为CPU核数
+     */
+    @Key("server.command.threads")
+    @DefaultValue("0")
+    int commandThreads();
+
+    /**
+     * 每个玩家指令队列每轮最多执行的指令数量，超出后让出线程
+     */
+    @Key("server.command.throughput")
+    @DefaultValue("64")
+    int commandThroughput();
+
     class MisRegexConverter implements Converter<Pattern> {
         public Pattern convert(Method targetMethod, String text) {
             String str = text.trim().replace(".", "[.]").replace("*", "[0-9]*");
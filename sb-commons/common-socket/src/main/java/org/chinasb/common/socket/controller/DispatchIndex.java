@@ -0,0 +1,27 @@
+package org.chinasb.common.socket.controller;
+
+/**
+ * 分发表下标计算
+ * <p>模块与指令在协议中均为short，按无符号值映射到[0, 65535]作为数组下标
+ * 
+ * @author zhujuan
+ *
+ */
+public final class DispatchIndex {
+
+    private DispatchIndex() {}
+
+    /**
+     * 注册时校验标识并计算下标
+     * 
+     * @param key 模块或指令标识
+     * @return
+     */
+    public static int indexOf(int key) {
+        if (key < Short.MIN_VALUE || key > Short.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Error: key [%d] out of short range",
+                    new Object[] {Integer.valueOf(key)}));
+        }
+        return key & 0xFFFF;
+    }
+}
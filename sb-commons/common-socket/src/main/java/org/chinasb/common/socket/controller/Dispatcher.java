@@ -2,7 +2,11 @@ package org.chinasb.common.socket.controller;
 
 import io.netty.channel.Channel;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.chinasb.common.socket.handler.CommandHandler;
+import org.chinasb.common.socket.handler.CommandResolver;
 import org.chinasb.common.socket.message.Request;
 
 /**
@@ -36,4 +40,13 @@ public interface Dispatcher {
      */
     void dispatch(Channel session, Request request);
 
+    /**
+     * 获取已注册的指令目录，按模块、指令顺序排列，未实现时返回空列表
+     * 
+     * @return
+     */
+    default List<CommandResolver> getCommandCatalog() {
+        return Collections.emptyList();
+    }
+
 }
@@ -2,18 +2,22 @@ package org.chinasb.common.socket.controller.impl;
 
 import io.netty.channel.Channel;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.chinasb.common.socket.controller.DispatchIndex;
 import org.chinasb.common.socket.controller.Dispatcher;
 import org.chinasb.common.socket.handler.CommandHandler;
+import org.chinasb.common.socket.handler.CommandResolver;
 import org.chinasb.common.socket.message.Request;
 import org.springframework.stereotype.Component;
 
 /**
  * 消息处理器
+ * <p>模块处理器按模块标识存放在数组中，注册/删除时复制出新数组整体替换，分发时无锁读取
  * 
  * @author zhujuan
  *
@@ -22,23 +26,37 @@ import org.springframework.stereotype.Component;
 public class DispatcherImpl implements Dispatcher {
 
     private static final Log LOGGER = LogFactory.getLog(DispatcherImpl.class);
-    private static final Map<Integer, CommandHandler> MODULE_HANDLERS =
-            new HashMap<Integer, CommandHandler>();
+    private static final CommandHandler[] EMPTY_HANDLERS = new CommandHandler[0];
+
+    /**
+     * 模块处理器分发表
+     */
+    private volatile CommandHandler[] moduleHandlers = EMPTY_HANDLERS;
 
     @Override
-    public void put(int moduleKey, CommandHandler handler) {
+    public synchronized void put(int moduleKey, CommandHandler handler) {
         if (handler != null) {
-            if (MODULE_HANDLERS.containsKey(Integer.valueOf(moduleKey))) {
+            int index = DispatchIndex.indexOf(moduleKey);
+            CommandHandler[] handlers = moduleHandlers;
+            if (index < handlers.length && handlers[index] != null) {
                 throw new RuntimeException(String.format("Error: duplicated key [%d]",
                         new Object[] {Integer.valueOf(moduleKey)}));
             }
-            MODULE_HANDLERS.put(Integer.valueOf(moduleKey), handler);
+            handlers = Arrays.copyOf(handlers, Math.max(handlers.length, index + 1));
+            handlers[index] = handler;
+            moduleHandlers = handlers;
         }
     }
 
     @Override
-    public void remove(int moduleKey) {
-        MODULE_HANDLERS.remove(moduleKey);
+    public synchronized void remove(int moduleKey) {
+        int index = DispatchIndex.indexOf(moduleKey);
+        CommandHandler[] handlers = moduleHandlers;
+        if (index < handlers.length && handlers[index] != null) {
+            handlers = handlers.clone();
+            handlers[index] = null;
+            moduleHandlers = handlers;
+        }
     }
 
     @Override
@@ -48,7 +66,9 @@ public class DispatcherImpl implements Dispatcher {
         }
         
         int module = request.getModule();
-        CommandHandler handler = MODULE_HANDLERS.get(Integer.valueOf(module));
+        CommandHandler[] handlers = moduleHandlers;
+        int index = module & 0xFFFF;
+        CommandHandler handler = index < handlers.length ? handlers[index] : null;
         if (handler == null) {
             LOGGER.error(String.format("No handler for module [%d]",
                     new Object[] {Integer.valueOf(module)}));
@@ -58,4 +78,15 @@ public class DispatcherImpl implements Dispatcher {
         handler.dispatch(session, request);
     }
 
+    @Override
+    public List<CommandResolver> getCommandCatalog() {
+        List<CommandResolver> catalog = new ArrayList<CommandResolver>();
+        for (CommandHandler handler : moduleHandlers) {
+            if (handler != null) {
+                catalog.addAll(handler.getCommandResolvers());
+            }
+        }
+        return catalog;
+    }
+
 }
@@ -2,14 +2,19 @@ package org.chinasb.common.socket.handler;
 
 import io.netty.channel.Channel;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
 import org.chinasb.common.socket.SessionManager;
+import org.chinasb.common.socket.controller.DispatchIndex;
 import org.chinasb.common.socket.controller.Dispatcher;
 import org.chinasb.common.socket.message.Request;
 import org.chinasb.common.socket.message.Response;
@@ -25,9 +30,18 @@ import org.springframework.beans.factory.annotation.Autowired;
  */
 public abstract class AbstractCommandHandler implements CommandHandler {
     protected final Logger logger = LoggerFactory.getLogger(getClass());
+    private static final CommandResolver[] EMPTY_RESOLVERS = new CommandResolver[0];
     /**
-     * 指令解析器集合
+     * 指令解析器分发表，按指令标识存放，注册时复制出新数组整体替换
      */
+    private volatile CommandResolver[] commandResolvers = EMPTY_RESOLVERS;
+    /**
+     * 指令解析器集合，与分发表同步登记；分发时分发表中没有的指令再从这里查找，
+     * 兼容直接向其中添加解析器的子类
+     * 
+     * @deprecated 使用{@link #putCommandResolvers(Map)}注册，{@link #getCommandResolvers()}获取
+     */
+    @Deprecated
     protected Map<Integer, CommandResolver> COMMAND_RESOLVER =
             new ConcurrentHashMap<Integer, CommandResolver>();
     @Autowired
@@ -36,6 +50,8 @@ public abstract class AbstractCommandHandler implements CommandHandler {
     protected SessionManager sessionManager;
     @Autowired
     protected CommandWorkerContainer commandWorkerContainer;
+    @Autowired
+    protected CommandExecutor commandExecutor;
 
     /**
      * 获取模块标识
@@ -46,17 +62,52 @@ public abstract class AbstractCommandHandler implements CommandHandler {
     protected void initialize() {
         Map<Integer, CommandResolver> resolvers = commandWorkerContainer.analyzeClass(getClass());
         if (resolvers.size() > 0) {
-            for (Entry<Integer, CommandResolver> entry : resolvers.entrySet()) {
-                if (entry.getValue() != null) {
-                    if (COMMAND_RESOLVER.containsKey(entry.getKey())) {
-                        logger.error(String.format("Error: duplicated key [%d]",
-                                new Object[] {entry.getKey()}));
-                    }
-                    COMMAND_RESOLVER.put(entry.getKey(), entry.getValue());
+            putCommandResolvers(resolvers);
+        }
+        dispatcher.put(getModule(), this);
+    }
+
+    /**
+     * 注册指令解析器
+     * 
+     * @param resolvers
+     */
+    protected synchronized void putCommandResolvers(Map<Integer, CommandResolver> resolvers) {
+        CommandResolver[] table = commandResolvers;
+        for (Entry<Integer, CommandResolver> entry : resolvers.entrySet()) {
+            if (entry.getValue() != null) {
+                int index = DispatchIndex.indexOf(entry.getKey().intValue());
+                if (index < table.length && table[index] != null) {
+                    logger.error(String.format("Error: duplicated key [%d]",
+                            new Object[] {entry.getKey()}));
+                }
+                if (table == commandResolvers || index >= table.length) {
+                    table = Arrays.copyOf(table, Math.max(table.length, index + 1));
                 }
+                table[index] = entry.getValue();
+                COMMAND_RESOLVER.put(entry.getKey(), entry.getValue());
             }
         }
-        dispatcher.put(getModule(), this);
+        commandResolvers = table;
+    }
+
+    @Override
+    public List<CommandResolver> getCommandResolvers() {
+        List<CommandResolver> resolvers = new ArrayList<CommandResolver>();
+        for (CommandResolver resolver : commandResolvers) {
+            if (resolver != null) {
+                resolvers.add(resolver);
+            }
+        }
+        if (COMMAND_RESOLVER.size() > resolvers.size()) {
+            for (CommandResolver resolver : new TreeMap<Integer, CommandResolver>(COMMAND_RESOLVER)
+                    .values()) {
+                if (!resolvers.contains(resolver)) {
+                    resolvers.add(resolver);
+                }
+            }
+        }
+        return resolvers;
     }
 
     @PreDestroy
@@ -65,27 +116,27 @@ public abstract class AbstractCommandHandler implements CommandHandler {
     }
 
     @Override
-    public void dispatch(Channel session, Request request) {
+    public void dispatch(final Channel session, final Request request) {
         if (request != null) {
             int sn = request.getSn();
             int module = request.getModule();
             int cmd = request.getCmd();
-            Response response = Response.valueOf(sn, module, cmd);
+            final Response response = Response.valueOf(sn, module, cmd);
             response.setMessageType(request.getMessageType());
-            CommandResolver commandResolver = COMMAND_RESOLVER.get(Integer.valueOf(cmd));
+            CommandResolver[] resolvers = commandResolvers;
+            int index = cmd & 0xFFFF;
+            CommandResolver resolver = index < resolvers.length ? resolvers[index] : null;
+            if (resolver == null && !COMMAND_RESOLVER.isEmpty()) {
+                resolver = COMMAND_RESOLVER.get(Integer.valueOf(cmd));
+            }
+            final CommandResolver commandResolver = resolver;
             if (commandResolver != null) {
-				if (logger.isDebugEnabled()) {
-					logger.debug(String.format("角色:[%d], module:[%d], cmd:[%d]",
-							new Object[] {sessionManager.getPlayerId(session),
-									Integer.valueOf(module), Integer.valueOf(cmd)}));
-				}
-				try {
-					commandResolver.execute(session, request, response);
-				} catch (Exception e) {
-					logger.error(String.format("角色:[%d], module:[%d], cmd:[%d], stack:[%s]",
-							new Object[] {sessionManager.getPlayerId(session),
-									Integer.valueOf(module), Integer.valueOf(cmd), e}));
-				}
+                commandExecutor.execute(commandResolver.getExecuteMode(), session, new Runnable() {
+                    @Override
+                    public void run() {
+                        execute(commandResolver, session, request, response);
+                    }
+                });
             } else {
                 if (logger.isDebugEnabled()) {
                     logger.error(String.format("No Invoker for module:[%d], cmd:[%d]",
@@ -98,4 +149,30 @@ public abstract class AbstractCommandHandler implements CommandHandler {
             }
         }
     }
+
+    /**
+     * 执行指令
+     * 
+     * @param commandResolver
+     * @param session
+     * @param request
+     * @param response
+     */
+    protected void execute(CommandResolver commandResolver, Channel session, Request request,
+            Response response) {
+        int module = request.getModule();
+        int cmd = request.getCmd();
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("角色:[%d], module:[%d], cmd:[%d]",
+                    new Object[] {sessionManager.getPlayerId(session), Integer.valueOf(module),
+                            Integer.valueOf(cmd)}));
+        }
+        try {
+            commandResolver.execute(session, request, response);
+        } catch (Exception e) {
+            logger.error(String.format("角色:[%d], module:[%d], cmd:[%d], stack:[%s]",
+                    new Object[] {sessionManager.getPlayerId(session), Integer.valueOf(module),
+                            Integer.valueOf(cmd), e}));
+        }
+    }
 }
@@ -0,0 +1,148 @@
+package org.chinasb.common.socket.handler;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.PreDestroy;
+
+import org.aeonbits.owner.ConfigCache;
+import org.chinasb.common.socket.SessionManager;
+import org.chinasb.common.socket.config.ServerConfig;
+import org.chinasb.common.socket.type.SessionType;
+import org.chinasb.common.threadpool.ordered.AbstractTask;
+import org.chinasb.common.threadpool.ordered.OrderedTaskQueue;
+import org.chinasb.common.threadpool.ordered.OrderedTaskQueueExecutor;
+import org.chinasb.common.threadpool.ordered.TaskQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+
+/**
+ * 指令执行器
+ * <p>根据{@link ExecuteMode}将指令从IO线程移交到业务线程池，
+ * 有序执行的指令按玩家ID进入线程池的按键队列，登录前按连接进入各自的{@link OrderedTaskQueue}；
+ * 登录后连接队列执行完之前，指令仍进入连接队列，保证登录前后的指令不会并发执行
+ *
+ * @author zhujuan
+ *
+ */
+@Component
+public class CommandExecutor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommandExecutor.class);
+
+    private final OrderedTaskQueueExecutor executor;
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    public CommandExecutor() {
+        ServerConfig serverConfig = ConfigCache.getOrCreate(ServerConfig.class);
+        int threads = serverConfig.commandThreads();
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        executor = new OrderedTaskQueueExecutor(threads, "指令处理器",
+                serverConfig.commandThroughput());
+    }
+
+    /**
+     * 执行指令
+     *
+     * @param mode 执行方式
+     * @param session 会话
+     * @param runnable 指令
+     */
+    public void execute(ExecuteMode mode, Channel session, final Runnable runnable) {
+        if (mode == null || mode == ExecuteMode.INLINE) {
+            runnable.run();
+            return;
+        }
+        try {
+            if (mode == ExecuteMode.SHARED) {
+                executor.execute(runnable);
+            } else {
+                long playerId = sessionManager.getPlayerId(session).longValue();
+                TaskQueue taskQueue =
+                        playerId > 0L ? getDrainingSessionQueue(session) : getSessionQueue(session);
+                AbstractTask task = new AbstractTask(taskQueue) {
+                    @Override
+                    public void run() {
+                        runnable.run();
+                    }
+                };
+                if (taskQueue == null) {
+                    executor.execute(playerId, task);
+                } else {
+                    taskQueue.enqueue(task);
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            LOGGER.error("指令处理器已关闭，丢弃会话:[{}] 的请求", session);
+        }
+    }
+
+    /**
+     * 获取会话对应的任务队列，已登录按玩家ID，未登录按连接
+     *
+     * @param session
+     * @return
+     */
+    public TaskQueue getTaskQueue(Channel session) {
+        long playerId = sessionManager.getPlayerId(session).longValue();
+        if (playerId > 0L) {
+            TaskQueue taskQueue = getDrainingSessionQueue(session);
+            return taskQueue != null ? taskQueue : executor.getTaskQueue(playerId);
+        }
+        return getSessionQueue(session);
+    }
+
+    /**
+     * 获取已登录会话尚未执行完的连接队列，执行完后从会话中移除，之后的指令进入玩家的按键队列
+     *
+     * @param session
+     * @return 连接队列已执行完或不存在时返回null
+     */
+    private TaskQueue getDrainingSessionQueue(Channel session) {
+        Attribute<TaskQueue> attribute = session.attr(SessionType.TASK_QUEUE_KEY);
+        TaskQueue taskQueue = attribute.get();
+        if (taskQueue == null) {
+            return null;
+        }
+        boolean idle = taskQueue instanceof OrderedTaskQueue
+                ? ((OrderedTaskQueue) taskQueue).isIdle() : taskQueue.size() == 0;
+        if (!idle) {
+            return taskQueue;
+        }
+        attribute.compareAndSet(taskQueue, null);
+        return null;
+    }
+
+    private TaskQueue getSessionQueue(Channel session) {
+        TaskQueue taskQueue = session.attr(SessionType.TASK_QUEUE_KEY).get();
+        if (taskQueue == null) {
+            TaskQueue newQueue = new OrderedTaskQueue(executor);
+            taskQueue = session.attr(SessionType.TASK_QUEUE_KEY).setIfAbsent(newQueue);
+            if (taskQueue == null) {
+                taskQueue = newQueue;
+            }
+        }
+        return taskQueue;
+    }
+
+    /**
+     * 获取业务线程池
+     *
+     * @return
+     */
+    public OrderedTaskQueueExecutor getExecutor() {
+        return executor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown(5000L);
+    }
+}
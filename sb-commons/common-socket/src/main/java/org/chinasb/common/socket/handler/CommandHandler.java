@@ -2,6 +2,9 @@ package org.chinasb.common.socket.handler;
 
 import io.netty.channel.Channel;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.chinasb.common.socket.message.Request;
 
 /**
@@ -18,4 +21,13 @@ public interface CommandHandler {
      * @param request
      */
     public void dispatch(Channel session, Request request);
+
+    /**
+     * 获取模块内已注册的指令解析器，按指令顺序排列，未实现时返回空列表
+     * 
+     * @return
+     */
+    public default List<CommandResolver> getCommandResolvers() {
+        return Collections.emptyList();
+    }
 }
@@ -0,0 +1,26 @@
+package org.chinasb.common.socket.handler;
+
+import io.netty.channel.Channel;
+
+import org.chinasb.common.socket.message.Request;
+import org.chinasb.common.socket.message.Response;
+
+/**
+ * 指令调用器接口，由{@link CommandInvokerFactory}为每个指令方法生成
+ *
+ * @author zhujuan
+ */
+public interface CommandInvoker {
+
+    /**
+     * 调用指令方法
+     *
+     * @param target
+     * @param session
+     * @param request
+     * @param response
+     * @throws Exception
+     */
+    public void invoke(Object target, Channel session, Request request, Response response)
+            throws Exception;
+}
@@ -0,0 +1,93 @@
+package org.chinasb.common.socket.handler;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.chinasb.common.socket.message.Request;
+import org.chinasb.common.socket.message.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.ClassUtils;
+
+import io.netty.channel.Channel;
+
+/**
+ * 指令调用器工厂
+ * <p>公开且对本类加载器可见的指令方法通过{@link LambdaMetafactory}生成直接调用的实现类，
+ * 其余(如热加载的类)退化为{@link MethodHandle}调用
+ *
+ * @author zhujuan
+ */
+public class CommandInvokerFactory {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommandInvokerFactory.class);
+    private static final MethodType INVOKE_TYPE = MethodType.methodType(void.class, Object.class,
+            Channel.class, Request.class, Response.class);
+
+    private CommandInvokerFactory() {}
+
+    /**
+     * 为指令方法生成调用器
+     *
+     * @param m 指令方法，参数为(Channel, Request, Response)
+     * @return
+     * @throws IllegalAccessException
+     */
+    public static CommandInvoker create(Method m) throws IllegalAccessException {
+        Class<?>[] parameterTypes = m.getParameterTypes();
+        if (Modifier.isStatic(m.getModifiers()) || parameterTypes.length != 3
+                || !parameterTypes[0].isAssignableFrom(Channel.class)
+                || !parameterTypes[1].isAssignableFrom(Request.class)
+                || !parameterTypes[2].isAssignableFrom(Response.class)) {
+            throw new IllegalArgumentException("Illegal command method signature: " + m);
+        }
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        if (!Modifier.isPublic(m.getModifiers())) {
+            m.setAccessible(true);
+        }
+        MethodHandle handle = lookup.unreflect(m);
+        Class<?> declaringClass = m.getDeclaringClass();
+        if (Modifier.isPublic(m.getModifiers())
+                && Modifier.isPublic(declaringClass.getModifiers())
+                && ClassUtils.isVisible(declaringClass,
+                        CommandInvokerFactory.class.getClassLoader())) {
+            try {
+                CallSite callSite = LambdaMetafactory.metafactory(lookup, "invoke",
+                        MethodType.methodType(CommandInvoker.class), INVOKE_TYPE, handle,
+                        INVOKE_TYPE.changeParameterType(0, declaringClass));
+                return (CommandInvoker) callSite.getTarget().invoke();
+            } catch (Throwable t) {
+                LOGGER.warn("LambdaMetafactory failed for [{}], fallback to MethodHandle: {}", m,
+                        t.toString());
+            }
+        }
+        return new MethodHandleInvoker(handle.asType(INVOKE_TYPE));
+    }
+
+    /**
+     * 基于{@link MethodHandle}的调用器
+     */
+    private static class MethodHandleInvoker implements CommandInvoker {
+        private final MethodHandle handle;
+
+        MethodHandleInvoker(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public void invoke(Object target, Channel session, Request request, Response response)
+                throws Exception {
+            try {
+                handle.invokeExact(target, session, request, response);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new RuntimeException(t);
+            }
+        }
+    }
+}
@@ -21,4 +21,40 @@ public interface CommandResolver {
      * @throws Exception 
      */
     public void execute(Channel session, Request request, Response response) throws Exception;
+
+    /**
+     * 获取模块标识，未实现时返回-1
+     * 
+     * @return
+     */
+    public default int getModule() {
+        return -1;
+    }
+
+    /**
+     * 获取指令标识，未实现时返回-1
+     * 
+     * @return
+     */
+    public default int getCmd() {
+        return -1;
+    }
+
+    /**
+     * 获取指令描述，未实现时返回null
+     * 
+     * @return
+     */
+    public default String getDescription() {
+        return null;
+    }
+
+    /**
+     * 获取指令执行方式，未实现时返回{@link ExecuteMode#ORDERED}，与{@code CommandMapping}的默认值一致
+     * 
+     * @return
+     */
+    public default ExecuteMode getExecuteMode() {
+        return ExecuteMode.ORDERED;
+    }
 }
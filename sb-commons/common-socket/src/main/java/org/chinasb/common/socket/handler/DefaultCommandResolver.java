@@ -1,6 +1,7 @@
 package org.chinasb.common.socket.handler;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.chinasb.common.socket.handler.Interceptor.Interceptor;
@@ -15,6 +16,7 @@ import io.netty.channel.Channel;
  * @author zhujuan
  */
 public class DefaultCommandResolver implements CommandResolver {
+	private static final Interceptor[] EMPTY_INTERCEPTORS = new Interceptor[0];
 
 	/**
 	 * 模块标识
@@ -29,9 +31,13 @@ public class DefaultCommandResolver implements CommandResolver {
 	 */
 	private String description;
 	/**
-	 * 实例方法
+	 * 执行方式
 	 */
-	private Method m;
+	private ExecuteMode executeMode;
+	/**
+	 * 指令调用器
+	 */
+	private CommandInvoker invoker;
 	/**
 	 * 实例对象
 	 */
@@ -48,68 +54,129 @@ public class DefaultCommandResolver implements CommandResolver {
 	 * 指令拦截器集合
 	 */
 	private List<Interceptor> methodInterceptors;
+	/**
+	 * 前置拦截器(全局 -> 模块 -> 指令)
+	 */
+	private final Interceptor[] beforeInterceptors;
+	/**
+	 * 后置拦截器(指令 -> 模块 -> 全局)
+	 */
+	private final Interceptor[] afterInterceptors;
 
+	/**
+	 * 以{@link ExecuteMode#ORDERED}方式执行，指令调用器由{@link CommandInvokerFactory}生成
+	 * 
+	 * @param module
+	 * @param cmd
+	 * @param description
+	 * @param m 指令方法，参数为(Channel, Request, Response)
+	 * @param target
+	 * @param globalInterceptors
+	 * @param classInterceptors
+	 * @param methodInterceptors
+	 */
 	public DefaultCommandResolver(int module, int cmd, String description, Method m, Object target,
 			List<Interceptor> globalInterceptors, List<Interceptor> classInterceptors,
 			List<Interceptor> methodInterceptors) {
+		this(module, cmd, description, ExecuteMode.ORDERED, createInvoker(m), target,
+				globalInterceptors, classInterceptors, methodInterceptors);
+	}
+
+	public DefaultCommandResolver(int module, int cmd, String description,
+			ExecuteMode executeMode, CommandInvoker invoker, Object target,
+			List<Interceptor> globalInterceptors, List<Interceptor> classInterceptors,
+			List<Interceptor> methodInterceptors) {
 		this.module = module;
 		this.cmd = cmd;
 		this.description = description;
-		this.m = m;
+		this.executeMode = executeMode;
+		this.invoker = invoker;
 		this.target = target;
 		this.globalInterceptors = globalInterceptors;
 		this.classInterceptors = classInterceptors;
 		this.methodInterceptors = methodInterceptors;
+		this.beforeInterceptors =
+				flatten(globalInterceptors, classInterceptors, methodInterceptors);
+		this.afterInterceptors =
+				flatten(methodInterceptors, classInterceptors, globalInterceptors);
 	}
 
-	@Override
-	public void execute(Channel session, Request request, Response response) throws Exception {
-		if (globalInterceptors != null) {
-			for (Interceptor interceptor : globalInterceptors) {
-				if (!interceptor.before(session, request, response))
-					return;
-			}
+	/**
+	 * 为指令方法生成调用器，方法不可访问时抛出IllegalArgumentException
+	 * 
+	 * @param m
+	 * @return
+	 */
+	private static CommandInvoker createInvoker(Method m) {
+		try {
+			return CommandInvokerFactory.create(m);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Can not access command method: " + m, e);
 		}
-		if (classInterceptors != null) {
-			for (Interceptor interceptor : classInterceptors) {
-				if (!interceptor.before(session, request, response))
-					return;
+	}
+
+	/**
+	 * 按顺序合并各级拦截器，跳过空的级别
+	 * 
+	 * @param stages
+	 * @return
+	 */
+	@SafeVarargs
+	private static Interceptor[] flatten(List<Interceptor>... stages) {
+		List<Interceptor> interceptors = new ArrayList<Interceptor>();
+		for (List<Interceptor> stage : stages) {
+			if (stage != null && !stage.isEmpty()) {
+				interceptors.addAll(stage);
 			}
 		}
-		if (methodInterceptors != null) {
-			for (Interceptor interceptor : methodInterceptors) {
-				if (!interceptor.before(session, request, response))
-					return;
-			}
+		if (interceptors.isEmpty()) {
+			return EMPTY_INTERCEPTORS;
 		}
+		return interceptors.toArray(new Interceptor[interceptors.size()]);
+	}
 
-		m.invoke(target, new Object[] {session, request, response});
-
-		if (methodInterceptors != null) {
-			for (Interceptor interceptor : methodInterceptors) {
-				if (!interceptor.after(session, request, response))
-					return;
-			}
-		}
-		if (classInterceptors != null) {
-			for (Interceptor interceptor : classInterceptors) {
-				if (!interceptor.after(session, request, response))
-					return;
-			}
+	@Override
+	public void execute(Channel session, Request request, Response response) throws Exception {
+		Interceptor[] interceptors = beforeInterceptors;
+		for (int i = 0; i < interceptors.length; i++) {
+			if (!interceptors[i].before(session, request, response))
+				return;
 		}
-		if (globalInterceptors != null) {
-			for (Interceptor interceptor : globalInterceptors) {
-				if (!interceptor.after(session, request, response))
-					return;
-			}
+
+		invoker.invoke(target, session, request, response);
+
+		interceptors = afterInterceptors;
+		for (int i = 0; i < interceptors.length; i++) {
+			if (!interceptors[i].after(session, request, response))
+				return;
 		}
 	}
 
+	@Override
+	public int getModule() {
+		return module;
+	}
+
+	@Override
+	public int getCmd() {
+		return cmd;
+	}
+
+	@Override
+	public String getDescription() {
+		return description;
+	}
+
+	@Override
+	public ExecuteMode getExecuteMode() {
+		return executeMode;
+	}
+
 	@Override
 	public String toString() {
 		return "DefaultCommandResolver [module=" + module + ", cmd=" + cmd + ", description="
-				+ description + ", globalInterceptors=" + globalInterceptors
-				+ ", classInterceptors=" + classInterceptors + ", methodInterceptors="
-				+ methodInterceptors + "]";
+				+ description + ", executeMode=" + executeMode + ", globalInterceptors="
+				+ globalInterceptors + ", classInterceptors=" + classInterceptors
+				+ ", methodInterceptors=" + methodInterceptors + "]";
 	}
 }
@@ -160,7 +160,8 @@ public class DefaultCommandWorkerContainer implements CommandWorkerContainer,
                         resolvers.put(
                                 commandMapping.cmd(),
                                 new DefaultCommandResolver(commandWorker.module(), commandMapping
-                                        .cmd(), commandMapping.description(), m, instance,
+                                        .cmd(), commandMapping.description(), commandMapping
+                                        .mode(), CommandInvokerFactory.create(m), instance,
                                         globalInterceptors, classInterceptorList,
                                         methodInterceptorList));
 
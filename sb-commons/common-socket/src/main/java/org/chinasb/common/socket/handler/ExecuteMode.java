@@ -0,0 +1,22 @@
+package org.chinasb.common.socket.handler;
+
+/**
+ * 指令执行方式
+ *
+ * @author zhujuan
+ *
+ */
+public enum ExecuteMode {
+    /**
+     * 在IO线程中直接执行，只适用于不阻塞的轻量指令
+     */
+    INLINE,
+    /**
+     * 按玩家(登录前按连接)有序执行，同一玩家的指令串行处理
+     */
+    ORDERED,
+    /**
+     * 在公共线程池中执行，不保证执行顺序
+     */
+    SHARED;
+}
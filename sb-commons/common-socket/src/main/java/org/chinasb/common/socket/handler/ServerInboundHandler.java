@@ -11,6 +11,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.timeout.IdleState;
@@ -22,6 +23,7 @@ import io.netty.handler.timeout.IdleStateEvent;
  * @author zhujuan
  *
  */
+@Sharable
 @Component
 public class ServerInboundHandler extends ChannelInboundHandlerAdapter {
 
@@ -5,6 +5,8 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+import org.chinasb.common.socket.handler.ExecuteMode;
+
 /**
  * 指令映射注解
  * 
@@ -27,4 +29,11 @@ public @interface CommandMapping {
      * @return
      */
     String description() default "";
+
+    /**
+     * 指令执行方式
+     * 
+     * @return
+     */
+    ExecuteMode mode() default ExecuteMode.ORDERED;
 }
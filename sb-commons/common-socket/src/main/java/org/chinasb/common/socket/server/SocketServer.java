@@ -0,0 +1,186 @@
+package org.chinasb.common.socket.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.aeonbits.owner.ConfigCache;
+import org.chinasb.common.socket.codec.RequestDecoder;
+import org.chinasb.common.socket.codec.ResponseEncoder;
+import org.chinasb.common.socket.config.ServerConfig;
+import org.chinasb.common.socket.firewall.ByteAttackFilter;
+import org.chinasb.common.socket.firewall.CmdAttackFilter;
+import org.chinasb.common.socket.handler.ServerInboundHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Socket服务
+ * <p>根据{@link ServerConfig}启动Netty服务，处理链为:
+ * ByteAttackFilter -> RequestDecoder -> CmdAttackFilter -> ServerInboundHandler / ResponseEncoder
+ * <p>Linux上优先使用epoll原生传输，多个接收线程时通过SO_REUSEPORT多次绑定同一端口，不可用时回退到NIO
+ * 
+ * @author zhujuan
+ * 
+ */
+@Component
+public class SocketServer implements ApplicationListener<ContextRefreshedEvent> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SocketServer.class);
+
+    private final ServerConfig serverConfig = ConfigCache.getOrCreate(ServerConfig.class);
+
+    @Autowired
+    private ByteAttackFilter byteAttackFilter;
+    @Autowired
+    private CmdAttackFilter cmdAttackFilter;
+    @Autowired
+    private ResponseEncoder responseEncoder;
+    @Autowired
+    private ServerInboundHandler serverInboundHandler;
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private final List<Channel> serverChannels = new ArrayList<Channel>();
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (serverConfig.autoStart() && event.getApplicationContext() == applicationContext) {
+            try {
+                start();
+            } catch (Exception e) {
+                LOGGER.error("Socket服务启动出错!", e);
+            }
+        }
+    }
+
+    /**
+     * 启动服务
+     * 
+     * @throws InterruptedException
+     */
+    public synchronized void start() throws InterruptedException {
+        if (!serverChannels.isEmpty()) {
+            return;
+        }
+        int port = serverConfig.socketPort();
+        int bossThreads = Math.max(1, serverConfig.bossThreads());
+        int workerThreads = Math.max(0, serverConfig.workerThreads());
+        boolean epoll = serverConfig.epollEnabled() && Epoll.isAvailable();
+        Class<? extends ServerChannel> channelClass;
+        if (epoll) {
+            bossGroup = new EpollEventLoopGroup(bossThreads, new DefaultThreadFactory("socket-boss"));
+            workerGroup =
+                    new EpollEventLoopGroup(workerThreads, new DefaultThreadFactory("socket-worker"));
+            channelClass = EpollServerSocketChannel.class;
+        } else {
+            bossGroup = new NioEventLoopGroup(bossThreads, new DefaultThreadFactory("socket-boss"));
+            workerGroup =
+                    new NioEventLoopGroup(workerThreads, new DefaultThreadFactory("socket-worker"));
+            channelClass = NioServerSocketChannel.class;
+        }
+
+        ServerBootstrap bootstrap = new ServerBootstrap();
+        bootstrap.group(bossGroup, workerGroup).channel(channelClass)
+                .option(ChannelOption.SO_BACKLOG, serverConfig.serverMaxBacklog())
+                .option(ChannelOption.SO_REUSEADDR, true)
+                .option(ChannelOption.SO_RCVBUF, serverConfig.receiveBufferSize())
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.TCP_NODELAY, serverConfig.tcpNodelay())
+                .childOption(ChannelOption.SO_RCVBUF, serverConfig.receiveBufferSize())
+                .childOption(ChannelOption.SO_SNDBUF, serverConfig.writeBufferSize())
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.RCVBUF_ALLOCATOR,
+                        new AdaptiveRecvByteBufAllocator(64, serverConfig.readBufferSize(), 65536))
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) throws Exception {
+                        initPipeline(ch.pipeline());
+                    }
+                });
+
+        // SO_REUSEPORT: 每个接收线程各自绑定一次端口，由内核分发新连接
+        int binds = 1;
+        if (epoll && bossThreads > 1) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            binds = bossThreads;
+        }
+        for (int i = 0; i < binds; i++) {
+            serverChannels.add(bootstrap.bind(port).sync().channel());
+        }
+        LOGGER.info("Socket服务启动完成 [port: {}, transport: {}, acceptors: {}]", new Object[] {
+                port, epoll ? "epoll" : "nio", binds});
+    }
+
+    /**
+     * 初始化连接处理链
+     * 
+     * @param pipeline
+     */
+    protected void initPipeline(ChannelPipeline pipeline) {
+        int readerIdleSeconds = serverConfig.readerIdleSeconds();
+        if (readerIdleSeconds > 0) {
+            pipeline.addLast("idleStateHandler", new IdleStateHandler(readerIdleSeconds, 0, 0));
+        }
+        pipeline.addLast("byteAttackFilter", byteAttackFilter);
+        pipeline.addLast("requestDecoder", newRequestDecoder());
+        pipeline.addLast("responseEncoder", responseEncoder);
+        pipeline.addLast("cmdAttackFilter", cmdAttackFilter);
+        pipeline.addLast("serverInboundHandler", serverInboundHandler);
+    }
+
+    /**
+     * 创建请求消息解码器，解码器带有连接状态，每个连接一个实例
+     * 
+     * @return
+     */
+    protected RequestDecoder newRequestDecoder() {
+        return applicationContext.getAutowireCapableBeanFactory().createBean(RequestDecoder.class);
+    }
+
+    /**
+     * 关闭服务
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        for (Channel channel : serverChannels) {
+            channel.close().awaitUninterruptibly();
+        }
+        serverChannels.clear();
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS).awaitUninterruptibly();
+            bossGroup = null;
+        }
+        if (workerGroup != null) {
+            workerGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS).awaitUninterruptibly();
+            workerGroup = null;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.chinasb.common.socket.codec.CodecContext;
 import org.chinasb.common.socket.context.ApplicationContext;
 import org.chinasb.common.socket.firewall.ClientType;
 import org.chinasb.common.socket.firewall.FloodRecord;
+import org.chinasb.common.threadpool.ordered.TaskQueue;
 
 /**
  * 会话存储相关数据类型
@@ -57,4 +58,9 @@ public interface SessionType {
     public static final AttributeKey<Long> LAST_CHAT_KEY = AttributeKey.valueOf("lastChat");
     
     public static final AttributeKey<Boolean> HANDSHAKE_COMPLETE = AttributeKey.valueOf("handshake_complete");
+    /**
+     * 连接有序任务队列(登录前使用)
+     */
+    public static final AttributeKey<TaskQueue> TASK_QUEUE_KEY = AttributeKey
+            .valueOf("taskQueue");
 }
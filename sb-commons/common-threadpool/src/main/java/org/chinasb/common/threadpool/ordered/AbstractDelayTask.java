@@ -1,5 +1,7 @@
 package org.chinasb.common.threadpool.ordered;
 
+import org.chinasb.common.threadpool.timer.Timeout;
+
 /**
  * 延时任务抽象
  * 
@@ -10,10 +12,33 @@ public abstract class AbstractDelayTask extends AbstractTask {
 	
 	protected long delayTime;
 	protected long execTime;
+	/**
+	 * 重复执行间隔(毫秒)，0为只执行一次
+	 */
+	protected int period;
+	/**
+	 * 当前定时句柄
+	 */
+	private volatile Timeout timeout;
+	private volatile boolean cancelled;
+	/**
+	 * 到期后投递到任务队列
+	 */
+	final Runnable expireAction = new Runnable() {
+		@Override
+		public void run() {
+			taskQueue.enqueue(AbstractDelayTask.this);
+		}
+	};
 
 	public AbstractDelayTask(TaskQueue taskQueue, int delayTime) {
+		this(taskQueue, delayTime, 0);
+	}
+
+	public AbstractDelayTask(TaskQueue taskQueue, int delayTime, int period) {
 		super(taskQueue);
 		this.delayTime = delayTime;
+		this.period = period;
 		this.execTime = System.currentTimeMillis() + delayTime;
 	}
 
@@ -24,10 +49,55 @@ public abstract class AbstractDelayTask extends AbstractTask {
 		}
 		return false;
 	}
+
+	/**
+	 * 获取执行时间
+	 * @return
+	 */
+	public long getExecTime() {
+		return execTime;
+	}
+
+	/**
+	 * 获取当前定时句柄，周期任务每次重新入队后更新
+	 * @return 未加入延时队列时返回null
+	 */
+	public Timeout getTimeout() {
+		return timeout;
+	}
+
+	void setTimeout(Timeout timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * 取消任务，周期任务不再重复执行
+	 * @return 是否在到期前取消
+	 */
+	public boolean cancel() {
+		cancelled = true;
+		Timeout t = timeout;
+		return t != null && t.cancel();
+	}
+
+	/**
+	 * 是否已取消
+	 * @return
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
 	
 	@Override
 	public void execute() {
+		if (cancelled) {
+			return;
+		}
 		this.execTime = System.currentTimeMillis() + delayTime;
 		super.execute();
+		if (period > 0 && !cancelled) {
+			this.execTime = System.currentTimeMillis() + period;
+			taskQueue.enDelayQueue(this);
+		}
 	}
 }
@@ -43,7 +43,7 @@ public abstract class AbstractTask implements Task {
 		long endTime = System.currentTimeMillis();
 		long interval = endTime - startTime;
 		if (interval >= 1000) {
-			logger.warn("Execute task : " + this.toString() + ", interval : " + interval + ", task size : " + taskQueue.size());
+			logger.warn("Execute task : " + this.toString() + ", interval : " + interval + ", task size : " + (taskQueue == null ? 0 : taskQueue.size()));
 		}
 	}
 
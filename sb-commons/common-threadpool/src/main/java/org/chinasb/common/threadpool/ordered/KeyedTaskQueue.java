@@ -0,0 +1,92 @@
+package org.chinasb.common.threadpool.ordered;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 按键管理的任务队列，由{@link OrderedTaskQueueExecutor#execute(long, AbstractTask)}按需创建
+ * <p>空闲超时后被回收，回收后的入队请求转交线程池重新按键查找队列，不会丢失任务也不会破坏顺序
+ *
+ * @author zhujuan
+ *
+ */
+class KeyedTaskQueue extends OrderedTaskQueue {
+	private static final AtomicIntegerFieldUpdater<KeyedTaskQueue> USERS_UPDATER =
+			AtomicIntegerFieldUpdater.newUpdater(KeyedTaskQueue.class, "users");
+	private static final int RETIRED = -1;
+	private static final int RETIRING = -2;
+
+	private final OrderedTaskQueueExecutor executor;
+	private final long key;
+	private final long createTime;
+	private volatile long lastActiveTime;
+	/**
+	 * 正在入队的线程数量，RETIRING为回收检查中，RETIRED为已回收
+	 */
+	private volatile int users;
+
+	KeyedTaskQueue(OrderedTaskQueueExecutor executor, long key) {
+		super(executor);
+		this.executor = executor;
+		this.key = key;
+		this.createTime = this.lastActiveTime = System.currentTimeMillis();
+	}
+
+	@Override
+	public boolean enqueue(AbstractTask task) {
+		if (!tryAcquire()) {
+			return executor.execute(key, task);
+		}
+		try {
+			lastActiveTime = System.currentTimeMillis();
+			return super.enqueue(task);
+		} finally {
+			USERS_UPDATER.decrementAndGet(this);
+		}
+	}
+
+	private boolean tryAcquire() {
+		for (;;) {
+			int current = users;
+			if (current == RETIRED) {
+				return false;
+			}
+			if (current == RETIRING) {
+				Thread.yield();
+				continue;
+			}
+			if (USERS_UPDATER.compareAndSet(this, current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * 空闲超时且没有待执行任务时回收
+	 * @param now
+	 * @param idleTimeout
+	 * @return
+	 */
+	boolean tryRetire(long now, long idleTimeout) {
+		if (now - lastActiveTime < idleTimeout) {
+			return false;
+		}
+		if (!USERS_UPDATER.compareAndSet(this, 0, RETIRING)) {
+			return false;
+		}
+		// 检查期间入队线程等待结果，确认空闲后才对外表现为已回收
+		if (!isIdle()) {
+			users = 0;
+			return false;
+		}
+		users = RETIRED;
+		return true;
+	}
+
+	boolean isRetired() {
+		return users == RETIRED;
+	}
+
+	TaskQueueStat toStat() {
+		return new TaskQueueStat(key, size(), createTime, lastActiveTime);
+	}
+}
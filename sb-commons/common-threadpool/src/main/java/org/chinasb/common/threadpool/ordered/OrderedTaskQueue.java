@@ -1,13 +1,17 @@
 package org.chinasb.common.threadpool.ordered;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * 任务队列
+ * <p>多生产者单消费者的无锁链表队列，入队只做一次原子交换，执行权通过CAS运行标志保证同一时刻只有一个线程消费；
+ * 每轮最多执行throughput个任务后让出线程，避免热点队列长期占用线程池
  * 
  * @author zhujuan
  *
@@ -15,31 +19,52 @@ import org.slf4j.LoggerFactory;
 public class OrderedTaskQueue implements TaskQueue {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(OrderedTaskQueue.class);
+	private static final AtomicReferenceFieldUpdater<OrderedTaskQueue, Node> TAIL_UPDATER =
+			AtomicReferenceFieldUpdater.newUpdater(OrderedTaskQueue.class, Node.class, "tail");
+	private static final AtomicIntegerFieldUpdater<OrderedTaskQueue> RUNNING_UPDATER =
+			AtomicIntegerFieldUpdater.newUpdater(OrderedTaskQueue.class, "running");
 
-	private final Queue<AbstractTask> taskQueue;
 	private final OrderedTaskQueueExecutor executor;
+	private final int throughput;
 	private final Runnable runner;
-	private boolean running;
+	private final AtomicInteger size = new AtomicInteger();
+	/**
+	 * 队首哨兵节点，只在消费线程中访问
+	 */
+	private Node head;
+	private volatile Node tail;
+	private volatile int running;
 
 	public OrderedTaskQueue(final OrderedTaskQueueExecutor executor) {
+		this(executor, executor == null ? 0 : executor.getThroughput());
+	}
+
+	/**
+	 * @param executor 线程池
+	 * @param throughput 每轮最多执行的任务数量
+	 */
+	public OrderedTaskQueue(final OrderedTaskQueueExecutor executor, int throughput) {
 		if (executor == null) {
 			throw new NullPointerException();
 		}
+		if (throughput <= 0) {
+			throw new IllegalArgumentException("throughput must be greater than 0.");
+		}
 
-		this.taskQueue = new LinkedList<AbstractTask>();
 		this.executor = executor;
+		this.throughput = throughput;
+		this.head = this.tail = new Node(null);
 		this.runner = new Runnable() {
 			public void run() {
-				for (;;) {
-					AbstractTask task = taskQueue.poll();
+				for (int i = 0; i < OrderedTaskQueue.this.throughput; i++) {
+					AbstractTask task = poll();
 					if (task == null) {
-						synchronized (taskQueue) {
-							task = taskQueue.poll();
-							if (task == null) {
-								running = false;
-								return;
-							}
+						running = 0;
+						// 释放执行权后可能有新任务入队
+						if (!isEmpty() && RUNNING_UPDATER.compareAndSet(OrderedTaskQueue.this, 0, 1)) {
+							schedule();
 						}
+						return;
 					}
 					try {
 						task.execute();
@@ -49,6 +74,8 @@ public class OrderedTaskQueue implements TaskQueue {
 						task.reset();
 					}
 				}
+				// 用完本轮配额，重新排到线程池队尾
+				schedule();
 			}
 		};
 	}
@@ -60,19 +87,64 @@ public class OrderedTaskQueue implements TaskQueue {
 
 	@Override
 	public boolean enqueue(AbstractTask task) {
-		boolean result = false;
-		synchronized (taskQueue) {
-			result = taskQueue.offer(task);
-			if (result) {
-				if (!running) {
-					running = true;
-					executor.execute(runner);
-				}
-			} else {
-				LOGGER.error("添加任务失败");
+		if (task == null) {
+			LOGGER.error("添加任务失败");
+			return false;
+		}
+		Node node = new Node(task);
+		Node prev = TAIL_UPDATER.getAndSet(this, node);
+		prev.next = node;
+		size.incrementAndGet();
+		if (running == 0 && RUNNING_UPDATER.compareAndSet(this, 0, 1)) {
+			schedule();
+		}
+		return true;
+	}
+
+	/**
+	 * 提交消费任务，线程池拒绝时释放执行权
+	 */
+	private void schedule() {
+		try {
+			executor.execute(runner);
+		} catch (RejectedExecutionException e) {
+			running = 0;
+			throw e;
+		}
+	}
+
+	/**
+	 * 取出队首任务，只在持有执行权的线程中调用
+	 * @return
+	 */
+	private AbstractTask poll() {
+		Node next = head.next;
+		if (next == null) {
+			if (head == tail) {
+				return null;
+			}
+			// 生产者已交换tail但尚未链接next
+			while ((next = head.next) == null) {
+				Thread.yield();
 			}
 		}
-		return result;
+		head = next;
+		AbstractTask task = next.task;
+		next.task = null;
+		size.decrementAndGet();
+		return task;
+	}
+
+	private boolean isEmpty() {
+		return size.get() == 0;
+	}
+
+	/**
+	 * 没有待执行任务且没有线程正在消费
+	 * @return
+	 */
+	public boolean isIdle() {
+		return running == 0 && size.get() == 0;
 	}
 
 	@Override
@@ -82,8 +154,15 @@ public class OrderedTaskQueue implements TaskQueue {
 	
 	@Override
 	public int size() {
-		synchronized (taskQueue) {
-			return taskQueue.size();
+		return size.get();
+	}
+
+	private static final class Node {
+		private volatile Node next;
+		private AbstractTask task;
+
+		Node(AbstractTask task) {
+			this.task = task;
 		}
 	}
 }
@@ -1,12 +1,17 @@
 package org.chinasb.common.threadpool.ordered;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
 
-import org.chinasb.common.threadpool.ringbuffer.DisruptorExecutor;
-import org.chinasb.common.threadpool.ringbuffer.Event;
-import org.chinasb.common.threadpool.ringbuffer.EventConsumer;
+import org.chinasb.common.threadpool.timer.HashedTimingWheel;
+import org.chinasb.common.threadpool.timer.Timeout;
+import org.chinasb.common.utility.ConcurrentLongHashMap;
+import org.chinasb.common.utility.ConcurrentLongHashMap.EntryProcessor;
 import org.chinasb.common.utility.NamedThreadFactory;
 import org.chinasb.common.utility.ThreadPoolUtils;
 import org.slf4j.Logger;
@@ -20,27 +25,50 @@ import org.slf4j.LoggerFactory;
  */
 public class OrderedTaskQueueExecutor {
 	private static final Logger LOGGER = LoggerFactory.getLogger(OrderedTaskQueueExecutor.class);
-	private static final EventConsumer<Event<AbstractDelayTask>> DELAY_TASK_CONSUMER =
-			new EventConsumer<Event<AbstractDelayTask>>() {
+	/**
+	 * 默认每个队列每轮最多执行的任务数量
+	 */
+	public static final int DEFAULT_THROUGHPUT = 64;
+	/**
+	 * 默认按键队列空闲回收时间(毫秒)
+	 */
+	public static final long DEFAULT_KEYED_QUEUE_IDLE_TIMEOUT = 5 * 60 * 1000L;
+	private static final long KEYED_QUEUE_SWEEP_INTERVAL = 30 * 1000L;
 
+	private final ExecutorService taskExecutor;
+	private final HashedTimingWheel delayTaskTimer;
+	private final TaskQueue defaultQueue;
+	private final int throughput;
+	private final ConcurrentLongHashMap<KeyedTaskQueue> keyedQueues =
+			new ConcurrentLongHashMap<KeyedTaskQueue>(1024);
+	private final LongFunction<KeyedTaskQueue> keyedQueueFactory =
+			new LongFunction<KeyedTaskQueue>() {
 				@Override
-				public void accept(Event<AbstractDelayTask> event) {
-					AbstractDelayTask task = event.getData();
-					long start = System.currentTimeMillis();
-					if (!task.canExec(start)) {
-						task.getTaskQueue().enDelayQueue(task);
-					}
-					long end = System.currentTimeMillis();
-					long interval = end - start;
-					if (interval > 1000) {
-						LOGGER.warn("DelayEventConsumer is spent too much time:" + interval + "ms");
-					}
+				public KeyedTaskQueue apply(long key) {
+					return new KeyedTaskQueue(OrderedTaskQueueExecutor.this, key);
 				}
 			};
-			
-	private final ExecutorService taskExecutor;
-	private final DisruptorExecutor delayTaskExecutor;
-	private final TaskQueue defaultQueue;
+	private final Runnable keyedQueueSweeper = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				taskExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							retireIdleQueues();
+						} finally {
+							scheduleSweep();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// 线程池已关闭
+			}
+		}
+	};
+	private volatile long keyedQueueIdleTimeout = DEFAULT_KEYED_QUEUE_IDLE_TIMEOUT;
+	private volatile Timeout sweepTimeout;
 			
 	public OrderedTaskQueueExecutor() {
 		this(null);
@@ -51,10 +79,32 @@ public class OrderedTaskQueueExecutor {
 	}
 	
 	public OrderedTaskQueueExecutor(int corePoolSize, String name) {
+		this(corePoolSize, name, DEFAULT_THROUGHPUT);
+	}
+
+	/**
+	 * @param corePoolSize 线程数量
+	 * @param name 线程名称前缀
+	 * @param throughput 每个队列每轮最多执行的任务数量，超出后让出线程
+	 */
+	public OrderedTaskQueueExecutor(int corePoolSize, String name, int throughput) {
+		if (throughput <= 0) {
+			throw new IllegalArgumentException("throughput must be greater than 0.");
+		}
+		this.throughput = throughput;
 		String prefix = name == null ? "OrderedTaskQueueExecutor" : name;
 		taskExecutor = Executors.newFixedThreadPool(corePoolSize, new NamedThreadFactory(prefix));
-		delayTaskExecutor = new DisruptorExecutor(prefix + "-延时任务处理器");
+		delayTaskTimer = new HashedTimingWheel(prefix + "-延时任务处理器");
 		defaultQueue = new OrderedTaskQueue(this);
+		scheduleSweep();
+	}
+
+	/**
+	 * 每个队列每轮最多执行的任务数量
+	 * @return
+	 */
+	public int getThroughput() {
+		return throughput;
 	}
 
 	/**
@@ -74,11 +124,128 @@ public class OrderedTaskQueueExecutor {
 	}
 
 	/**
-	 * 添加延时任务
+	 * 按键顺序执行任务，同一键的任务串行执行，队列按需创建并在空闲超时后回收
+	 * <p>任务的执行顺序只由键决定，与任务构造时传入的队列无关
+	 * @param key 如玩家ID、公会ID
+	 * @param task
+	 * @return
+	 */
+	public boolean execute(long key, AbstractTask task) {
+		for (;;) {
+			KeyedTaskQueue taskQueue = keyedQueues.computeIfAbsent(key, keyedQueueFactory);
+			if (taskQueue.isRetired()) {
+				keyedQueues.remove(key, taskQueue);
+				continue;
+			}
+			return taskQueue.enqueue(task);
+		}
+	}
+
+	/**
+	 * 获取键对应的任务队列，不存在时创建
+	 * @param key
+	 * @return
+	 */
+	public TaskQueue getTaskQueue(long key) {
+		for (;;) {
+			KeyedTaskQueue taskQueue = keyedQueues.computeIfAbsent(key, keyedQueueFactory);
+			if (!taskQueue.isRetired()) {
+				return taskQueue;
+			}
+			keyedQueues.remove(key, taskQueue);
+		}
+	}
+
+	/**
+	 * 获取键对应队列的统计，队列不存在时返回null
+	 * @param key
+	 * @return
+	 */
+	public TaskQueueStat getTaskQueueStat(long key) {
+		KeyedTaskQueue taskQueue = keyedQueues.get(key);
+		return taskQueue == null ? null : taskQueue.toStat();
+	}
+
+	/**
+	 * 获取全部按键队列的统计
+	 * @return
+	 */
+	public List<TaskQueueStat> getTaskQueueStats() {
+		final List<TaskQueueStat> stats = new ArrayList<TaskQueueStat>(keyedQueues.size());
+		keyedQueues.forEach(new EntryProcessor<KeyedTaskQueue>() {
+			@Override
+			public void accept(long key, KeyedTaskQueue taskQueue) {
+				stats.add(taskQueue.toStat());
+			}
+		});
+		return stats;
+	}
+
+	/**
+	 * 当前按键队列数量
+	 * @return
+	 */
+	public int getKeyedQueueCount() {
+		return keyedQueues.size();
+	}
+
+	/**
+	 * 设置按键队列空闲回收时间
+	 * @param keyedQueueIdleTimeout 毫秒
+	 */
+	public void setKeyedQueueIdleTimeout(long keyedQueueIdleTimeout) {
+		this.keyedQueueIdleTimeout = keyedQueueIdleTimeout;
+	}
+
+	/**
+	 * 回收空闲的按键队列
+	 * @return 回收数量
+	 */
+	public int retireIdleQueues() {
+		final long now = System.currentTimeMillis();
+		final long idleTimeout = keyedQueueIdleTimeout;
+		final int[] retired = new int[1];
+		keyedQueues.forEach(new EntryProcessor<KeyedTaskQueue>() {
+			@Override
+			public void accept(long key, KeyedTaskQueue taskQueue) {
+				if (taskQueue.tryRetire(now, idleTimeout)) {
+					keyedQueues.remove(key, taskQueue);
+					retired[0]++;
+				}
+			}
+		});
+		if (retired[0] > 0 && LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Retired {} idle keyed task queues, remain {}", retired[0],
+					keyedQueues.size());
+		}
+		return retired[0];
+	}
+
+	private void scheduleSweep() {
+		try {
+			sweepTimeout = delayTaskTimer.newTimeout(keyedQueueSweeper,
+					KEYED_QUEUE_SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// 时间轮已停止
+		}
+	}
+
+	/**
+	 * 添加延时任务，到期后投递到任务所属的队列
 	 * @param delayTask
 	 */
 	public void enDelayQueue(AbstractDelayTask delayTask) {
-		delayTaskExecutor.dispatch(Event.wrap(delayTask), DELAY_TASK_CONSUMER);
+		long delay = delayTask.getExecTime() - System.currentTimeMillis();
+		delayTask.setTimeout(
+				delayTaskTimer.newTimeout(delayTask.expireAction, delay, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * 等待中的延时任务数量
+	 * @return
+	 */
+	public long getDelayTaskCount() {
+		return delayTaskTimer.pendingTimeouts();
 	}
 	
 	/**
@@ -93,7 +260,8 @@ public class OrderedTaskQueueExecutor {
 	 * 立即关闭
 	 */
 	public void shutdownNow() {
-		delayTaskExecutor.halt();
+		sweepTimeout.cancel();
+		delayTaskTimer.stop();
 		ThreadPoolUtils.shutdownNow(taskExecutor);
 	}
 	
@@ -102,7 +270,8 @@ public class OrderedTaskQueueExecutor {
 	 * @param timeout
 	 */
 	public void shutdown(long timeout) {
-		delayTaskExecutor.shutdown(timeout, TimeUnit.MILLISECONDS);
+		sweepTimeout.cancel();
+		delayTaskTimer.stop();
 		ThreadPoolUtils.shutdownGraceful(taskExecutor, timeout);
 	}
 	
@@ -110,7 +279,8 @@ public class OrderedTaskQueueExecutor {
 	 * 阻塞完成所有任务之后关闭
 	 */
 	public void shutdown() {
-		delayTaskExecutor.shutdown();
+		sweepTimeout.cancel();
+		delayTaskTimer.stop();
 		ThreadPoolUtils.shutdownGraceful(taskExecutor, Integer.MAX_VALUE);
 	}	
 }
@@ -20,7 +20,7 @@ public interface TaskQueue {
 	boolean enqueue(AbstractTask task);
 	
 	/**
-	 * 添加延时任务
+	 * 添加延时任务，定时句柄通过{@link AbstractDelayTask#getTimeout()}获取
 	 * @param delayTask
 	 */
 	void enDelayQueue(AbstractDelayTask delayTask);
@@ -0,0 +1,77 @@
+package org.chinasb.common.threadpool.ordered;
+
+/**
+ * 按键任务队列的统计快照
+ *
+ * @author zhujuan
+ *
+ */
+public class TaskQueueStat {
+	private final long key;
+	private final int size;
+	private final long createTime;
+	private final long lastActiveTime;
+
+	public TaskQueueStat(long key, int size, long createTime, long lastActiveTime) {
+		this.key = key;
+		this.size = size;
+		this.createTime = createTime;
+		this.lastActiveTime = lastActiveTime;
+	}
+
+	/**
+	 * 队列键
+	 * @return
+	 */
+	public long getKey() {
+		return key;
+	}
+
+	/**
+	 * 待执行任务数量
+	 * @return
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * 队列创建时间
+	 * @return
+	 */
+	public long getCreateTime() {
+		return createTime;
+	}
+
+	/**
+	 * 最后一次入队时间
+	 * @return
+	 */
+	public long getLastActiveTime() {
+		return lastActiveTime;
+	}
+
+	/**
+	 * 队列存在时长(毫秒)
+	 * @param now
+	 * @return
+	 */
+	public long getAge(long now) {
+		return now - createTime;
+	}
+
+	/**
+	 * 空闲时长(毫秒)
+	 * @param now
+	 * @return
+	 */
+	public long getIdleTime(long now) {
+		return now - lastActiveTime;
+	}
+
+	@Override
+	public String toString() {
+		return "TaskQueueStat [key=" + key + ", size=" + size + ", createTime=" + createTime
+				+ ", lastActiveTime=" + lastActiveTime + "]";
+	}
+}
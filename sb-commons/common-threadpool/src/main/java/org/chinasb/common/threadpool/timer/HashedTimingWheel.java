@@ -0,0 +1,348 @@
+package org.chinasb.common.threadpool.timer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.chinasb.common.utility.NamedDaemonThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 分层哈希时间轮
+ * <p>第0层每格一个tick，第N层每格为第N-1层转一圈的时间，到达高层格子边界时将其中的任务逐层下放，
+ * 添加与取消均为O(1)，工作线程每个tick只处理到期格子，开销与到期任务数相关而与等待中的任务数无关
+ * <p>任务到期后在时间轮线程中执行，只应做投递到业务队列之类的轻量操作
+ *
+ * @author zhujuan
+ *
+ */
+public class HashedTimingWheel {
+	private static final Logger LOGGER = LoggerFactory.getLogger(HashedTimingWheel.class);
+	private static final long DEFAULT_TICK_MILLIS = 10;
+	private static final int DEFAULT_WHEEL_BITS = 9;
+	private static final int MAX_TRANSFER_PER_TICK = 100000;
+
+	private static final int ST_STARTED = 0;
+	private static final int ST_SHUTDOWN = 1;
+
+	private final long tickNanos;
+	private final int wheelBits;
+	private final int mask;
+	private final Bucket[][] wheels;
+	private final Queue<WheelTimeout> pendingTimeouts = new ConcurrentLinkedQueue<WheelTimeout>();
+	private final Queue<WheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<WheelTimeout>();
+	private final AtomicLong pending = new AtomicLong();
+	private final long startTime;
+	private final Thread workerThread;
+	private volatile int state = ST_STARTED;
+	/**
+	 * 下一个要处理的tick，只在工作线程中访问
+	 */
+	private long tick;
+
+	public HashedTimingWheel(String name) {
+		this(name, DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, 1 << DEFAULT_WHEEL_BITS);
+	}
+
+	/**
+	 * @param name 线程名称
+	 * @param tickDuration 每格时长
+	 * @param unit 时间单位
+	 * @param wheelSize 每层格数，必须为2的幂
+	 */
+	public HashedTimingWheel(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("tickDuration must be greater than 0.");
+		}
+		if (wheelSize < 2 || (wheelSize & (wheelSize - 1)) != 0) {
+			throw new IllegalArgumentException("wheelSize must be power of 2.");
+		}
+		this.tickNanos = unit.toNanos(tickDuration);
+		this.wheelBits = Integer.numberOfTrailingZeros(wheelSize);
+		this.mask = wheelSize - 1;
+		this.wheels = new Bucket[(63 + wheelBits - 1) / wheelBits][];
+		this.startTime = System.nanoTime();
+		this.workerThread = new NamedDaemonThreadFactory(name).newThread(new Worker());
+		this.workerThread.start();
+	}
+
+	/**
+	 * 添加定时任务
+	 * @param task 到期时在时间轮线程中执行
+	 * @param delay 延迟时间
+	 * @param unit 时间单位
+	 * @return
+	 */
+	public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+		if (task == null) {
+			throw new NullPointerException("task");
+		}
+		if (state != ST_STARTED) {
+			throw new RejectedExecutionException("HashedTimingWheel has been stopped.");
+		}
+		long deadline = System.nanoTime() + Math.max(0L, unit.toNanos(delay));
+		WheelTimeout timeout = new WheelTimeout(this, task, deadline);
+		pending.incrementAndGet();
+		pendingTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * 等待中的任务数量
+	 * @return
+	 */
+	public long pendingTimeouts() {
+		return pending.get();
+	}
+
+	/**
+	 * 停止时间轮，未到期的任务不再执行
+	 * @return 被丢弃的任务数量
+	 */
+	public long stop() {
+		if (Thread.currentThread() == workerThread) {
+			throw new IllegalStateException(
+					"HashedTimingWheel.stop() cannot be called from timer task.");
+		}
+		state = ST_SHUTDOWN;
+		LockSupport.unpark(workerThread);
+		boolean interrupted = false;
+		while (workerThread.isAlive()) {
+			try {
+				workerThread.join(100);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		processCancelled();
+		long dropped = pending.getAndSet(0);
+		if (dropped > 0) {
+			LOGGER.warn("HashedTimingWheel stopped with {} pending timeouts dropped", dropped);
+		}
+		return dropped;
+	}
+
+	private Bucket bucket(int level, int index) {
+		Bucket[] wheel = wheels[level];
+		if (wheel == null) {
+			wheel = new Bucket[mask + 1];
+			for (int i = 0; i < wheel.length; i++) {
+				wheel[i] = new Bucket();
+			}
+			wheels[level] = wheel;
+		}
+		return wheel[index];
+	}
+
+	/**
+	 * 按剩余tick数选择层级和格子
+	 */
+	private void place(WheelTimeout timeout) {
+		long diff = timeout.deadlineTick - tick;
+		if (diff < 0) {
+			timeout.deadlineTick = tick;
+			diff = 0;
+		}
+		int level = diff == 0 ? 0 : (63 - Long.numberOfLeadingZeros(diff)) / wheelBits;
+		int index = (int) ((timeout.deadlineTick >>> (wheelBits * level)) & mask);
+		bucket(level, index).add(timeout);
+	}
+
+	private void transferPending() {
+		for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+			WheelTimeout timeout = pendingTimeouts.poll();
+			if (timeout == null) {
+				return;
+			}
+			if (timeout.state() != WheelTimeout.ST_INIT) {
+				continue;
+			}
+			long elapsed = timeout.deadline - startTime;
+			timeout.deadlineTick = elapsed <= 0 ? 0 : (elapsed + tickNanos - 1) / tickNanos;
+			place(timeout);
+		}
+	}
+
+	private void processCancelled() {
+		for (;;) {
+			WheelTimeout timeout = cancelledTimeouts.poll();
+			if (timeout == null) {
+				return;
+			}
+			if (timeout.bucket != null) {
+				timeout.bucket.remove(timeout);
+			}
+			pending.decrementAndGet();
+		}
+	}
+
+	private void processTick() {
+		int top = 1;
+		while (top < wheels.length && (tick & ((1L << (wheelBits * top)) - 1)) == 0) {
+			top++;
+		}
+		// 从高层到低层依次下放到达边界的格子
+		for (int level = top - 1; level >= 1; level--) {
+			if (wheels[level] == null) {
+				continue;
+			}
+			int index = (int) ((tick >>> (wheelBits * level)) & mask);
+			WheelTimeout timeout = bucket(level, index).detach();
+			while (timeout != null) {
+				WheelTimeout next = timeout.next;
+				timeout.next = null;
+				place(timeout);
+				timeout = next;
+			}
+		}
+		if (wheels[0] == null) {
+			return;
+		}
+		WheelTimeout timeout = bucket(0, (int) (tick & mask)).detach();
+		while (timeout != null) {
+			WheelTimeout next = timeout.next;
+			timeout.next = null;
+			if (timeout.deadlineTick <= tick) {
+				timeout.expire();
+			} else {
+				place(timeout);
+			}
+			timeout = next;
+		}
+	}
+
+	private final class Worker implements Runnable {
+		@Override
+		public void run() {
+			while (state == ST_STARTED) {
+				long sleepNanos = tick * tickNanos - (System.nanoTime() - startTime);
+				if (sleepNanos > 0) {
+					LockSupport.parkNanos(this, sleepNanos);
+					continue;
+				}
+				transferPending();
+				processCancelled();
+				processTick();
+				tick++;
+			}
+		}
+	}
+
+	/**
+	 * 格子，双向链表，只在工作线程中访问
+	 */
+	private static final class Bucket {
+		private WheelTimeout head;
+		private WheelTimeout tail;
+
+		void add(WheelTimeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		void remove(WheelTimeout timeout) {
+			WheelTimeout next = timeout.next;
+			if (timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if (next != null) {
+				next.prev = timeout.prev;
+			}
+			if (timeout == head) {
+				head = next;
+			}
+			if (timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+		}
+
+		/**
+		 * 取出全部任务并清空格子，返回的链表通过next串联
+		 */
+		WheelTimeout detach() {
+			WheelTimeout first = head;
+			for (WheelTimeout timeout = first; timeout != null; timeout = timeout.next) {
+				timeout.prev = null;
+				timeout.bucket = null;
+			}
+			head = tail = null;
+			return first;
+		}
+	}
+
+	private static final class WheelTimeout implements Timeout {
+		private static final int ST_INIT = 0;
+		private static final int ST_CANCELLED = 1;
+		private static final int ST_EXPIRED = 2;
+		private static final AtomicIntegerFieldUpdater<WheelTimeout> STATE_UPDATER =
+				AtomicIntegerFieldUpdater.newUpdater(WheelTimeout.class, "state");
+
+		private final HashedTimingWheel timer;
+		private final Runnable task;
+		private final long deadline;
+		private volatile int state = ST_INIT;
+
+		long deadlineTick;
+		WheelTimeout prev;
+		WheelTimeout next;
+		Bucket bucket;
+
+		WheelTimeout(HashedTimingWheel timer, Runnable task, long deadline) {
+			this.timer = timer;
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		int state() {
+			return state;
+		}
+
+		@Override
+		public boolean cancel() {
+			if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+				return false;
+			}
+			timer.cancelledTimeouts.add(this);
+			return true;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return state == ST_CANCELLED;
+		}
+
+		@Override
+		public boolean isExpired() {
+			return state == ST_EXPIRED;
+		}
+
+		void expire() {
+			if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+				return;
+			}
+			timer.pending.decrementAndGet();
+			try {
+				task.run();
+			} catch (Throwable t) {
+				LOGGER.error("Execute timeout task[{}] caught unexpected Throwable", task, t);
+			}
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package org.chinasb.common.threadpool.timer;
+
+/**
+ * 定时任务句柄，由{@link HashedTimingWheel#newTimeout}返回
+ *
+ * @author zhujuan
+ *
+ */
+public interface Timeout {
+	/**
+	 * 取消定时任务，已到期或已取消时返回false
+	 * @return
+	 */
+	boolean cancel();
+
+	/**
+	 * 是否已取消
+	 * @return
+	 */
+	boolean isCancelled();
+
+	/**
+	 * 是否已到期
+	 * @return
+	 */
+	boolean isExpired();
+}
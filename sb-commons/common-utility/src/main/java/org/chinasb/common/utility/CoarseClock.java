@@ -0,0 +1,45 @@
+package org.chinasb.common.utility;
+
+/**
+ * 粗粒度时钟
+ * <p>由守护线程每{@link #PRECISION_MILLIS}毫秒刷新一次当前时间，读取只是一次volatile读，
+ * 用于缓存过期判断之类调用频繁、可以容忍毫秒级误差的场景
+ * 
+ * @author zhujuan
+ */
+public final class CoarseClock {
+    /**
+     * 刷新间隔(毫秒)
+     */
+    public static final long PRECISION_MILLIS = 10;
+
+    private static volatile long now = System.currentTimeMillis();
+
+    static {
+        Thread ticker = new NamedDaemonThreadFactory("粗粒度时钟").newThread(new Runnable() {
+            @Override
+            public void run() {
+                for (;;) {
+                    now = System.currentTimeMillis();
+                    try {
+                        Thread.sleep(PRECISION_MILLIS);
+                    } catch (InterruptedException e) {
+                        // 守护线程随JVM退出
+                    }
+                }
+            }
+        });
+        ticker.start();
+    }
+
+    private CoarseClock() {}
+
+    /**
+     * 获取当前时间(毫秒)，误差不超过刷新间隔
+     * 
+     * @return
+     */
+    public static long currentTimeMillis() {
+        return now;
+    }
+}
@@ -0,0 +1,401 @@
+package org.chinasb.common.utility;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongFunction;
+
+/**
+ * long键并发哈希表
+ * <p>按键哈希分段，每段为开放寻址的long[]/Object[]数组，读取使用{@link StampedLock}乐观读，
+ * 不对键装箱也不为每个条目分配节点对象；不支持null值
+ *
+ * @author zhujuan
+ *
+ * @param <V>
+ */
+public class ConcurrentLongHashMap<V> {
+    private static final Object DELETED = new Object();
+    private static final float FILL_FACTOR = 0.66f;
+    private static final int DEFAULT_EXPECTED_ITEMS = 256;
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private final Section<V>[] sections;
+    private final int sectionMask;
+
+    /**
+     * 遍历回调
+     *
+     * @param <V>
+     */
+    public interface EntryProcessor<V> {
+        void accept(long key, V value);
+    }
+
+    public ConcurrentLongHashMap() {
+        this(DEFAULT_EXPECTED_ITEMS, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    public ConcurrentLongHashMap(int expectedItems) {
+        this(expectedItems, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentLongHashMap(int expectedItems, int concurrencyLevel) {
+        if (expectedItems <= 0 || concurrencyLevel <= 0) {
+            throw new IllegalArgumentException(
+                    "expectedItems and concurrencyLevel must be positive.");
+        }
+        int numSections = tableSizeFor(concurrencyLevel);
+        int perSection =
+                tableSizeFor((int) (Math.max(expectedItems / numSections, 2) / FILL_FACTOR));
+        this.sections = new Section[numSections];
+        this.sectionMask = numSections - 1;
+        for (int i = 0; i < numSections; i++) {
+            sections[i] = new Section<V>(perSection);
+        }
+    }
+
+    public V get(long key) {
+        int h = hash(key);
+        return sectionFor(h).get(key, h);
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    public V put(long key, V value) {
+        checkValue(value);
+        int h = hash(key);
+        return sectionFor(h).put(key, value, h, false, null);
+    }
+
+    public V putIfAbsent(long key, V value) {
+        checkValue(value);
+        int h = hash(key);
+        return sectionFor(h).put(key, value, h, true, null);
+    }
+
+    /**
+     * 键不存在时创建，创建函数在段写锁内执行
+     *
+     * @param key
+     * @param provider
+     * @return
+     */
+    public V computeIfAbsent(long key, LongFunction<V> provider) {
+        if (provider == null) {
+            throw new NullPointerException("provider");
+        }
+        int h = hash(key);
+        V value = sectionFor(h).get(key, h);
+        if (value != null) {
+            return value;
+        }
+        return sectionFor(h).put(key, null, h, true, provider);
+    }
+
+    public V remove(long key) {
+        int h = hash(key);
+        return sectionFor(h).remove(key, null, h);
+    }
+
+    /**
+     * 当前值与给定值相同(==)时删除
+     *
+     * @param key
+     * @param value
+     * @return
+     */
+    public boolean remove(long key, Object value) {
+        checkValue(value);
+        int h = hash(key);
+        return sectionFor(h).remove(key, value, h) != null;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Section<V> section : sections) {
+            size += section.size;
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        for (Section<V> section : sections) {
+            section.clear();
+        }
+    }
+
+    /**
+     * 遍历，每段先复制快照再回调，回调中可以修改本表
+     *
+     * @param processor
+     */
+    public void forEach(EntryProcessor<V> processor) {
+        for (Section<V> section : sections) {
+            section.forEach(processor);
+        }
+    }
+
+    public long[] keys() {
+        final long[][] keys = new long[][] {new long[size()]};
+        final int[] count = new int[1];
+        forEach(new EntryProcessor<V>() {
+            @Override
+            public void accept(long key, V value) {
+                if (count[0] == keys[0].length) {
+                    keys[0] = Arrays.copyOf(keys[0], count[0] * 2 + 1);
+                }
+                keys[0][count[0]++] = key;
+            }
+        });
+        return count[0] == keys[0].length ? keys[0] : Arrays.copyOf(keys[0], count[0]);
+    }
+
+    public List<V> values() {
+        final List<V> values = new ArrayList<V>(size());
+        forEach(new EntryProcessor<V>() {
+            @Override
+            public void accept(long key, V value) {
+                values.add(value);
+            }
+        });
+        return values;
+    }
+
+    private Section<V> sectionFor(int hash) {
+        return sections[(hash >>> 16) & sectionMask];
+    }
+
+    private static void checkValue(Object value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int tableSizeFor(int n) {
+        int size = 1;
+        while (size < n) {
+            size <<= 1;
+        }
+        return Math.max(size, 2);
+    }
+
+    /**
+     * 段内数组，整体替换保证乐观读取时keys与values长度一致
+     */
+    private static final class Table {
+        final long[] keys;
+        final Object[] values;
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Section<V> extends StampedLock {
+        private volatile Table table;
+        private volatile int size;
+        /**
+         * 已占用(含删除标记)的槽位数量
+         */
+        private int usedBuckets;
+        private int resizeThreshold;
+
+        Section(int capacity) {
+            this.table = new Table(capacity);
+            this.resizeThreshold = (int) (capacity * FILL_FACTOR);
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(long key, int keyHash) {
+            long stamp = tryOptimisticRead();
+            Table t = table;
+            int mask = t.keys.length - 1;
+            int bucket = keyHash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                long storedKey = t.keys[bucket];
+                Object storedValue = t.values[bucket];
+                if (storedValue == null) {
+                    break;
+                }
+                if (storedKey == key && storedValue != DELETED) {
+                    if (validate(stamp)) {
+                        return (V) storedValue;
+                    }
+                    break;
+                }
+                bucket = (bucket + 1) & mask;
+            }
+            if (validate(stamp)) {
+                return null;
+            }
+            stamp = readLock();
+            try {
+                t = table;
+                mask = t.keys.length - 1;
+                bucket = keyHash & mask;
+                for (int probes = 0; probes <= mask; probes++) {
+                    Object storedValue = t.values[bucket];
+                    if (storedValue == null) {
+                        return null;
+                    }
+                    if (t.keys[bucket] == key && storedValue != DELETED) {
+                        return (V) storedValue;
+                    }
+                    bucket = (bucket + 1) & mask;
+                }
+                return null;
+            } finally {
+                unlockRead(stamp);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        V put(long key, V value, int keyHash, boolean onlyIfAbsent, LongFunction<V> provider) {
+            long stamp = writeLock();
+            try {
+                Table t = table;
+                int mask = t.keys.length - 1;
+                int bucket = keyHash & mask;
+                int firstDeleted = -1;
+                for (int probes = 0; probes <= mask; probes++) {
+                    Object storedValue = t.values[bucket];
+                    if (storedValue == null) {
+                        break;
+                    }
+                    if (storedValue == DELETED) {
+                        if (firstDeleted < 0) {
+                            firstDeleted = bucket;
+                        }
+                    } else if (t.keys[bucket] == key) {
+                        if (onlyIfAbsent) {
+                            return (V) storedValue;
+                        }
+                        t.values[bucket] = value;
+                        return (V) storedValue;
+                    }
+                    bucket = (bucket + 1) & mask;
+                }
+                if (provider != null) {
+                    value = provider.apply(key);
+                    checkValue(value);
+                }
+                if (firstDeleted >= 0) {
+                    bucket = firstDeleted;
+                } else {
+                    usedBuckets++;
+                }
+                t.keys[bucket] = key;
+                t.values[bucket] = value;
+                size++;
+                if (usedBuckets > resizeThreshold) {
+                    rehash(size > resizeThreshold / 2 ? t.keys.length * 2 : t.keys.length);
+                }
+                return provider != null ? value : null;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        V remove(long key, Object expected, int keyHash) {
+            long stamp = writeLock();
+            try {
+                Table t = table;
+                int mask = t.keys.length - 1;
+                int bucket = keyHash & mask;
+                for (int probes = 0; probes <= mask; probes++) {
+                    Object storedValue = t.values[bucket];
+                    if (storedValue == null) {
+                        return null;
+                    }
+                    if (storedValue != DELETED && t.keys[bucket] == key) {
+                        if (expected != null && expected != storedValue) {
+                            return null;
+                        }
+                        int next = (bucket + 1) & mask;
+                        if (t.values[next] == null) {
+                            t.values[bucket] = null;
+                            usedBuckets--;
+                        } else {
+                            t.values[bucket] = DELETED;
+                        }
+                        size--;
+                        return (V) storedValue;
+                    }
+                    bucket = (bucket + 1) & mask;
+                }
+                return null;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = writeLock();
+            try {
+                table = new Table(table.keys.length);
+                size = 0;
+                usedBuckets = 0;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void forEach(EntryProcessor<V> processor) {
+            long[] keys;
+            Object[] values;
+            long stamp = readLock();
+            try {
+                Table t = table;
+                keys = t.keys.clone();
+                values = t.values.clone();
+            } finally {
+                unlockRead(stamp);
+            }
+            for (int i = 0; i < keys.length; i++) {
+                Object value = values[i];
+                if (value != null && value != DELETED) {
+                    processor.accept(keys[i], (V) value);
+                }
+            }
+        }
+
+        private void rehash(int newCapacity) {
+            Table old = table;
+            Table t = new Table(newCapacity);
+            int mask = newCapacity - 1;
+            for (int i = 0; i < old.keys.length; i++) {
+                Object value = old.values[i];
+                if (value != null && value != DELETED) {
+                    long key = old.keys[i];
+                    int bucket = hash(key) & mask;
+                    while (t.values[bucket] != null) {
+                        bucket = (bucket + 1) & mask;
+                    }
+                    t.keys[bucket] = key;
+                    t.values[bucket] = value;
+                }
+            }
+            table = t;
+            usedBuckets = size;
+            resizeThreshold = (int) (newCapacity * FILL_FACTOR);
+        }
+    }
+}